@@ -1,10 +1,20 @@
 package org.hjss;
 
 import org.hjss.constants.BookingStatus;
-import org.hjss.constants.Grade;
+import org.hjss.constants.LogLevel;
 import org.hjss.models.*;
-
+import org.hjss.notification.*;
+import org.hjss.service.AdmissionController;
+import org.hjss.service.LessonArchive;
+import org.hjss.utils.EventLogger;
+import org.hjss.utils.TableRenderer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeParseException;
@@ -19,10 +29,29 @@ public class Main {
     private static final SwimmingSchool swimmingSchool = new SwimmingSchool();
     private static final Scanner scanner = new Scanner(System.in);
 
+    private static final String TIMETABLE_RULE = "_______________________________________________________________________________________";
+    private static final String TIMETABLE_HEADER = String.format("| %-5s | %-10s | %-12s | %-10s | %-15s | %-10s |",
+            "Grade", "Day", "Date", "Time", "Coach", "Available Slots");
+    private static final TableRenderer TIMETABLE_TABLE = new TableRenderer(new int[]{5, 10, 12, 10, 15, 10}, "| ", " | ", " |");
+
+    private static final String BOOKING_HEADER = String.format("%-10s | %-15s | %-12s | %-12s | %-15s | %-12s | %-12s | %-10s",
+            "Booking ID", "Learner Name", "Current Grade", "Booked Grade", "Lesson Date", "Lesson Day", "Lesson Time", "Booking Status");
+    private static final TableRenderer BOOKING_TABLE = new TableRenderer(new int[]{10, 15, 12, 12, 15, 12, 12, 10}, "", " | ", "");
+
     /**
      * Main method to start the HJSS Management Tool.
      */
     public static void main(String[] args) {
+        swimmingSchool.getTimetableScheduler().start();
+        swimmingSchool.getAttendanceScheduler().start();
+        swimmingSchool.getSeatInventory().start();
+        startNotifications();
+        startArchive();
+        swimmingSchool.setAdmissionController(new AdmissionController(20, 5, 4, 32, Duration.ofMillis(500)));
+        EventLogger eventLogger = new EventLogger(Paths.get(System.getProperty("java.io.tmpdir"), "hjss-events.log"),
+                LogLevel.INFO, 8192, 10 * 1024 * 1024, 5);
+        swimmingSchool.setEventLogger(eventLogger);
+        eventLogger.start();
         while (true) {
             printMenu();
             int input = scanner.nextInt();
@@ -30,6 +59,42 @@ public class Main {
         }
     }
 
+    /**
+     * Delivers notifications to the console, a log file and the local mail pickup directory, and to
+     * the webhook given by the hjss.webhook system property if there is one.
+     */
+    private static void startNotifications() {
+        Path directory = Paths.get(System.getProperty("java.io.tmpdir"));
+        List<NotificationSink> sinks = new ArrayList<>();
+        sinks.add(new ConsoleNotificationSink());
+        sinks.add(new FileNotificationSink(directory.resolve("hjss-notifications.log")));
+        sinks.add(new SmtpNotificationSink(directory.resolve("hjss-mail"), "bookings@hjss.local"));
+        if (System.getProperty("hjss.webhook") != null) {
+            sinks.add(new WebhookNotificationSink(URI.create(System.getProperty("hjss.webhook"))));
+        }
+        try {
+            NotificationOutbox outbox = new NotificationOutbox(directory.resolve("hjss-notifications.journal"),
+                    sinks.toArray(new NotificationSink[0]));
+            swimmingSchool.setNotificationOutbox(outbox);
+            outbox.start();
+        } catch (IOException e) {
+            System.out.println("Notifications are disabled: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Archives lessons older than 90 days into the directory given by the hjss.archive system property,
+     * or the hjss-archive directory in the working directory. The directory must not be shared with
+     * another school.
+     */
+    private static void startArchive() {
+        try {
+            swimmingSchool.setLessonArchive(new LessonArchive(Paths.get(System.getProperty("hjss.archive", "hjss-archive")), 90));
+        } catch (IOException e) {
+            System.out.println("Archiving is disabled: " + e.getMessage());
+        }
+    }
+
     /**
      * Prints the main menu of the application.
      */
@@ -51,6 +116,7 @@ public class Main {
         System.out.println("11. View all Available Bookings");
         System.out.println("12. Add a new Learner");
         System.out.println("13. View all Learners");
+        System.out.println("14. Search Learners");
         System.out.println("Select your option or 0 to exit:");
     }
 
@@ -103,6 +169,9 @@ public class Main {
             case 13:
                 viewAvailableLearners();
                 break;
+            case 14:
+                searchLearners();
+                break;
             default:
                 System.out.println("Invalid option. Please try again.");
                 break;
@@ -158,6 +227,7 @@ public class Main {
         LocalDate date = getDateInput();
         LocalTime time = getTimeInput(date);
 
+        System.out.println("----------- Booking Swimming Lesson -----------------");
         System.out.println(swimmingSchool.bookLesson(time, date, learnerId));
     }
 
@@ -190,6 +260,7 @@ public class Main {
         // Get time slot from the user
         LocalTime time = getTimeInput(date);
 
+        System.out.println("----------- Changing Lesson Booking:-----------------");
         System.out.println(swimmingSchool.changeBooking(bookingId.trim(), time, date));
     }
 
@@ -264,28 +335,11 @@ public class Main {
      * Displays all available bookings. option 11
      */
     private static void viewAvailableBookings() {
-
-        List<Booking> availableBookings = new ArrayList<>(swimmingSchool.getBookings().values());
-
-        System.out.println("Available Bookings:");
-        System.out.printf("%-10s | %-15s | %-12s | %-12s | %-15s | %-12s | %-12s | %-10s%n",
-                "Booking ID", "Learner Name", "Current Grade", "Booked Grade", "Lesson Date", "Lesson Day", "Lesson Time", "Booking Status");
-
-        for (Booking availableBooking : availableBookings) {
-            Learner learner = availableBooking.getLearner();
-            SwimmingLesson lesson = availableBooking.getLesson();
-            Grade learnerCurrentGrade = learner.getCurrentGrade();
-            Grade learnerBookedGrade = lesson.getGrade();
-            String status = availableBooking.getBookingStatus();
-            LocalDate lessonDate = lesson.getDate();
-            DayOfWeek lessonDay = lesson.getDate().getDayOfWeek();
-            String lessonTime = formatTimeSlot(lesson.getTimeSlot());
-
-
-            System.out.printf("%-10s | %-15s | %-12s | %-12s | %-15s | %-12s | %-12s | %-10s%n",
-                    availableBooking.getBookingID(), learner.getName(), learnerCurrentGrade,
-                    learnerBookedGrade, lessonDate, lessonDay, lessonTime, status);
+        BOOKING_TABLE.line("Available Bookings:").line(BOOKING_HEADER);
+        for (Booking availableBooking : swimmingSchool.getBookings().values()) {
+            appendBookingRow(availableBooking);
         }
+        BOOKING_TABLE.flushTo(System.out);
     }
 
     /**
@@ -322,7 +376,8 @@ public class Main {
                 System.out.println("Invalid grade! Please enter a grade between 1 and 5.");
             }
         }
-        swimmingSchool.addLearner(name, gender, age, emergencyContact, grade);
+        String id = swimmingSchool.addLearner(name, gender, age, emergencyContact, grade);
+        System.out.println("New learner with ID " + id + " and name " + name + " has been added.");
     }
 
     /**
@@ -338,62 +393,61 @@ public class Main {
         }
     }
 
+    /**
+     * Search learners by name, ID or emergency contact and show the best matches.
+     */
+    public static void searchLearners() {
+        System.out.println("Enter part of the learner's name, ID or emergency contact:");
+        // Skip the rest of the menu line, the query may have several words
+        scanner.nextLine();
+        String query = scanner.nextLine();
+        List<Learner> learners = swimmingSchool.searchLearners(query, 10);
+        if (learners.isEmpty()) {
+            System.out.println("No learners found matching: " + query);
+            return;
+        }
+        System.out.println("-------------------------------");
+        System.out.printf("%-5s | %-15s | %-10s%n", "ID", "Name", "Grade");
+        System.out.println("-------------------------------");
+        for (Learner learner : learners) {
+            System.out.printf("%-5s | %-15s | %-10s%n", learner.getId(), learner.getName(), learner.getCurrentGrade());
+        }
+    }
+
 
     /**
      * This is used as formatted view for timetable
      * @param swimmingLessons
      */
     public static void viewTimetable(List<SwimmingLesson> swimmingLessons) {
-        System.out.println("_______________________________________________________________________________________");
-        System.out.printf("| %-5s | %-10s | %-12s | %-10s | %-15s | %-10s |%n",
-                "Grade", "Day", "Date", "Time", "Coach", "Available Slots");
-        System.out.println("_______________________________________________________________________________________");
+        TIMETABLE_TABLE.line(TIMETABLE_RULE).line(TIMETABLE_HEADER).line(TIMETABLE_RULE);
 
         for (SwimmingLesson swimmingLesson : swimmingLessons) {
             Coach coach = swimmingLesson.getCoach();
-            System.out.printf("| %-5s | %-10s | %-12s | %-10s | %-15s | %-10s |%n",
-                    swimmingLesson.getGrade(),
-                    swimmingLesson.getDate().getDayOfWeek(),
-                    swimmingLesson.getDate(),
-                    swimmingLesson.getTimeSlot(),
-                    coach.getName(),
-                    swimmingLesson.getAvailableSlots());
+            TIMETABLE_TABLE.cell(swimmingLesson.getGrade().name())
+                    .cell(swimmingLesson.getDate().getDayOfWeek().name())
+                    .cell(TableRenderer.formatDate(swimmingLesson.getDate()))
+                    .cell(TableRenderer.formatTime(swimmingLesson.getTimeSlot()))
+                    .cell(coach.getName())
+                    .cell(swimmingLesson.getAvailableSlots())
+                    .endRow();
         }
+        TIMETABLE_TABLE.flushTo(System.out);
     }
 
 
 
     /**
      * This is a formatted view for Bookings whose status is BOOKED
-     * @return
      */
-    private static List<Booking> viewAvailableBookedBookings() {
-        List<Booking> availableBookings = new ArrayList<>();
+    private static void viewAvailableBookedBookings() {
+        BOOKING_TABLE.line("Available Bookings:").line(BOOKING_HEADER);
         for (Booking booking : swimmingSchool.getBookings().values()) {
             if (booking.getBookingStatus().equals(BookingStatus.BOOKED.name())) {
-                availableBookings.add(booking);
+                appendBookingRow(booking);
             }
         }
-        System.out.println("Available Bookings:");
-        System.out.printf("%-10s | %-15s | %-12s | %-12s | %-15s | %-12s | %-12s | %-10s%n",
-                "Booking ID", "Learner Name", "Current Grade", "Booked Grade", "Lesson Date", "Lesson Day", "Lesson Time", "Booking Status");
-
-        for (Booking availableBooking : availableBookings) {
-            Learner learner = availableBooking.getLearner();
-            SwimmingLesson lesson = availableBooking.getLesson();
-            Grade learnerCurrentGrade = learner.getCurrentGrade();
-            Grade learnerBookedGrade = lesson.getGrade();
-            String status = availableBooking.getBookingStatus();
-            LocalDate lessonDate = lesson.getDate();
-            DayOfWeek lessonDay = lesson.getDate().getDayOfWeek();
-            String lessonTime = formatTimeSlot(lesson.getTimeSlot());
-
-
-            System.out.printf("%-10s | %-15s | %-12s | %-12s | %-15s | %-12s | %-12s | %-10s%n",
-                    availableBooking.getBookingID(), learner.getName(), learnerCurrentGrade,
-                    learnerBookedGrade, lessonDate, lessonDay, lessonTime, status);
-        }
-        return availableBookings;
+        BOOKING_TABLE.flushTo(System.out);
     }
 
     /**
@@ -471,13 +525,25 @@ public class Main {
      * @return
      */
     private static String formatTimeSlot(LocalTime time) {
-        // Format time slot in desired format
-        return String.format("%02d:%02d (%d:%02d %s)",
-                time.getHour(),
-                time.getMinute(),
-                time.getHour() > 12 ? time.getHour() - 12 : time.getHour(),
-                time.getMinute(),
-                time.getHour() < 12 ? "AM" : "PM");
+        return TableRenderer.formatTimeSlot(time);
+    }
+
+    /**
+     * Appends one booking as a row of the booking table
+     * @param booking
+     */
+    private static void appendBookingRow(Booking booking) {
+        Learner learner = booking.getLearner();
+        SwimmingLesson lesson = booking.getLesson();
+        BOOKING_TABLE.cell(booking.getBookingID())
+                .cell(learner.getName())
+                .cell(learner.getCurrentGrade().name())
+                .cell(lesson.getGrade().name())
+                .cell(TableRenderer.formatDate(lesson.getDate()))
+                .cell(lesson.getDate().getDayOfWeek().name())
+                .cell(formatTimeSlot(lesson.getTimeSlot()))
+                .cell(booking.getBookingStatus())
+                .endRow();
     }
 
     /**
@@ -4,5 +4,6 @@ public enum BookingStatus {
     BOOKED,
     CANCELLED,
     ATTENDED,
-    CHANGED
+    CHANGED,
+    NO_SHOW
 }
@@ -0,0 +1,9 @@
+package org.hjss.constants;
+
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF
+}
@@ -0,0 +1,7 @@
+package org.hjss.exception;
+
+public class ConcurrentChange extends Exception{
+    public ConcurrentChange(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,7 @@
+package org.hjss.exception;
+
+public class RequestRejected extends Exception{
+    public RequestRejected(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,7 @@
+package org.hjss.exception;
+
+public class ScheduleConflict extends Exception{
+    public ScheduleConflict(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,41 @@
+package org.hjss.models;
+
+/**
+ * A change to the availability of a lesson, as published by the availability feed.
+ */
+public class AvailabilityChange {
+
+    /**
+     * What happened to the lesson.
+     */
+    public enum Type {
+        ADDED,
+        SLOTS,
+        REMOVED
+    }
+
+    private final Type type;
+    private final SwimmingLesson lesson;
+    private final int availableSlots;
+
+    public AvailabilityChange(Type type, SwimmingLesson lesson, int availableSlots) {
+        this.type = type;
+        this.lesson = lesson;
+        this.availableSlots = availableSlots;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public SwimmingLesson getLesson() {
+        return lesson;
+    }
+
+    /**
+     * @return The number of free slots of the lesson at the time of the change.
+     */
+    public int getAvailableSlots() {
+        return availableSlots;
+    }
+}
@@ -2,13 +2,13 @@ package org.hjss.models;
 
 
 import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Booking {
     private String bookingID;
     private LocalDate bookingDate;
     private Learner learner;
-    private SwimmingLesson swimmingLesson;
-    private String bookingStatus;
+    private final AtomicReference<State> state = new AtomicReference<>(new State(null, null, 0));
     private Review review;
 
     public Booking() {
@@ -18,8 +18,7 @@ public class Booking {
         this.bookingID = bookingID;
         this.bookingDate = bookingDate;
         this.learner = learner;
-        this.swimmingLesson = swimmingLesson;
-        this.bookingStatus = bookingStatus;
+        this.state.set(new State(swimmingLesson, bookingStatus, 0));
         this.review = review;
     }
 
@@ -48,19 +47,48 @@ public class Booking {
     }
 
     public SwimmingLesson getLesson() {
-        return swimmingLesson;
+        return state.get().getLesson();
     }
 
     public void setLesson(SwimmingLesson swimmingLesson) {
-        this.swimmingLesson = swimmingLesson;
+        State current;
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, new State(swimmingLesson, current.getStatus(), current.getVersion() + 1)));
     }
 
     public String getBookingStatus() {
-        return bookingStatus;
+        return state.get().getStatus();
     }
 
     public void setBookingStatus(String bookingStatus) {
-        this.bookingStatus = bookingStatus;
+        State current;
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, new State(current.getLesson(), bookingStatus, current.getVersion() + 1)));
+    }
+
+    /**
+     * @return The lesson, status and version of this booking, read together.
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    public long getVersion() {
+        return state.get().getVersion();
+    }
+
+    /**
+     * Moves the booking to a new lesson and status, unless it was changed since the given state was read.
+     *
+     * @param expected The state the change was decided on.
+     * @param lesson   The new lesson.
+     * @param status   The new status.
+     * @return true if the booking was updated, false if another update came first.
+     */
+    public boolean compareAndSet(State expected, SwimmingLesson lesson, String status) {
+        return state.compareAndSet(expected, new State(lesson, status, expected.getVersion() + 1));
     }
 
     public Review getReview() {
@@ -70,4 +98,32 @@ public class Booking {
     public void setReview(Review review) {
         this.review = review;
     }
+
+    /**
+     * The lesson and status of a booking with the version they were written at. Every update creates a
+     * new state with the next version, so a state read earlier tells whether the booking has changed since.
+     */
+    public static final class State {
+        private final SwimmingLesson lesson;
+        private final String status;
+        private final long version;
+
+        State(SwimmingLesson lesson, String status, long version) {
+            this.lesson = lesson;
+            this.status = status;
+            this.version = version;
+        }
+
+        public SwimmingLesson getLesson() {
+            return lesson;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
 }
@@ -1,10 +1,19 @@
 package org.hjss.models;
 
+import org.hjss.exception.ScheduleConflict;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class Coach {
     private String name;
     private List<SwimmingLesson> swimmingLessons;
+    private int handle = -1;
+    // Lessons of this coach keyed by start time, used to find overlaps in O(log n)
+    private final TreeMap<LocalDateTime, SwimmingLesson> schedule = new TreeMap<>();
 
     public Coach() {
     }
@@ -30,4 +39,63 @@ public class Coach {
         this.swimmingLessons = swimmingLessons;
     }
 
+    /**
+     * Finds a lesson of this coach overlapping the given lesson.
+     *
+     * @param lesson The lesson to check.
+     * @return The overlapping lesson, or null if the coach is free.
+     */
+    public synchronized SwimmingLesson findConflict(SwimmingLesson lesson) {
+        LocalDateTime start = lesson.getStart();
+        LocalDateTime end = lesson.getEnd();
+        Map.Entry<LocalDateTime, SwimmingLesson> before = schedule.floorEntry(start);
+        if (before != null && before.getValue() != lesson && before.getValue().getEnd().isAfter(start)) {
+            return before.getValue();
+        }
+        Map.Entry<LocalDateTime, SwimmingLesson> after = schedule.higherEntry(start);
+        if (after != null && after.getValue() != lesson && after.getKey().isBefore(end)) {
+            return after.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Adds a lesson to this coach's schedule after checking it does not overlap another one.
+     *
+     * @param lesson The lesson to schedule.
+     * @throws ScheduleConflict If the coach already has an overlapping lesson.
+     */
+    public synchronized void scheduleLesson(SwimmingLesson lesson) throws ScheduleConflict {
+        SwimmingLesson conflict = findConflict(lesson);
+        if (conflict != null) {
+            throw new ScheduleConflict("Coach " + name + " already has lesson " + conflict.getGrade() + " on "
+                    + conflict.getDate() + " at " + conflict.getTimeSlot());
+        }
+        schedule.put(lesson.getStart(), lesson);
+        if (swimmingLessons == null) {
+            swimmingLessons = new ArrayList<>();
+        }
+        swimmingLessons.add(lesson);
+    }
+
+    /**
+     * Removes a lesson from this coach's schedule.
+     *
+     * @param lesson The lesson to remove.
+     */
+    public synchronized void unscheduleLesson(SwimmingLesson lesson) {
+        schedule.remove(lesson.getStart(), lesson);
+        if (swimmingLessons != null) {
+            swimmingLessons.remove(lesson);
+        }
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+
+    public void setHandle(int handle) {
+        this.handle = handle;
+    }
+
 }
@@ -4,6 +4,7 @@ import org.hjss.constants.Gender;
 import org.hjss.constants.Grade;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Learner {
 
@@ -13,7 +14,9 @@ public class Learner {
     private int age;
     private String emergencyContact;
     private Grade currentGrade;
-    private List<Booking> bookings;
+    // Read far more often than written, and written by concurrent booking, cancellation and archive paths
+    private List<Booking> bookings = new CopyOnWriteArrayList<>();
+    private int handle = -1;
 
     public Learner() {
     }
@@ -25,7 +28,7 @@ public class Learner {
         this.age = age;
         this.emergencyContact = emergencyContact;
         this.currentGrade = currentGrade;
-        this.bookings = bookings;
+        setBookings(bookings);
     }
 
     public String getId() {
@@ -80,8 +83,19 @@ public class Learner {
         return bookings;
     }
 
+    /**
+     * @param bookings The bookings, copied into a list safe to share between threads.
+     */
     public void setBookings(List<Booking> bookings) {
-        this.bookings = bookings;
+        this.bookings = bookings == null ? new CopyOnWriteArrayList<>() : new CopyOnWriteArrayList<>(bookings);
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+
+    public void setHandle(int handle) {
+        this.handle = handle;
     }
 
 }
@@ -0,0 +1,23 @@
+package org.hjss.models;
+
+/**
+ * Listener notified when the free slots of a swimming lesson change or the lesson is cancelled.
+ */
+public interface LessonChangeListener {
+
+    /**
+     * Called after the number of free slots of a lesson has changed.
+     *
+     * @param lesson         The lesson.
+     * @param availableSlots The number of free slots after the change.
+     */
+    void slotsChanged(SwimmingLesson lesson, int availableSlots);
+
+    /**
+     * Called after a lesson has been cancelled. Its free slots no longer change once it is.
+     *
+     * @param lesson The lesson.
+     */
+    default void lessonCancelled(SwimmingLesson lesson) {
+    }
+}
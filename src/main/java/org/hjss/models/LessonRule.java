@@ -0,0 +1,80 @@
+package org.hjss.models;
+
+import org.hjss.constants.Grade;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+
+/**
+ * A weekly recurrence rule from which swimming lessons are generated.
+ */
+public class LessonRule {
+    private DayOfWeek dayOfWeek;
+    private LocalTime timeSlot;
+    private Grade grade;
+    private Coach coach;
+    private int capacity = 4;
+
+    public LessonRule() {
+    }
+
+    public LessonRule(DayOfWeek dayOfWeek, LocalTime timeSlot, Grade grade, Coach coach, int capacity) {
+        this.dayOfWeek = dayOfWeek;
+        this.timeSlot = timeSlot;
+        this.grade = grade;
+        this.coach = coach;
+        this.capacity = capacity;
+    }
+
+    public DayOfWeek getDayOfWeek() {
+        return dayOfWeek;
+    }
+
+    public void setDayOfWeek(DayOfWeek dayOfWeek) {
+        this.dayOfWeek = dayOfWeek;
+    }
+
+    public LocalTime getTimeSlot() {
+        return timeSlot;
+    }
+
+    public void setTimeSlot(LocalTime timeSlot) {
+        this.timeSlot = timeSlot;
+    }
+
+    public Grade getGrade() {
+        return grade;
+    }
+
+    public void setGrade(Grade grade) {
+        this.grade = grade;
+    }
+
+    public Coach getCoach() {
+        return coach;
+    }
+
+    public void setCoach(Coach coach) {
+        this.coach = coach;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates the lesson this rule describes on the given date.
+     *
+     * @param date The date of the lesson.
+     * @return A new swimming lesson with all slots available.
+     */
+    public SwimmingLesson createLesson(LocalDate date) {
+        return new SwimmingLesson(grade, date, timeSlot, coach, new ArrayList<>(), capacity, new ArrayList<>(), capacity);
+    }
+}
@@ -0,0 +1,64 @@
+package org.hjss.models;
+
+import java.time.LocalDateTime;
+
+/**
+ * A message to a learner about one of their bookings.
+ */
+public class Notification {
+
+    /**
+     * Why the learner is told.
+     */
+    public enum Type {
+        BOOKED,
+        CHANGED,
+        MOVED,
+        CANCELLED,
+        ATTENDED,
+        NO_SHOW
+    }
+
+    private final Type type;
+    private final String learnerId;
+    private final String contact;
+    private final String bookingId;
+    private final String message;
+    private final LocalDateTime createdAt;
+
+    public Notification(Type type, String learnerId, String contact, String bookingId, String message, LocalDateTime createdAt) {
+        this.type = type;
+        this.learnerId = learnerId;
+        this.contact = contact;
+        this.bookingId = bookingId;
+        this.message = message;
+        this.createdAt = createdAt;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getLearnerId() {
+        return learnerId;
+    }
+
+    /**
+     * @return The learner's contact the message goes to.
+     */
+    public String getContact() {
+        return contact;
+    }
+
+    public String getBookingId() {
+        return bookingId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
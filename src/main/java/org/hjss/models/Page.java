@@ -0,0 +1,34 @@
+package org.hjss.models;
+
+import java.util.List;
+
+/**
+ * One page of a cursor-based query. The cursor of the last item is passed back to
+ * get the next page.
+ *
+ * @param <T> The type of the items.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return The cursor to get the next page with, or null if this is the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -2,12 +2,19 @@ package org.hjss.models;
 
 import org.hjss.constants.Grade;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class SwimmingLesson {
 
+    public static final Duration DURATION = Duration.ofHours(1);
+
     private Grade grade;
     private LocalDate date;
     private LocalTime timeSlot;
@@ -15,7 +22,12 @@ public class SwimmingLesson {
     private List<Learner> learners;
     private int capacity = 4;
     private List<Review> reviews;
-    private int availableSlots = 4;
+    // The version in the high 32 bits and the free slots in the low 32 bits, so both change in one CAS
+    private final AtomicLong slotState = new AtomicLong(4);
+    private int handle = -1;
+    private volatile boolean cancelled;
+    private final List<LessonChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
 
     public SwimmingLesson() {
     }
@@ -28,7 +40,7 @@ public class SwimmingLesson {
         this.learners = learners;
         this.capacity = capacity;
         this.reviews = reviews;
-        this.availableSlots = availableSlots;
+        this.slotState.set(availableSlots);
     }
 
     public Grade getGrade() {
@@ -88,10 +100,151 @@ public class SwimmingLesson {
     }
 
     public int getAvailableSlots() {
-        return availableSlots;
+        return slotsOf(slotState.get());
     }
 
     public void setAvailableSlots(int availableSlots) {
-        this.availableSlots = availableSlots;
+        long state;
+        do {
+            state = slotState.get();
+        } while (!slotState.compareAndSet(state, pack(versionOf(state) + 1, availableSlots)));
+        fireSlotsChanged(availableSlots);
+    }
+
+    /**
+     * @return The number of times the free slots of this lesson have changed.
+     */
+    public long getVersion() {
+        return versionOf(slotState.get());
+    }
+
+    /**
+     * Sets the free slots, unless they have changed since the given version was read.
+     *
+     * @param expectedVersion The version the new value was computed from.
+     * @param availableSlots  The new number of free slots.
+     * @return true if the slots were set, false if another update came first.
+     */
+    public boolean compareAndSetSlots(long expectedVersion, int availableSlots) {
+        long state = slotState.get();
+        if (versionOf(state) != expectedVersion
+                || !slotState.compareAndSet(state, pack(expectedVersion + 1, availableSlots))) {
+            return false;
+        }
+        fireSlotsChanged(availableSlots);
+        return true;
+    }
+
+    /**
+     * Takes one free slot if there is one. Concurrent callers never take more slots than are free.
+     *
+     * @return true if a slot was taken, false if the lesson is full.
+     */
+    public boolean tryAcquireSlot() {
+        return tryAdjustSlots(-1);
+    }
+
+    /**
+     * Gives a taken slot back, never going above the capacity.
+     *
+     * @return true if the slot was given back, false if all slots were already free.
+     */
+    public boolean releaseSlot() {
+        return tryAdjustSlots(1);
+    }
+
+    /**
+     * Adds to the free slots in one step, unless that would take them below zero or above the capacity.
+     * No slots are taken once the lesson is cancelled.
+     *
+     * @param delta The number of slots to give back, or to take if negative.
+     * @return true if the slots were adjusted, false if they were left as they were.
+     */
+    public boolean tryAdjustSlots(int delta) {
+        long state;
+        int slots;
+        do {
+            state = slotState.get();
+            slots = slotsOf(state) + delta;
+            if (slots < 0 || slots > capacity || delta < 0 && cancelled) {
+                return false;
+            }
+        } while (!slotState.compareAndSet(state, pack(versionOf(state) + 1, slots)));
+        if (delta != 0) {
+            fireSlotsChanged(slots);
+        }
+        return true;
+    }
+
+    /**
+     * @return The lock transactions over several bookings hold while they move bookings on or off this lesson.
+     */
+    public ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Registers a listener notified whenever the free slots of this lesson change.
+     *
+     * @param listener The listener to add.
+     */
+    public void addChangeListener(LessonChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * @param listener The listener to remove.
+     */
+    public void removeChangeListener(LessonChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    // Helper method to notify the listeners of a change of the free slots...
+    private void fireSlotsChanged(int slots) {
+        for (LessonChangeListener listener : changeListeners) {
+            listener.slotsChanged(this, slots);
+        }
+    }
+
+    private static long pack(long version, int slots) {
+        return version << 32 | (slots & 0xFFFFFFFFL);
+    }
+
+    private static long versionOf(long state) {
+        return state >>> 32;
+    }
+
+    private static int slotsOf(long state) {
+        return (int) state;
+    }
+
+    public LocalDateTime getStart() {
+        return LocalDateTime.of(date, timeSlot);
+    }
+
+    public LocalDateTime getEnd() {
+        return getStart().plus(DURATION);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void setCancelled(boolean cancelled) {
+        boolean wasCancelled = this.cancelled;
+        this.cancelled = cancelled;
+        if (cancelled && !wasCancelled) {
+            for (LessonChangeListener listener : changeListeners) {
+                listener.lessonCancelled(this);
+            }
+        }
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+
+    public void setHandle(int handle) {
+        this.handle = handle;
     }
 }
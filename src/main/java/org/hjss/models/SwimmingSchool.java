@@ -1,33 +1,103 @@
 package org.hjss.models;
 
+import org.hjss.constants.BookingStatus;
 import org.hjss.constants.Gender;
 import org.hjss.constants.Grade;
 import org.hjss.exception.InvalidBooking;
+import org.hjss.exception.InvalidLesson;
+import org.hjss.exception.RequestRejected;
+import org.hjss.exception.ScheduleConflict;
+import org.hjss.notification.NotificationOutbox;
+import org.hjss.service.AdmissionController;
+import org.hjss.service.AvailabilityFeed;
+import org.hjss.service.BookingIndex;
+import org.hjss.service.BookingTransaction;
+import org.hjss.service.GradeProgression;
+import org.hjss.service.LearnerSearchIndex;
+import org.hjss.service.LessonArchive;
+import org.hjss.service.LessonCancellationPipeline;
+import org.hjss.service.LessonQuery;
+import org.hjss.service.LessonRecommender;
+import org.hjss.service.LessonSearchIndex;
+import org.hjss.service.ReportPipeline;
+import org.hjss.service.ReviewAnalytics;
+import org.hjss.service.SeatInventory;
 import org.hjss.service.SwimmingSchoolService;
+import org.hjss.service.TimetableIndex;
+import org.hjss.utils.AttendanceScheduler;
+import org.hjss.utils.EventLogger;
+import org.hjss.utils.IdempotencyCache;
+import org.hjss.utils.IdentityRegistry;
 import org.hjss.utils.SwimmingSchoolDataInitializer;
+import org.hjss.utils.TimetableScheduler;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * This class represents a swimming school with a timetable, coaches, learners, and booking management.
  */
 public class SwimmingSchool {
-    private final List<SwimmingLesson> timetable = new ArrayList<>();
-    private final List<Coach> coaches = new ArrayList<>();
-    private final List<Learner> learners = new ArrayList<>();
-    private final Map<String, List<SwimmingLesson>> lessonMap = new HashMap<>();
-    private final Map<String, Booking> bookings = new HashMap<>();
+    private final List<SwimmingLesson> timetable = new CopyOnWriteArrayList<>();
+    private final List<Coach> coaches = new CopyOnWriteArrayList<>();
+    private final AtomicInteger learnerSequence = new AtomicInteger();
+    private final Map<String, Booking> bookings = new ConcurrentHashMap<>();
     private static SwimmingSchool swimmingSchool = null;
+    // Sequence IDs (L1, L2, ...) in numeric order, then any other IDs in text order
+    private static final Comparator<Learner> BY_LEARNER_ID = Comparator
+            .comparingLong((Learner learner) -> sequenceNumber(learner.getId()))
+            .thenComparing(Learner::getId);
     SwimmingSchoolService swimmingSchoolService = new SwimmingSchoolService();
+    private final LessonRecommender lessonRecommender = new LessonRecommender(Collections.emptyList());
+    private final TimetableScheduler timetableScheduler = new TimetableScheduler(this);
+    private final IdentityRegistry identityRegistry = new IdentityRegistry();
+    private final ReviewAnalytics reviewAnalytics = new ReviewAnalytics(identityRegistry);
+    private final TimetableIndex timetableIndex = new TimetableIndex();
+    private final BookingIndex bookingIndex = new BookingIndex();
+    private final AttendanceScheduler attendanceScheduler = new AttendanceScheduler(this);
+    private final SeatInventory seatInventory = new SeatInventory(Duration.ofMinutes(10));
+    private volatile AdmissionController admissionController;
+    private volatile NotificationOutbox notificationOutbox;
+    private volatile EventLogger eventLogger = EventLogger.disabled();
+    private final GradeProgression gradeProgression = new GradeProgression();
+    private final LessonSearchIndex lessonSearchIndex = new LessonSearchIndex(identityRegistry);
+    private final LearnerSearchIndex learnerSearchIndex = new LearnerSearchIndex(identityRegistry);
+    private final AvailabilityFeed availabilityFeed = new AvailabilityFeed();
+    private final List<Consumer<Booking>> bookingListeners = new CopyOnWriteArrayList<>();
+    private final IdempotencyCache idempotencyCache = new IdempotencyCache(100_000, Duration.ofHours(24));
+    private final LessonCancellationPipeline cancellationPipeline = new LessonCancellationPipeline(bookingIndex, this::getLessonRecommender);
+    private int reportParallelism = Runtime.getRuntime().availableProcessors();
+    private ReportPipeline reportPipeline;
+    private volatile LessonArchive lessonArchive;
 
     /**
      * constructor which when initialises the default data
      */
     public SwimmingSchool() {
-        SwimmingSchoolDataInitializer.initializeData(this);
+        this(true);
+    }
+
+    /**
+     * constructor which optionally initialises the default data, an empty school is used to import data into
+     *
+     * @param withDefaultData Whether to initialise the default timetable, learners and bookings.
+     */
+    public SwimmingSchool(boolean withDefaultData) {
+        if (withDefaultData) {
+            SwimmingSchoolDataInitializer.initializeData(this);
+            reviewAnalytics.recordAll(timetable);
+        }
     }
 
 
@@ -69,6 +139,17 @@ public class SwimmingSchool {
     }
 
 
+    /**
+     * View the lessons between two dates, including lessons beyond the generated window.
+     *
+     * @param from The first date, inclusive.
+     * @param to   The last date, inclusive.
+     * @return The lessons in the date range ordered by date and time.
+     */
+    public List<SwimmingLesson> viewTimetable(LocalDate from, LocalDate to) {
+        return timetableScheduler.lessonsBetween(from, to);
+    }
+
     /**
      * Book a swimming lesson for a learner.
      *
@@ -78,19 +159,41 @@ public class SwimmingSchool {
      * @return A message indicating the result of the booking attempt.
      */
     public String bookLesson(LocalTime time, LocalDate date, String learnerId) {
-        System.out.println("----------- Booking Swimming Lesson -----------------");
-        // Search for the lesson in the timetable based on the provided time and day
-        SwimmingLesson swimmingLessonToBook = getLessonByTimeAndDay(time, date);
         try {
-            // Find the learner with the given ID
-            Learner learner = getLearnerByLearnerId(learnerId);
-            return swimmingSchoolService.bookLesson(swimmingLessonToBook, learner, bookings);
+            return book(time, date, learnerId);
         } catch (Exception e) {
             return e.getMessage();
         }
     }
 
 
+    /**
+     * Hold a seat of a swimming lesson for a learner while they confirm the booking.
+     *
+     * @param time      The time of the lesson.
+     * @param date      The date of the lesson.
+     * @param learnerId The ID of the learner.
+     * @return The ID of the hold.
+     * @throws InvalidBooking If no seat could be held, with the reason as its message.
+     */
+    public String reserveLesson(LocalTime time, LocalDate date, String learnerId) throws InvalidBooking {
+        return holdSeat(() -> reserve(time, date, learnerId));
+    }
+
+    /**
+     * Book the seat held by a hold. The seat is given back if the booking fails.
+     *
+     * @param holdId The ID of the hold.
+     * @return A message indicating the result of the booking attempt.
+     */
+    public String confirmReservation(String holdId) {
+        try {
+            return confirm(holdId);
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
     /**
      * Change a booking to a different time and date.
      *
@@ -100,17 +203,413 @@ public class SwimmingSchool {
      * @return A message indicating the result of the change attempt.
      */
     public String changeBooking(String bookingId, LocalTime time, LocalDate date) {
-        System.out.println("----------- Changing Lesson Booking:-----------------");
-        Booking booking = getBookingById(bookingId);
-        Learner learner = booking.getLearner();
-        SwimmingLesson swimmingLessonToBook = getLessonByTimeAndDay(time, date);
         try {
-            return swimmingSchoolService.changeBooking(booking, learner, swimmingLessonToBook);
+            return change(bookingId, time, date);
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Start a transaction moving several bookings at once, all or nothing.
+     *
+     * @return A new transaction.
+     */
+    public BookingTransaction beginTransaction() {
+        return new BookingTransaction(bookingIndex);
+    }
+
+    /**
+     * Swap the lessons of two bookings in one step, so neither learner is left without a seat
+     * even when both lessons are full.
+     *
+     * @param firstBookingId  The ID of the first booking.
+     * @param secondBookingId The ID of the second booking.
+     * @return A message indicating the result of the swap.
+     */
+    public String swapBookings(String firstBookingId, String secondBookingId) {
+        Booking first = liveBooking(firstBookingId);
+        Booking second = liveBooking(secondBookingId);
+        try {
+            beginTransaction().swap(first, second).commit();
+            return "Bookings " + firstBookingId + " and " + secondBookingId + " have been swapped successfully.";
         } catch (Exception e) {
             return e.getMessage();
         }
     }
 
+    /**
+     * Move every open booking of one lesson to another lesson in one step; if any of them cannot
+     * be moved, none is.
+     *
+     * @param fromTime The time of the lesson to move from.
+     * @param fromDate The date of the lesson to move from.
+     * @param toTime   The time of the lesson to move to.
+     * @param toDate   The date of the lesson to move to.
+     * @return A message indicating the result of the move.
+     */
+    public String moveGroup(LocalTime fromTime, LocalDate fromDate, LocalTime toTime, LocalDate toDate) {
+        SwimmingLesson from = acquireLesson(fromTime, fromDate);
+        SwimmingLesson to = acquireLesson(toTime, toDate);
+        if (from == null || to == null) {
+            timetableScheduler.releaseLesson(from);
+            timetableScheduler.releaseLesson(to);
+            return "Lesson not found with given details retry again with valid details.";
+        }
+        BookingTransaction transaction = beginTransaction();
+        try {
+            for (Iterator<Booking> iterator = bookingIndex.lessonIterator(from.getHandle(), null); iterator.hasNext(); ) {
+                Booking booking = iterator.next();
+                String status = booking.getBookingStatus();
+                if (status.equals(BookingStatus.BOOKED.name()) || status.equals(BookingStatus.CHANGED.name())) {
+                    transaction.move(booking, to);
+                }
+            }
+            int moved = transaction.size();
+            transaction.commit();
+            return moved + " bookings moved from lesson " + from.getGrade() + " on " + from.getDate()
+                    + " to lesson " + to.getGrade() + " on " + to.getDate() + ".";
+        } catch (Exception e) {
+            transaction.rollback();
+            return e.getMessage();
+        } finally {
+            timetableScheduler.releaseLesson(from);
+            timetableScheduler.releaseLesson(to);
+        }
+    }
+
+    /**
+     * Search the timetable with any combination of day, grade, coach, time, week, date range and free slots.
+     *
+     * @param query The query.
+     * @return The matching lessons ordered by date and time.
+     */
+    public List<SwimmingLesson> searchLessons(LessonQuery query) {
+        return lessonSearchIndex.search(query);
+    }
+
+    /**
+     * Count the lessons of the timetable matching a query.
+     *
+     * @param query The query.
+     * @return The number of matching lessons.
+     */
+    public int countLessons(LessonQuery query) {
+        return lessonSearchIndex.count(query);
+    }
+
+    /**
+     * Recommend the earliest upcoming lessons with free slots a learner can book,
+     * at their current grade or one grade above.
+     *
+     * @param learnerId The ID of the learner.
+     * @param coachName The coach's name to prefer, or null for no preference.
+     * @param limit     The maximum number of lessons to return.
+     * @return The recommended lessons, earliest first with the preferred coach's lessons ahead.
+     */
+    public List<SwimmingLesson> recommendLessons(String learnerId, String coachName, int limit) {
+        Learner learner = getLearnerByLearnerId(learnerId);
+        return getLessonRecommender().recommend(learner, coachName, limit, LocalDate.now());
+    }
+
+    /**
+     * Book a swimming lesson once per idempotency key; a retry with the same key returns the original result.
+     *
+     * @param idempotencyKey The client's key for this request, or null to always book.
+     * @param time           The time of the lesson.
+     * @param date           The date of the lesson.
+     * @param learnerId      The ID of the learner booking the lesson.
+     * @return A message indicating the result of the booking attempt.
+     */
+    public String bookLesson(String idempotencyKey, LocalTime time, LocalDate date, String learnerId) {
+        return once("book", idempotencyKey, () -> book(time, date, learnerId));
+    }
+
+    /**
+     * Change a booking once per idempotency key; a retry with the same key returns the original result.
+     *
+     * @param idempotencyKey The client's key for this request, or null to always change.
+     * @param bookingId      The ID of the booking to change.
+     * @param time           The new time for the booking.
+     * @param date           The new date for the booking.
+     * @return A message indicating the result of the change attempt.
+     */
+    public String changeBooking(String idempotencyKey, String bookingId, LocalTime time, LocalDate date) {
+        return once("change", idempotencyKey, () -> change(bookingId, time, date));
+    }
+
+    /**
+     * Cancel a booking once per idempotency key; a retry with the same key returns the original result.
+     *
+     * @param idempotencyKey The client's key for this request, or null to always cancel.
+     * @param bookingId      The ID of the booking to cancel.
+     * @return A message indicating the result of the cancellation attempt.
+     */
+    public String cancelBooking(String idempotencyKey, String bookingId) {
+        return once("cancel", idempotencyKey, () -> cancel(bookingId));
+    }
+
+    /**
+     * Provide a review once per idempotency key; a retry with the same key returns the original result.
+     *
+     * @param idempotencyKey The client's key for this request, or null to always review.
+     * @param bookingId      The ID of the booking to review.
+     * @param rating         The rating to provide.
+     * @return A message indicating the result of the review submission.
+     */
+    public String provideReview(String idempotencyKey, String bookingId, int rating) {
+        return once("review", idempotencyKey, () -> review(bookingId, rating));
+    }
+
+    /**
+     * Mark a booking as attended once per idempotency key; a retry with the same key returns the original result.
+     *
+     * @param idempotencyKey The client's key for this request, or null to always mark.
+     * @param bookingId      The ID of the booking to mark as attended.
+     * @return A message indicating the result of the operation.
+     * @throws InvalidBooking If the booking is not valid; failed requests are not remembered.
+     */
+    public String markBookingAttended(String idempotencyKey, String bookingId) throws InvalidBooking {
+        return idempotencyCache.execute(scope("attend", idempotencyKey), () -> markBookingAttended(bookingId));
+    }
+
+    /**
+     * Add a learner once per idempotency key; a retry with the same key returns the original learner ID.
+     *
+     * @param idempotencyKey   The client's key for this request, or null to always add.
+     * @param name             The name of the learner.
+     * @param gender           The gender of the learner.
+     * @param age              The age of the learner.
+     * @param emergencyContact The emergency contact of the learner.
+     * @param grade            The grade of the learner.
+     * @return The ID of the learner.
+     */
+    public String addLearner(String idempotencyKey, String name, String gender, int age, String emergencyContact, int grade) {
+        return idempotencyCache.execute(scope("learner", idempotencyKey), () -> addLearner(name, gender, age, emergencyContact, grade));
+    }
+
+    /**
+     * Hold a seat once per idempotency key; a retry with the same key returns the original hold.
+     *
+     * @param idempotencyKey The client's key for this request, or null to always reserve.
+     * @param time           The time of the lesson.
+     * @param date           The date of the lesson.
+     * @param learnerId      The ID of the learner.
+     * @return The ID of the hold.
+     * @throws InvalidBooking If no seat could be held, with the reason as its message.
+     */
+    public String reserveLesson(String idempotencyKey, LocalTime time, LocalDate date, String learnerId) throws InvalidBooking {
+        return holdSeat(() -> idempotencyCache.execute(scope("reserve", idempotencyKey), () -> reserve(time, date, learnerId)));
+    }
+
+    /**
+     * Confirm a hold once per idempotency key; a retry with the same key returns the original result.
+     *
+     * @param idempotencyKey The client's key for this request, or null to always confirm.
+     * @param holdId         The ID of the hold.
+     * @return A message indicating the result of the booking attempt.
+     */
+    public String confirmReservation(String idempotencyKey, String holdId) {
+        return once("confirm", idempotencyKey, () -> confirm(holdId));
+    }
+
+    /**
+     * Add a lesson to the timetable after checking its coach is free at that time.
+     *
+     * @param swimmingLesson The lesson to add.
+     * @throws ScheduleConflict If the coach already has an overlapping lesson.
+     */
+    public void addLesson(SwimmingLesson swimmingLesson) throws ScheduleConflict {
+        swimmingLesson.getCoach().scheduleLesson(swimmingLesson);
+        identityRegistry.register(swimmingLesson);
+        timetable.add(swimmingLesson);
+        indexLesson(swimmingLesson);
+    }
+
+    /**
+     * Add lessons already placed on their coaches' schedules to the timetable in one batch.
+     *
+     * @param swimmingLessons The lessons to add.
+     */
+    public void addLessons(List<SwimmingLesson> swimmingLessons) {
+        for (SwimmingLesson swimmingLesson : swimmingLessons) {
+            identityRegistry.register(swimmingLesson);
+        }
+        timetable.addAll(swimmingLessons);
+        for (SwimmingLesson swimmingLesson : swimmingLessons) {
+            indexLesson(swimmingLesson);
+        }
+    }
+
+    /**
+     * Remove lessons from the timetable in one batch. Their bookings are not touched.
+     *
+     * @param swimmingLessons The lessons to remove.
+     */
+    public void removeLessons(Collection<SwimmingLesson> swimmingLessons) {
+        timetable.removeAll(swimmingLessons);
+        for (SwimmingLesson swimmingLesson : swimmingLessons) {
+            timetableIndex.remove(swimmingLesson);
+            gradeProgression.remove(swimmingLesson);
+            lessonSearchIndex.remove(swimmingLesson);
+            lessonRecommender.removeLesson(swimmingLesson);
+            availabilityFeed.lessonRemoved(swimmingLesson);
+        }
+    }
+
+    /**
+     * Cancel lessons, for example when their coach is ill. The lessons leave the timetable and their
+     * coach's schedule, and every open booking on them is moved to another lesson the learner can book,
+     * or cancelled if there is none. The lessons are then archived with the bookings left on them; with
+     * no archive set those bookings stay live on the cancelled lessons, so they still count in the monthly
+     * summary and their IDs still resolve.
+     *
+     * @param swimmingLessons The lessons to cancel.
+     * @return One notification per booking moved or cancelled, for the learners concerned.
+     */
+    public List<Notification> cancelLessons(Collection<SwimmingLesson> swimmingLessons) {
+        List<SwimmingLesson> cancelled = new ArrayList<>();
+        for (SwimmingLesson swimmingLesson : swimmingLessons) {
+            if (!swimmingLesson.isCancelled()) {
+                swimmingLesson.setCancelled(true);
+                cancelled.add(swimmingLesson);
+            }
+        }
+        removeLessons(cancelled);
+        List<Notification> notifications = cancellationPipeline.rebook(cancelled);
+        retireLessons(cancelled);
+        NotificationOutbox outbox = notificationOutbox;
+        if (outbox != null) {
+            for (Notification notification : notifications) {
+                outbox.enqueue(notification);
+            }
+        }
+        return notifications;
+    }
+
+    // Helper method to archive cancelled lessons with the bookings left on them, or else take them off their coaches' schedules...
+    private void retireLessons(List<SwimmingLesson> cancelled) {
+        LessonArchive archive = lessonArchive;
+        if (archive != null) {
+            try {
+                archive.archive(this, cancelled);
+                return;
+            } catch (IOException e) {
+                eventLogger.warn("archive.write.failed", "lessons", cancelled.size(), "error", e.getMessage());
+            }
+        }
+        // The lessons are already off the timetable and its indexes; they keep their handles, which the
+        // bookings left on them are still indexed under
+        for (SwimmingLesson swimmingLesson : cancelled) {
+            swimmingLesson.getCoach().unscheduleLesson(swimmingLesson);
+        }
+    }
+
+    /**
+     * Cancel every upcoming lesson of a coach between two dates.
+     *
+     * @param coachName The coach's name.
+     * @param from      The first date, inclusive.
+     * @param to        The last date, inclusive.
+     * @return One notification per booking moved or cancelled, for the learners concerned.
+     */
+    public List<Notification> cancelCoachLessons(String coachName, LocalDate from, LocalDate to) {
+        return cancelLessons(searchLessons(LessonQuery.coach(coachName).and(LessonQuery.between(from, to))));
+    }
+
+    /**
+     * Add an existing booking to the school and its learner without the booking checks.
+     *
+     * @param booking The booking to add.
+     */
+    public void addBooking(Booking booking) {
+        booking.getLearner().getBookings().add(booking);
+        bookings.put(booking.getBookingID(), booking);
+        bookingIndex.add(booking);
+    }
+
+    /**
+     * Remove a booking from the school and its learner.
+     *
+     * @param booking The booking to remove.
+     */
+    public void removeBooking(Booking booking) {
+        bookings.remove(booking.getBookingID());
+        booking.getLearner().getBookings().remove(booking);
+        bookingIndex.remove(booking);
+    }
+
+    /**
+     * Get a page of the timetable in date and time order, including past lessons still in the timetable.
+     *
+     * @param afterCursor The cursor of the previous page, or null for the first page.
+     * @param limit       The maximum number of lessons on the page.
+     * @return The page of lessons, with the cursor of the next page if there is one.
+     */
+    public Page<SwimmingLesson> timetablePage(String afterCursor, int limit) {
+        return timetableIndex.page(afterCursor, limit);
+    }
+
+    /**
+     * Lazily iterate the timetable in date and time order without copying it.
+     *
+     * @param afterCursor The cursor to start after, or null to start at the first lesson.
+     * @return An iterator over the lessons.
+     */
+    public Iterator<SwimmingLesson> timetableIterator(String afterCursor) {
+        return timetableIndex.iterator(afterCursor);
+    }
+
+    /**
+     * Get a page of a learner's bookings in booking ID order.
+     *
+     * @param learnerId   The ID of the learner.
+     * @param afterCursor The cursor of the previous page, or null for the first page.
+     * @param limit       The maximum number of bookings on the page.
+     * @return The page of bookings, empty if the learner is unknown.
+     */
+    public Page<Booking> learnerBookingsPage(String learnerId, String afterCursor, int limit) {
+        Iterator<Booking> live = bookingIndex.learnerIterator(identityRegistry.learnerHandle(learnerId), afterCursor);
+        LessonArchive archive = lessonArchive;
+        if (archive == null) {
+            return BookingIndex.page(live, limit);
+        }
+        // Archived bookings come back from disk and are merged with the live ones in booking ID order
+        List<Booking> archived = new ArrayList<>();
+        try {
+            for (Booking booking : archive.findLearnerBookings(learnerId, this)) {
+                if (afterCursor == null || booking.getBookingID().compareTo(afterCursor) > 0) {
+                    archived.add(booking);
+                }
+            }
+        } catch (IOException e) {
+            eventLogger.warn("archive.read.failed", "learner", learnerId, "error", e.getMessage());
+        }
+        return BookingIndex.page(BookingIndex.merge(archived.iterator(), live), limit);
+    }
+
+    /**
+     * Get a page of the bookings of a lesson in booking ID order.
+     *
+     * @param swimmingLesson The lesson.
+     * @param afterCursor    The cursor of the previous page, or null for the first page.
+     * @param limit          The maximum number of bookings on the page.
+     * @return The page of bookings.
+     */
+    public Page<Booking> lessonBookingsPage(SwimmingLesson swimmingLesson, String afterCursor, int limit) {
+        return BookingIndex.page(bookingIndex.lessonIterator(swimmingLesson.getHandle(), afterCursor), limit);
+    }
+
+    /**
+     * Add a coach to the swimming school.
+     *
+     * @param coach The coach to add.
+     */
+    public void addCoach(Coach coach) {
+        identityRegistry.register(coach);
+        coaches.add(coach);
+    }
+
     /**
      * Get a swimming lesson by its time and date.
      *
@@ -119,12 +618,26 @@ public class SwimmingSchool {
      * @return The swimming lesson matching the provided time and date, or null if not found.
      */
     public SwimmingLesson getLessonByTimeAndDay(LocalTime time, LocalDate date) {
-        for (SwimmingLesson swimmingLesson : timetable) {
-            if (swimmingLesson.getTimeSlot().equals(time) && swimmingLesson.getDate().equals(date)) {
+        SwimmingLesson swimmingLesson = timetableIndex.find(time, date);
+        if (swimmingLesson != null) {
+            return swimmingLesson;
+        }
+        // Lessons beyond the rolling window are generated for the lookup but only kept once booked
+        return timetableScheduler.previewLesson(time, date);
+    }
+
+    // Helper method to find the lesson a booking operation works on, keeping a lesson beyond the window
+    // in the timetable until the operation releases it...
+    private SwimmingLesson acquireLesson(LocalTime time, LocalDate date) {
+        while (true) {
+            SwimmingLesson swimmingLesson = timetableIndex.find(time, date);
+            if (swimmingLesson == null) {
+                return timetableScheduler.materializeLesson(time, date);
+            }
+            if (timetableScheduler.pinLesson(swimmingLesson)) {
                 return swimmingLesson;
             }
         }
-        return null;
     }
 
     /**
@@ -134,12 +647,7 @@ public class SwimmingSchool {
      * @return The learner object matching the provided ID, or null if not found.
      */
     public Learner getLearnerByLearnerId(String learnerId) {
-        for (Learner l : learners) {
-            if (l.getId().equals(learnerId)) {
-                return l;
-            }
-        }
-        return null;
+        return identityRegistry.learner(identityRegistry.learnerHandle(learnerId));
     }
 
     /**
@@ -150,8 +658,17 @@ public class SwimmingSchool {
      * @throws InvalidBooking If the booking is not valid.
      */
     public String markBookingAttended(String bookingId) throws InvalidBooking {
-        Booking booking = getBookingById(bookingId);
-            return swimmingSchoolService.markBookingAttended(booking);
+        Booking booking = liveBooking(bookingId);
+        String reply = swimmingSchoolService.markBookingAttended(booking);
+        // Attending a lesson one grade higher moves the learner up to that grade
+        gradeProgression.promote(booking);
+        notifyLearner(Notification.Type.ATTENDED, booking, reply);
+        return reply;
+    }
+
+    // Helper method to look up a live booking, tolerating a missing ID...
+    private Booking liveBooking(String bookingId) {
+        return bookingId == null ? null : bookings.get(bookingId);
     }
 
     /**
@@ -161,7 +678,18 @@ public class SwimmingSchool {
      * @return The booking object matching the provided ID, or null if not found.
      */
     public Booking getBookingById(String bookingId) {
-        return bookings.get(bookingId);
+        Booking booking = liveBooking(bookingId);
+        LessonArchive archive = lessonArchive;
+        if (booking != null || archive == null || bookingId == null) {
+            return booking;
+        }
+        // An archived booking is read back as a detached copy, which changes to the school never touch
+        try {
+            return archive.findBooking(bookingId, this);
+        } catch (IOException e) {
+            eventLogger.warn("archive.read.failed", "booking", bookingId, "error", e.getMessage());
+            return null;
+        }
     }
 
 
@@ -169,10 +697,13 @@ public class SwimmingSchool {
      * Generate a report of coach ratings.
      */
     public void generateCoachRatingsReport() {
-        System.out.println("------------ Coach Ratings Report --------------");
-        System.out.println("Coach Name\tAverage Monthly Rating");
+        eventLogger.info("report.generated", "report", "coach-ratings");
+        System.out.print("------------ Coach Ratings Report --------------" + System.lineSeparator()
+                + "Coach Name\tAverage Monthly Rating" + System.lineSeparator());
 
-        swimmingSchoolService.generateCoachRatingsReport(getCoaches(), getTimetable());
+        LessonArchive archive = lessonArchive;
+        swimmingSchoolService.generateCoachRatingsReport(getCoaches(), getTimetable(),
+                archive == null ? Collections.emptyMap() : archive.getCoachRatings());
     }
 
 
@@ -183,9 +714,8 @@ public class SwimmingSchool {
      * @return A message indicating the result of the cancellation attempt.
      */
     public String cancelBooking(String bookingId) {
-        Booking bookedLesson = getBookingById(bookingId);
         try {
-            return swimmingSchoolService.cancelBooking(bookedLesson);
+            return cancel(bookingId);
         } catch (Exception e) {
             return e.getMessage();
         }
@@ -199,14 +729,11 @@ public class SwimmingSchool {
      * @return A message indicating the result of the review submission.
      */
     public String provideReview(String bookingId, int rating) {
-        Booking booking = getBookingById(bookingId);
-        Learner learner = booking.getLearner();
         try {
-            return swimmingSchoolService.provideReview(learner, booking, rating);
+            return review(bookingId, rating);
         } catch (Exception e) {
             return e.getMessage();
         }
-
     }
 
     /**
@@ -221,18 +748,60 @@ public class SwimmingSchool {
      */
     public String addLearner(String name, String gender, int age, String emergencyContact, int grade){
         Learner learner = new Learner();
-        int sizeOfLearners = learners.size();
-        String id = "L"+(sizeOfLearners+1);
-        learner.setId(id);
         learner.setGender(Gender.valueOfGenderString(gender));
         learner.setName(name);
         learner.setAge(age);
         learner.setEmergencyContact(emergencyContact);
         learner.setCurrentGrade(Grade.valueOfGrade(grade));
         learner.setBookings(new ArrayList<>());
-        learners.add(learner);
-        System.out.println("New learner with ID " + id + " and name " + name + " has been added.");
-        return id;
+        // IDs come from a sequence which never goes back, so concurrent registrations never share an ID
+        // and an ID is never handed out twice; an ID taken meanwhile by an added learner is skipped
+        while (true) {
+            learner.setId("L" + learnerSequence.incrementAndGet());
+            try {
+                addLearner(learner);
+                break;
+            } catch (IllegalArgumentException e) {
+                // Taken by a learner added with its own ID, try the next one
+            }
+        }
+        eventLogger.info("learner.added", "learner", learner.getId(), "grade", learner.getCurrentGrade());
+        return learner.getId();
+    }
+
+    /**
+     * Add an existing learner object to the swimming school.
+     *
+     * @param learner The learner to add.
+     * @throws IllegalArgumentException If another learner already has the same ID.
+     */
+    public void addLearner(Learner learner) {
+        identityRegistry.register(learner);
+        // New IDs continue after the highest sequence ID added so far
+        long sequenceNumber = sequenceNumber(learner.getId());
+        if (sequenceNumber <= Integer.MAX_VALUE) {
+            learnerSequence.accumulateAndGet((int) sequenceNumber, Math::max);
+        }
+        learnerSearchIndex.add(learner);
+    }
+
+    // Helper method to get the number of a sequence ID such as L12, or Long.MAX_VALUE for any other ID...
+    private static long sequenceNumber(String id) {
+        if (id.length() > 1 && id.charAt(0) == 'L' && id.chars().skip(1).allMatch(Character::isDigit) && id.length() < 11) {
+            return Long.parseLong(id.substring(1));
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Find learners by the start of their name, ID or emergency contact, tolerating typos.
+     *
+     * @param query The words to look for.
+     * @param limit The maximum number of learners to return.
+     * @return The matching learners, best match first.
+     */
+    public List<Learner> searchLearners(String query, int limit) {
+        return learnerSearchIndex.search(query, limit);
     }
 
     /**
@@ -241,14 +810,37 @@ public class SwimmingSchool {
      * @param monthNumber The number of the month to generate the report for.
      */
     public void generateDetailedLearnerReport(int monthNumber) {
-        System.out.println("------------------------ Detailed Monthly Learner Information Report ------------------------------");
-        System.out.println("LearnerID   | BookingID | Grade | Lesson Date   | Time      | Coach     | Booking Status | Review");
-        System.out.println("___________________________________________________________________________________________________");
+        eventLogger.info("report.generated", "report", "detailed-learners", "month", monthNumber);
+        System.out.print("------------------------ Detailed Monthly Learner Information Report ------------------------------" + System.lineSeparator()
+                + "LearnerID   | BookingID | Grade | Lesson Date   | Time      | Coach     | Booking Status | Review" + System.lineSeparator()
+                + "___________________________________________________________________________________________________" + System.lineSeparator());
 
         LocalDate startOfMonth = LocalDate.now().withMonth(monthNumber).withDayOfMonth(1);
         LocalDate endOfMonth = startOfMonth.withDayOfMonth(startOfMonth.lengthOfMonth());
 
-        swimmingSchoolService.generateDetailedLearnerReport(startOfMonth, endOfMonth, getLearners());
+        YearMonth month = YearMonth.from(startOfMonth);
+        LessonArchive archive = lessonArchive;
+        if (reportParallelism <= 1 && (archive == null || !archive.isArchived(month))) {
+            swimmingSchoolService.generateDetailedLearnerReport(startOfMonth, endOfMonth, reportLearners());
+        } else {
+            // Rows of archived lessons are read back from disk and come before the live rows
+            Map<String, StringBuilder> archivedRows = Collections.emptyMap();
+            try {
+                if (archive != null) {
+                    archivedRows = archive.readDetailedRows(month, swimmingSchoolService);
+                }
+            } catch (IOException e) {
+                eventLogger.warn("archive.read.failed", "month", month, "error", e.getMessage());
+            }
+            Map<String, StringBuilder> archived = archivedRows;
+            System.out.print(getReportPipeline().render(reportLearners(), (learner, rows) -> {
+                StringBuilder learnerRows = archived.get(learner.getId());
+                if (learnerRows != null) {
+                    rows.append(learnerRows);
+                }
+                swimmingSchoolService.appendDetailedLearnerRows(startOfMonth, endOfMonth, learner, rows);
+            }));
+        }
     }
 
 
@@ -258,17 +850,170 @@ public class SwimmingSchool {
      * @param monthNumber The number of the month to generate the summary for.
      */
     public void generateMonthlySummaryOfBookings(int monthNumber) {
-        System.out.println("------------------------ Summary of Monthly Learners Bookings -------------------------------");
-        System.out.println("LearnerID | Learner Name           | Current Grade | Booked | Changed | Cancelled | Attended");
-        System.out.println("_____________________________________________________________________________________________");
+        eventLogger.info("report.generated", "report", "monthly-summary", "month", monthNumber);
+        System.out.print("------------------------ Summary of Monthly Learners Bookings -----------------------------------------" + System.lineSeparator()
+                + "LearnerID | Learner Name           | Current Grade | Booked | Changed | Cancelled | Attended | No-show" + System.lineSeparator()
+                + "_______________________________________________________________________________________________________" + System.lineSeparator());
 
         LocalDate startOfMonth = LocalDate.now().withMonth(monthNumber).withDayOfMonth(1);
         LocalDate endOfMonth = startOfMonth.withDayOfMonth(startOfMonth.lengthOfMonth());
 
-        swimmingSchoolService.generateMonthlySummaryOfBookings(startOfMonth, endOfMonth, getLearners());
+        YearMonth month = YearMonth.from(startOfMonth);
+        LessonArchive archive = lessonArchive;
+        if (reportParallelism <= 1 && (archive == null || !archive.isArchived(month))) {
+            swimmingSchoolService.generateMonthlySummaryOfBookings(startOfMonth, endOfMonth, reportLearners());
+        } else {
+            System.out.print(getReportPipeline().render(reportLearners(), (learner, row) ->
+                    swimmingSchoolService.appendMonthlySummaryRow(startOfMonth, endOfMonth, learner,
+                            archive == null ? new int[5] : archive.getBookingCounts(month, learner.getId()), row)));
+        }
     }
 
 
+    /**
+     * Close a lesson which has ended, marking its open bookings attended or as no-shows and releasing their seats.
+     * The learner of every booking closed is notified of the outcome.
+     *
+     * @param swimmingLesson The lesson to close.
+     * @param register       The IDs of the bookings whose learners were present.
+     * @return The number of bookings closed.
+     */
+    public int closeLesson(SwimmingLesson swimmingLesson, Set<String> register) {
+        int closed = swimmingSchoolService.closeLesson(bookingIndex.lessonIterator(swimmingLesson.getHandle(), null), register,
+                booking -> {
+                    boolean attended = booking.getBookingStatus().equals(BookingStatus.ATTENDED.name());
+                    notifyLearner(attended ? Notification.Type.ATTENDED : Notification.Type.NO_SHOW, booking,
+                            "Learner - " + booking.getLearner().getId() + (attended ? " has attended" : " did not attend")
+                                    + " the Lesson " + swimmingLesson.getGrade() + " on " + swimmingLesson.getDate());
+                });
+        Iterator<Booking> lessonBookings = bookingIndex.lessonIterator(swimmingLesson.getHandle(), null);
+        while (lessonBookings.hasNext()) {
+            gradeProgression.promote(lessonBookings.next());
+        }
+        return closed;
+    }
+
+    /**
+     * Find the upcoming lessons with free slots a learner may book at their current grade.
+     *
+     * @param learnerId The ID of the learner.
+     * @return The lessons in handle order, empty if the learner is unknown.
+     */
+    public List<SwimmingLesson> bookableLessons(String learnerId) {
+        List<SwimmingLesson> bookable = new ArrayList<>();
+        Learner learner = getLearnerByLearnerId(learnerId);
+        if (learner == null) {
+            return bookable;
+        }
+        BitSet eligible = gradeProgression.eligibleLessons(learner.getCurrentGrade(), null);
+        LocalDate today = LocalDate.now();
+        for (int handle = eligible.nextSetBit(0); handle >= 0; handle = eligible.nextSetBit(handle + 1)) {
+            SwimmingLesson swimmingLesson = identityRegistry.lesson(handle);
+            if (swimmingLesson != null && swimmingLesson.getDate().isAfter(today) && swimmingLesson.getAvailableSlots() > 0) {
+                bookable.add(swimmingLesson);
+            }
+        }
+        return bookable;
+    }
+
+    /**
+     * Replay every learner's attended lessons in parallel and promote them to the grade they have reached.
+     *
+     * @return The number of learners promoted.
+     */
+    public int recomputeGrades() {
+        return gradeProgression.recomputeAll(getLearners());
+    }
+
+    /**
+     * Archive lessons older than the archive horizon with their bookings and reviews, removing them from
+     * the live timetable. Reports keep including the archived months.
+     *
+     * @return The number of lessons archived, zero if no archive has been set.
+     * @throws IOException If the archive segments cannot be written.
+     */
+    public synchronized int archivePastLessons() throws IOException {
+        if (lessonArchive == null) {
+            return 0;
+        }
+        return lessonArchive.archive(this, LocalDate.now());
+    }
+
+    /**
+     * Set where and after how long past lessons are archived. Past lessons stay live until an archive is set.
+     *
+     * @param lessonArchive The archive to use, in a directory of this school's own.
+     */
+    public synchronized void setLessonArchive(LessonArchive lessonArchive) {
+        this.lessonArchive = lessonArchive;
+    }
+
+    /**
+     * Register a listener called with every booking made through bookLesson or a confirmed reservation.
+     *
+     * @param listener The listener to add.
+     */
+    public void addBookingListener(Consumer<Booking> listener) {
+        bookingListeners.add(listener);
+    }
+
+    /**
+     * @param listener The listener to remove.
+     */
+    public void removeBookingListener(Consumer<Booking> listener) {
+        bookingListeners.remove(listener);
+    }
+
+    /**
+     * Put admission control in front of booking, changing and reserving lessons.
+     *
+     * @param admissionController The admission controller to use, or null to admit every request.
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * Queue a notification to the learner on every booking, change, cancellation and attendance.
+     *
+     * @param notificationOutbox The outbox to queue to, or null to send no notifications.
+     */
+    public void setNotificationOutbox(NotificationOutbox notificationOutbox) {
+        if (notificationOutbox != null) {
+            notificationOutbox.setEventLogger(eventLogger);
+        }
+        this.notificationOutbox = notificationOutbox;
+    }
+
+    /**
+     * Log booking and report events to an event logger instead of the console.
+     *
+     * @param eventLogger The logger to use, or null to log nothing.
+     */
+    public void setEventLogger(EventLogger eventLogger) {
+        this.eventLogger = eventLogger != null ? eventLogger : EventLogger.disabled();
+        NotificationOutbox outbox = notificationOutbox;
+        if (outbox != null) {
+            outbox.setEventLogger(this.eventLogger);
+        }
+    }
+
+    /**
+     * Set how many threads the learner reports are generated with. 1 generates them sequentially.
+     *
+     * @param parallelism The number of report threads.
+     */
+    public synchronized void setReportParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        if (reportPipeline != null) {
+            reportPipeline.shutdown();
+            reportPipeline = null;
+        }
+        reportParallelism = parallelism;
+    }
+
     /**
      * Get an instance of the SwimmingSchool (singleton pattern).
      *
@@ -281,19 +1026,240 @@ public class SwimmingSchool {
         return swimmingSchool;
     }
 
+    // Helper method to get the recommender, which follows the timetable as lessons are added and removed...
+    private LessonRecommender getLessonRecommender() {
+        return lessonRecommender;
+    }
+
+    // Helper method to index a new booking and tell the booking listeners about it...
+    private void bookingConfirmed(Booking booking) {
+        bookingIndex.add(booking);
+        eventLogger.info("booking.confirmed", "booking", booking.getBookingID(), "learner", booking.getLearner().getId(),
+                "lesson", booking.getLesson().getHandle());
+        notifyLearner(Notification.Type.BOOKED, booking, "You have successfully registered the lesson Grade: " + booking.getLesson().getGrade()
+                + " on " + booking.getLesson().getDate() + " with booking Id : " + booking.getBookingID());
+        for (Consumer<Booking> listener : bookingListeners) {
+            listener.accept(booking);
+        }
+    }
+
+    // Helper method to queue a notification to the learner of a booking, if notifications are delivered...
+    private void notifyLearner(Notification.Type type, Booking booking, String message) {
+        NotificationOutbox outbox = notificationOutbox;
+        if (outbox != null) {
+            Learner learner = booking.getLearner();
+            outbox.enqueue(new Notification(type, learner.getId(), learner.getEmergencyContact(), booking.getBookingID(), message, LocalDateTime.now()));
+        }
+    }
+
+    // Helper method to add a lesson which has just joined the timetable to the indexes and the feed...
+    private void indexLesson(SwimmingLesson swimmingLesson) {
+        timetableIndex.add(swimmingLesson);
+        gradeProgression.add(swimmingLesson);
+        lessonSearchIndex.add(swimmingLesson);
+        lessonRecommender.addLesson(swimmingLesson);
+        attendanceScheduler.schedule(swimmingLesson);
+        availabilityFeed.lessonAdded(swimmingLesson);
+    }
+
+    // Helper method to book a lesson, throwing if the booking is turned away or fails...
+    private String book(LocalTime time, LocalDate date, String learnerId) throws Exception {
+        eventLogger.info("booking.requested", "learner", learnerId, "date", date, "time", time);
+        // Search for the lesson in the timetable based on the provided time and day
+        SwimmingLesson swimmingLessonToBook = acquireLesson(time, date);
+        try {
+            return admit(learnerId, swimmingLessonToBook, () -> {
+                // Find the learner with the given ID
+                Learner learner = getLearnerByLearnerId(learnerId);
+                String reply = swimmingSchoolService.bookLesson(swimmingLessonToBook, learner, bookings);
+                // The reply is the ID of the booking just made, even with other bookings of the learner made meanwhile
+                bookingConfirmed(bookings.get(reply));
+                return reply;
+            });
+        } finally {
+            timetableScheduler.releaseLesson(swimmingLessonToBook);
+        }
+    }
+
+    // Helper method to hold a seat, throwing if no seat could be held...
+    private String reserve(LocalTime time, LocalDate date, String learnerId) throws Exception {
+        SwimmingLesson swimmingLesson = acquireLesson(time, date);
+        try {
+            if (swimmingLesson == null || getLearnerByLearnerId(learnerId) == null) {
+                throw new InvalidLesson("Lesson or learner not found with given details retry again with valid details.");
+            }
+            // A held seat keeps a lesson beyond the window in the timetable
+            return admit(learnerId, swimmingLesson, () -> seatInventory.reserve(swimmingLesson, learnerId));
+        } finally {
+            timetableScheduler.releaseLesson(swimmingLesson);
+        }
+    }
+
+    // Helper method to run a reservation, so a hold ID is never confused with a failure message...
+    private static String holdSeat(IdempotencyCache.Operation<Exception> reservation) throws InvalidBooking {
+        try {
+            return reservation.run();
+        } catch (InvalidBooking e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InvalidBooking(e.getMessage());
+        }
+    }
+
+    // Helper method to book the seat of a hold, giving the seat back and throwing if the booking fails...
+    private String confirm(String holdId) throws Exception {
+        SeatInventory.Hold hold = seatInventory.confirm(holdId);
+        Learner learner = getLearnerByLearnerId(hold.getLearnerId());
+        try {
+            String reply = swimmingSchoolService.bookLesson(hold.getLesson(), learner, bookings, true);
+            bookingConfirmed(bookings.get(reply));
+            return reply;
+        } catch (Exception e) {
+            hold.getLesson().releaseSlot();
+            throw e;
+        }
+    }
+
+    // Helper method to change a booking, throwing if the change is turned away or fails...
+    private String change(String bookingId, LocalTime time, LocalDate date) throws Exception {
+        eventLogger.info("booking.change.requested", "booking", bookingId, "date", date, "time", time);
+        Booking booking = liveBooking(bookingId);
+        if (booking == null) {
+            throw new InvalidBooking("Invalid booking details.");
+        }
+        Learner learner = booking.getLearner();
+        SwimmingLesson swimmingLessonToBook = acquireLesson(time, date);
+        if (swimmingLessonToBook == null) {
+            throw new InvalidLesson("Lesson not found with given details retry again with valid details.");
+        }
+        try {
+            return admit(learner.getId(), swimmingLessonToBook, () -> {
+                Booking.State previous = booking.getState();
+                String reply = swimmingSchoolService.changeBooking(previous, booking, learner, swimmingLessonToBook);
+                bookingIndex.move(booking, previous.getLesson().getHandle());
+                notifyLearner(Notification.Type.CHANGED, booking, reply);
+                return reply;
+            });
+        } finally {
+            timetableScheduler.releaseLesson(swimmingLessonToBook);
+        }
+    }
+
+    // Helper method to cancel a booking, throwing if the cancellation fails...
+    private String cancel(String bookingId) throws Exception {
+        Booking bookedLesson = liveBooking(bookingId);
+        String reply = swimmingSchoolService.cancelBooking(bookedLesson);
+        notifyLearner(Notification.Type.CANCELLED, bookedLesson, reply);
+        return reply;
+    }
+
+    // Helper method to review a booking, throwing if the review is not accepted...
+    private String review(String bookingId, int rating) throws Exception {
+        Booking booking = liveBooking(bookingId);
+        if (booking == null) {
+            throw new InvalidBooking("Please enter correct booking details.");
+        }
+        String reply = swimmingSchoolService.provideReview(booking.getLearner(), booking, rating);
+        reviewAnalytics.record(booking.getLesson(), booking.getReview());
+        return reply;
+    }
+
+    // Helper method to run an operation once per idempotency key; only a successful reply is remembered,
+    // a failure is returned as its message and the key can be retried...
+    private String once(String operation, String idempotencyKey, IdempotencyCache.Operation<Exception> call) {
+        try {
+            return idempotencyCache.execute(scope(operation, idempotencyKey), call);
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    // Helper method to keep the idempotency keys of different operations apart...
+    private static String scope(String operation, String idempotencyKey) {
+        return idempotencyKey == null ? null : operation + ":" + idempotencyKey;
+    }
+
+    // Helper method to run a booking operation through admission control when it is enabled...
+    private <E extends Exception> String admit(String learnerId, SwimmingLesson swimmingLesson,
+                                               AdmissionController.Operation<String, E> operation) throws RequestRejected, E {
+        AdmissionController controller = admissionController;
+        if (controller == null) {
+            return operation.run();
+        }
+        return controller.execute(learnerId, swimmingLesson != null ? swimmingLesson.getHandle() : -1, operation);
+    }
+
+    // Helper method to create the report pipeline on first use...
+    private synchronized ReportPipeline getReportPipeline() {
+        if (reportPipeline == null) {
+            reportPipeline = new ReportPipeline(reportParallelism);
+        }
+        return reportPipeline;
+    }
+
     // Below all are Getters for instance variables...
     public List<SwimmingLesson> getTimetable() {
         return timetable;
     }
 
+    public TimetableScheduler getTimetableScheduler() {
+        return timetableScheduler;
+    }
+
+    public AvailabilityFeed getAvailabilityFeed() {
+        return availabilityFeed;
+    }
+
+    public GradeProgression getGradeProgression() {
+        return gradeProgression;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public NotificationOutbox getNotificationOutbox() {
+        return notificationOutbox;
+    }
+
+    public EventLogger getEventLogger() {
+        return eventLogger;
+    }
+
+    public SeatInventory getSeatInventory() {
+        return seatInventory;
+    }
+
+    public AttendanceScheduler getAttendanceScheduler() {
+        return attendanceScheduler;
+    }
+
+    public IdentityRegistry getIdentityRegistry() {
+        return identityRegistry;
+    }
+
+    public ReviewAnalytics getReviewAnalytics() {
+        return reviewAnalytics;
+    }
+
     public List<Coach> getCoaches() {
         return coaches;
     }
 
-    public List<Learner> getLearners() {
+    // Helper method to list the learners in learner ID order for the reports, whatever order they registered in...
+    private List<Learner> reportLearners() {
+        List<Learner> learners = new ArrayList<>(getLearners());
+        learners.sort(BY_LEARNER_ID);
         return learners;
     }
 
+    /**
+     * @return The learners, in order of registration. The list is a snapshot and cannot be changed.
+     */
+    public List<Learner> getLearners() {
+        return identityRegistry.learners();
+    }
+
     public Map<String, Booking> getBookings() {
         return bookings;
     }
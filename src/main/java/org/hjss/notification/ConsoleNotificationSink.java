@@ -0,0 +1,20 @@
+package org.hjss.notification;
+
+import org.hjss.models.Notification;
+
+import java.util.List;
+
+/**
+ * Prints notifications on the console, as the booking confirmations used to be.
+ */
+public class ConsoleNotificationSink implements NotificationSink {
+
+    @Override
+    public void deliver(List<Notification> notifications) {
+        StringBuilder lines = new StringBuilder();
+        for (Notification notification : notifications) {
+            lines.append("****** ").append(notification.getMessage()).append(" ********").append(System.lineSeparator());
+        }
+        System.out.print(lines);
+    }
+}
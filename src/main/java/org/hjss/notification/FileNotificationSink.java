@@ -0,0 +1,38 @@
+package org.hjss.notification;
+
+import org.hjss.models.Notification;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends notifications to a text file, one line each.
+ */
+public class FileNotificationSink implements NotificationSink {
+
+    private final Path file;
+
+    /**
+     * @param file The file to append to, created if missing.
+     */
+    public FileNotificationSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void deliver(List<Notification> notifications) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Notification notification : notifications) {
+                writer.write(notification.getCreatedAt() + "\t" + notification.getType() + "\t" + notification.getLearnerId()
+                        + "\t" + notification.getBookingId() + "\t" + notification.getMessage().replace('\n', ' '));
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package org.hjss.notification;
+
+import org.hjss.models.Notification;
+import org.hjss.utils.EventLogger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queues notifications so the operation causing them only pays for one line appended to a journal,
+ * and delivers them to the sinks later on a background thread.
+ * The journal records each notification queued and each batch delivered or given up on, so the
+ * notifications not yet delivered are queued again when the outbox is opened after a restart. It is
+ * rewritten with only those notifications on opening, and emptied whenever nothing is left to deliver.
+ * The dispatcher takes up to a batch of notifications at a time and hands the batch to every sink in turn;
+ * a sink which fails is retried with the wait doubling each time, and a batch a sink still refuses after
+ * the last attempt is recorded as failed rather than blocking the queue for good. A failed batch is first
+ * appended to a dead-letter file next to the journal, so it can be inspected and sent again later.
+ */
+public class NotificationOutbox {
+
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+    private final Path journal;
+    private final Path deadLetters;
+    private final List<NotificationSink> sinks;
+    private final int batchSize;
+    private final long initialBackoffMillis;
+    private final int maxAttempts;
+    private final BlockingDeque<Entry> queue = new LinkedBlockingDeque<>();
+    private final Object dispatchLock = new Object();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private volatile EventLogger eventLogger = EventLogger.disabled();
+    private BufferedWriter journalWriter;
+    private long nextSequence;
+    private int unsettled;
+    private Thread dispatcherThread;
+
+    /**
+     * Opens an outbox delivering batches of up to 50 notifications, trying each sink up to 5 times
+     * starting with a 100 ms wait.
+     *
+     * @param journal The journal file, or null to keep the queue in memory only.
+     * @param sinks   The sinks to deliver to.
+     * @throws IOException If the journal could not be read or written.
+     */
+    public NotificationOutbox(Path journal, NotificationSink... sinks) throws IOException {
+        this(journal, Arrays.asList(sinks), 50, Duration.ofMillis(100), 5);
+    }
+
+    /**
+     * Opens an outbox, queueing again the notifications of the journal which were not delivered.
+     *
+     * @param journal        The journal file, or null to keep the queue in memory only.
+     * @param sinks          The sinks to deliver to.
+     * @param batchSize      The most notifications delivered in one batch.
+     * @param initialBackoff The wait before the first retry of a failed sink.
+     * @param maxAttempts    The number of times a sink is tried with the same batch.
+     * @throws IOException If the journal could not be read or written.
+     */
+    public NotificationOutbox(Path journal, List<NotificationSink> sinks, int batchSize, Duration initialBackoff, int maxAttempts) throws IOException {
+        if (batchSize < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("Batch size and attempts must be positive");
+        }
+        this.journal = journal;
+        this.deadLetters = journal == null ? null : journal.resolveSibling(journal.getFileName() + ".failed");
+        this.sinks = new ArrayList<>(sinks);
+        this.batchSize = batchSize;
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxAttempts = maxAttempts;
+        if (journal != null) {
+            recover();
+        }
+    }
+
+    /**
+     * Log delivery problems to an event logger.
+     *
+     * @param eventLogger The logger to use, or null to log nothing.
+     */
+    public void setEventLogger(EventLogger eventLogger) {
+        this.eventLogger = eventLogger != null ? eventLogger : EventLogger.disabled();
+    }
+
+    /**
+     * Queues a notification for delivery.
+     *
+     * @param notification The notification.
+     * @throws UncheckedIOException If the notification could not be written to the journal.
+     */
+    public void enqueue(Notification notification) {
+        Entry entry;
+        synchronized (this) {
+            entry = new Entry(nextSequence++, notification);
+            if (journalWriter != null) {
+                try {
+                    journalWriter.write(format(entry));
+                    journalWriter.newLine();
+                    journalWriter.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not write notification to " + journal, e);
+                }
+            }
+            unsettled++;
+        }
+        queue.add(entry);
+    }
+
+    /**
+     * Delivers the next batch of queued notifications, waiting between retries of a failing sink.
+     *
+     * @return The number of notifications in the batch, 0 if nothing was queued.
+     * @throws InterruptedException If interrupted while waiting; the batch stays queued.
+     */
+    public int dispatch() throws InterruptedException {
+        synchronized (dispatchLock) {
+            List<Entry> batch = new ArrayList<>(batchSize);
+            queue.drainTo(batch, batchSize);
+            return deliver(batch);
+        }
+    }
+
+    /**
+     * Starts delivering in the background as notifications are queued. Calling it again has no effect.
+     */
+    public synchronized void start() {
+        if (dispatcherThread != null) {
+            return;
+        }
+        dispatcherThread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Entry first = queue.take();
+                    synchronized (dispatchLock) {
+                        List<Entry> batch = new ArrayList<>(batchSize);
+                        batch.add(first);
+                        queue.drainTo(batch, batchSize - 1);
+                        deliver(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "hjss-notification-outbox");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    /**
+     * Stops delivering in the background. Notifications still queued stay in the journal.
+     */
+    public synchronized void stop() {
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+            dispatcherThread = null;
+        }
+    }
+
+    /**
+     * @return The number of notifications queued and not yet delivered or given up on.
+     */
+    public synchronized int getPendingCount() {
+        return unsettled;
+    }
+
+    /**
+     * @return The number of notifications delivered to every sink.
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * @return The number of notifications given up on after a sink kept failing.
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return The number of times a sink was retried.
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return The file failed batches are kept in, or null if the outbox has no journal.
+     */
+    public Path getDeadLetterFile() {
+        return deadLetters;
+    }
+
+    /**
+     * Reads the notifications given up on, oldest first.
+     *
+     * @return The notifications of the dead-letter file, empty if there is none.
+     * @throws IOException If the dead-letter file could not be read.
+     */
+    public synchronized List<Notification> readDeadLetters() throws IOException {
+        List<Notification> notifications = new ArrayList<>();
+        if (deadLetters == null || !Files.exists(deadLetters)) {
+            return notifications;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(deadLetters, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields[0].equals("N") && fields.length == 8) {
+                    notifications.add(parse(fields).notification);
+                }
+            }
+        }
+        return notifications;
+    }
+
+    // Helper method to hand a batch to every sink, retrying each with backoff, and record the outcome...
+    private int deliver(List<Entry> batch) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<Notification> notifications = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            notifications.add(entry.notification);
+        }
+        boolean deliveredToAll = true;
+        try {
+            for (NotificationSink sink : sinks) {
+                deliveredToAll &= deliver(sink, notifications);
+            }
+        } catch (InterruptedException e) {
+            // Put the batch back in front, in its order, to be delivered again
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                queue.addFirst(batch.get(i));
+            }
+            throw e;
+        }
+        settle(batch, deliveredToAll);
+        (deliveredToAll ? delivered : failed).addAndGet(batch.size());
+        return batch.size();
+    }
+
+    private boolean deliver(NotificationSink sink, List<Notification> notifications) throws InterruptedException {
+        long backoff = initialBackoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                sink.deliver(notifications);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    eventLogger.warn("notification.delivery.failed", "sink", sink.getClass().getSimpleName(),
+                            "notifications", notifications.size(), "attempts", attempt, "error", e.getMessage());
+                    return false;
+                }
+            }
+            retries.incrementAndGet();
+            TimeUnit.MILLISECONDS.sleep(backoff);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF.toMillis());
+        }
+    }
+
+    // Helper method to record a batch as done in the journal, emptying the journal once nothing is left...
+    private synchronized void settle(List<Entry> batch, boolean deliveredToAll) {
+        unsettled -= batch.size();
+        if (journalWriter == null) {
+            return;
+        }
+        if (!deliveredToAll) {
+            try (BufferedWriter writer = Files.newBufferedWriter(deadLetters, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (Entry entry : batch) {
+                    writer.write(format(entry));
+                    writer.newLine();
+                }
+            } catch (IOException e) {
+                // Leave the batch unsettled in the journal, which is then not emptied, so it is tried again after a restart
+                unsettled += batch.size();
+                eventLogger.warn("notification.deadletter.failed", "file", deadLetters, "notifications", batch.size(),
+                        "error", e.getMessage());
+                return;
+            }
+        }
+        try {
+            if (unsettled == 0) {
+                journalWriter.close();
+                journalWriter = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                return;
+            }
+            for (Entry entry : batch) {
+                journalWriter.write((deliveredToAll ? "A\t" : "F\t") + entry.sequence);
+                journalWriter.newLine();
+            }
+            journalWriter.flush();
+        } catch (IOException e) {
+            // The batch is delivered; at worst it is delivered again after a restart
+            eventLogger.warn("notification.journal.failed", "journal", journal, "error", e.getMessage());
+        }
+    }
+
+    // Helper method to queue again what the journal holds undelivered, and rewrite it with only that...
+    private void recover() throws IOException {
+        Map<Long, Entry> pending = new LinkedHashMap<>();
+        if (Files.exists(journal)) {
+            try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields[0].equals("N") && fields.length == 8) {
+                        Entry entry = parse(fields);
+                        pending.put(entry.sequence, entry);
+                        nextSequence = Math.max(nextSequence, entry.sequence + 1);
+                    } else if ((fields[0].equals("A") || fields[0].equals("F")) && fields.length == 2) {
+                        pending.remove(Long.parseLong(fields[1]));
+                    }
+                    // Anything else is a line cut short by a crash and is skipped
+                }
+            }
+        }
+
+        Path rewritten = journal.resolveSibling(journal.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(rewritten, StandardCharsets.UTF_8)) {
+            for (Entry entry : pending.values()) {
+                writer.write(format(entry));
+                writer.newLine();
+            }
+        }
+        Files.move(rewritten, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journalWriter = Files.newBufferedWriter(journal, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        queue.addAll(pending.values());
+        unsettled = pending.size();
+    }
+
+    private static String format(Entry entry) {
+        Notification notification = entry.notification;
+        return "N\t" + entry.sequence + "\t" + notification.getType() + "\t" + escape(notification.getLearnerId())
+                + "\t" + escape(notification.getContact()) + "\t" + escape(notification.getBookingId())
+                + "\t" + notification.getCreatedAt() + "\t" + escape(notification.getMessage());
+    }
+
+    private static Entry parse(String[] fields) {
+        return new Entry(Long.parseLong(fields[1]), new Notification(Notification.Type.valueOf(fields[2]), unescape(fields[3]),
+                unescape(fields[4]), unescape(fields[5]), unescape(fields[7]), LocalDateTime.parse(fields[6])));
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "\\0";
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        if (value.equals("\\0")) {
+            return null;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    /**
+     * A queued notification with its place in the journal.
+     */
+    private static final class Entry {
+        private final long sequence;
+        private final Notification notification;
+
+        Entry(long sequence, Notification notification) {
+            this.sequence = sequence;
+            this.notification = notification;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.hjss.notification;
+
+import org.hjss.models.Notification;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Somewhere notifications are delivered to by the {@link NotificationOutbox}.
+ */
+public interface NotificationSink {
+
+    /**
+     * Delivers a batch of notifications. A batch which fails is delivered again, so a sink
+     * may see the same notification more than once.
+     *
+     * @param notifications The notifications, oldest first.
+     * @throws IOException If the batch could not be delivered.
+     */
+    void deliver(List<Notification> notifications) throws IOException;
+}
@@ -0,0 +1,51 @@
+package org.hjss.notification;
+
+import org.hjss.models.Notification;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Stands in for a mail server: each notification is written as an RFC 5322 message into a pickup
+ * directory, the way a local mail transfer agent picks up outgoing mail. A message is written to a
+ * temporary file first and then moved into place, so a reader never sees half a message.
+ */
+public class SmtpNotificationSink implements NotificationSink {
+
+    private final Path pickupDirectory;
+    private final String sender;
+
+    /**
+     * @param pickupDirectory The directory the messages are written to, created if missing.
+     * @param sender          The address the messages are sent from.
+     */
+    public SmtpNotificationSink(Path pickupDirectory, String sender) {
+        this.pickupDirectory = pickupDirectory;
+        this.sender = sender;
+    }
+
+    @Override
+    public void deliver(List<Notification> notifications) throws IOException {
+        Files.createDirectories(pickupDirectory);
+        for (Notification notification : notifications) {
+            String message = "From: " + sender + "\r\n"
+                    + "To: " + notification.getContact() + "\r\n"
+                    + "Date: " + DateTimeFormatter.RFC_1123_DATE_TIME.format(notification.getCreatedAt().atZone(ZoneId.systemDefault())) + "\r\n"
+                    + "Subject: Booking " + notification.getBookingId() + " " + notification.getType().name().toLowerCase() + "\r\n"
+                    + "\r\n"
+                    + notification.getMessage() + "\r\n";
+            // The same notification always gets the same file name, so a redelivery replaces it
+            String name = notification.getBookingId() + "-" + notification.getType() + "-"
+                    + notification.getCreatedAt().toString().replace(':', '-') + ".eml";
+            Path temporary = Files.createTempFile(pickupDirectory, "msg", ".tmp");
+            Files.write(temporary, message.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, pickupDirectory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.hjss.notification;
+
+import org.hjss.models.Notification;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Posts each batch of notifications as one JSON array to a webhook. Any answer other than
+ * 2xx fails the batch, so it is retried.
+ */
+public class WebhookNotificationSink implements NotificationSink {
+
+    private final URI endpoint;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    /**
+     * @param endpoint The URL the batches are posted to.
+     */
+    public WebhookNotificationSink(URI endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public void deliver(List<Notification> notifications) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(toJson(notifications)))
+                .build();
+        HttpResponse<Void> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while posting to " + endpoint, e);
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Webhook " + endpoint + " answered " + response.statusCode());
+        }
+    }
+
+    private static String toJson(List<Notification> notifications) {
+        StringBuilder json = new StringBuilder("[");
+        for (Notification notification : notifications) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"").append(notification.getType())
+                    .append("\",\"learner\":\"").append(escape(notification.getLearnerId()))
+                    .append("\",\"booking\":\"").append(escape(notification.getBookingId()))
+                    .append("\",\"createdAt\":\"").append(notification.getCreatedAt())
+                    .append("\",\"message\":\"").append(escape(notification.getMessage())).append("\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
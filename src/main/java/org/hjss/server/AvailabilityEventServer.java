@@ -0,0 +1,419 @@
+package org.hjss.server;
+
+import org.hjss.constants.Grade;
+import org.hjss.models.AvailabilityChange;
+import org.hjss.models.Booking;
+import org.hjss.models.SwimmingLesson;
+import org.hjss.models.SwimmingSchool;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Streams lesson availability changes and booking confirmations to browsers as Server-Sent Events.
+ * A single selector thread serves every connection on a plain NIO socket bound to the loopback address
+ * only. Events are queued as they happen and written out once per tick as one batch per connection, so
+ * a burst of changes costs one write per client. Clients which fall too far behind are disconnected.
+ *
+ * Clients connect with {@code GET /events}, optionally filtered with {@code grade}, {@code day} and
+ * {@code coach} query parameters, e.g. {@code /events?grade=2&day=MONDAY}.
+ */
+public class AvailabilityEventServer {
+
+    private static final int TICK_MILLIS = 50;
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final Predicate<SwimmingLesson> ALL = lesson -> true;
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NOT_FOUND = ("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STREAM_HEADERS = ("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\n"
+            + "Cache-Control: no-cache\r\nConnection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final SwimmingSchool swimmingSchool;
+    private final int maxPendingBytes;
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final Consumer<Booking> bookingListener = booking -> events.add(new Event(booking.getLesson(), format(booking)));
+    private Flow.Subscription feedSubscription;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+    private int connectionCount;
+
+    /**
+     * Creates a server for the given school.
+     *
+     * @param swimmingSchool  The swimming school whose changes are streamed.
+     * @param maxPendingBytes The number of unsent bytes after which a slow client is disconnected.
+     */
+    public AvailabilityEventServer(SwimmingSchool swimmingSchool, int maxPendingBytes) {
+        this.swimmingSchool = swimmingSchool;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * Starts listening on the loopback address.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @return The port the server listens on.
+     * @throws IOException If the server socket cannot be opened.
+     */
+    public synchronized int start(int port) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Server is already running");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        swimmingSchool.getAvailabilityFeed().subscribe(new Flow.Subscriber<AvailabilityChange>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                feedSubscription = subscription;
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(AvailabilityChange change) {
+                events.add(new Event(change.getLesson(), format(change)));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        swimmingSchool.addBookingListener(bookingListener);
+
+        running = true;
+        selectorThread = new Thread(this::run, "hjss-sse-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Stops the server and closes every connection.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        swimmingSchool.removeBookingListener(bookingListener);
+        if (feedSubscription != null) {
+            feedSubscription.cancel();
+        }
+        selector.wakeup();
+        try {
+            selectorThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The number of clients currently streaming events.
+     */
+    public synchronized int getConnectionCount() {
+        return connectionCount;
+    }
+
+    // The selector loop: accept, read requests, and once per tick queue and write the batched events...
+    private void run() {
+        long nextTick = System.currentTimeMillis() + TICK_MILLIS;
+        long nextHeartbeat = System.currentTimeMillis() + HEARTBEAT_MILLIS;
+        try {
+            while (running) {
+                selector.select(Math.max(1, nextTick - System.currentTimeMillis()));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        } else if (key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextTick) {
+                    boolean heartbeat = now >= nextHeartbeat;
+                    broadcast(heartbeat);
+                    if (heartbeat) {
+                        nextHeartbeat = now + HEARTBEAT_MILLIS;
+                    }
+                    nextTick = now + TICK_MILLIS;
+                }
+            }
+        } catch (IOException e) {
+            swimmingSchool.getEventLogger().warn("event.server.stopped", "error", e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+                serverChannel.close();
+            } catch (IOException ignored) {
+                // Already shutting down
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, new Connection());
+        }
+    }
+
+    // Helper method to read the request line and headers, then start streaming or refuse the request...
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (connection.request == null) {
+            // Once streaming, anything the client sends is ignored; only the end of the stream matters
+            if (channel.read(ByteBuffer.allocate(256)) < 0) {
+                close(key);
+            }
+            return;
+        }
+        if (channel.read(connection.request) < 0) {
+            close(key);
+            return;
+        }
+        String request = new String(connection.request.array(), 0, connection.request.position(), StandardCharsets.US_ASCII);
+        if (!request.contains("\r\n\r\n")) {
+            if (!connection.request.hasRemaining()) {
+                close(key);
+            }
+            return;
+        }
+        String[] requestLine = request.substring(0, request.indexOf("\r\n")).split(" ");
+        String target = requestLine.length > 1 ? requestLine[1] : "";
+        String path = target.contains("?") ? target.substring(0, target.indexOf('?')) : target;
+        Predicate<SwimmingLesson> filter = requestLine[0].equals("GET") && path.equals("/events")
+                ? parseFilter(target.contains("?") ? target.substring(target.indexOf('?') + 1) : "") : null;
+        if (filter == null) {
+            connection.pending.add(ByteBuffer.wrap(NOT_FOUND));
+            connection.pendingBytes += NOT_FOUND.length;
+            connection.closeWhenFlushed = true;
+        } else {
+            connection.filter = filter;
+            connection.streaming = true;
+            connection.pending.add(ByteBuffer.wrap(STREAM_HEADERS));
+            connection.pendingBytes += STREAM_HEADERS.length;
+            synchronized (this) {
+                connectionCount++;
+            }
+        }
+        connection.request = null;
+        key.interestOps(SelectionKey.OP_WRITE);
+        write(key);
+    }
+
+    // Helper method to queue this tick's events on every streaming connection, dropping slow clients...
+    private void broadcast(boolean heartbeat) {
+        List<Event> batch = new ArrayList<>();
+        Event event;
+        while ((event = events.poll()) != null) {
+            batch.add(event);
+        }
+        if (batch.isEmpty() && !heartbeat) {
+            return;
+        }
+        byte[] unfiltered = null;
+        for (SelectionKey key : selector.keys()) {
+            Connection connection = key.attachment() instanceof Connection ? (Connection) key.attachment() : null;
+            if (connection == null || !connection.streaming || !key.isValid()) {
+                continue;
+            }
+            byte[] bytes;
+            if (connection.filter == ALL) {
+                if (unfiltered == null) {
+                    unfiltered = encode(batch, ALL);
+                }
+                bytes = unfiltered;
+            } else {
+                bytes = encode(batch, connection.filter);
+            }
+            if (bytes.length == 0 && heartbeat) {
+                bytes = HEARTBEAT;
+            }
+            if (bytes.length == 0) {
+                continue;
+            }
+            if (connection.pendingBytes + bytes.length > maxPendingBytes) {
+                close(key);
+                continue;
+            }
+            connection.pending.add(ByteBuffer.wrap(bytes));
+            connection.pendingBytes += bytes.length;
+            try {
+                write(key);
+            } catch (IOException e) {
+                close(key);
+            }
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        while (!connection.pending.isEmpty()) {
+            ByteBuffer buffer = connection.pending.peek();
+            int written = channel.write(buffer);
+            connection.pendingBytes -= written;
+            if (buffer.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            connection.pending.poll();
+        }
+        if (connection.closeWhenFlushed) {
+            close(key);
+            return;
+        }
+        // Streaming clients are only watched for the peer closing the connection
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void close(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment instanceof Connection && ((Connection) attachment).streaming) {
+            ((Connection) attachment).streaming = false;
+            synchronized (this) {
+                connectionCount--;
+            }
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // The connection is gone either way
+        }
+    }
+
+    // Helper method to turn the query string into a lesson filter, or null if it is invalid...
+    private static Predicate<SwimmingLesson> parseFilter(String query) {
+        Grade grade = null;
+        DayOfWeek day = null;
+        String coach = null;
+        try {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals < 0) {
+                    continue;
+                }
+                String name = parameter.substring(0, equals);
+                String value = URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8.name());
+                if (name.equals("grade")) {
+                    grade = Grade.valueOfGrade(Integer.parseInt(value));
+                } else if (name.equals("day")) {
+                    day = DayOfWeek.valueOf(value.toUpperCase(Locale.ROOT));
+                } else if (name.equals("coach")) {
+                    coach = value;
+                }
+            }
+        } catch (RuntimeException | UnsupportedEncodingException e) {
+            return null;
+        }
+        if (grade == null && day == null && coach == null) {
+            return ALL;
+        }
+        Grade gradeFilter = grade;
+        DayOfWeek dayFilter = day;
+        String coachFilter = coach;
+        return lesson -> (gradeFilter == null || lesson.getGrade() == gradeFilter)
+                && (dayFilter == null || lesson.getDate().getDayOfWeek() == dayFilter)
+                && (coachFilter == null || lesson.getCoach() != null && lesson.getCoach().getName().equals(coachFilter));
+    }
+
+    private static byte[] encode(List<Event> batch, Predicate<SwimmingLesson> filter) {
+        StringBuilder text = new StringBuilder();
+        for (Event event : batch) {
+            if (event.lesson != null && filter.test(event.lesson)) {
+                text.append(event.text);
+            }
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String format(AvailabilityChange change) {
+        String type = change.getType().name().toLowerCase(Locale.ROOT);
+        return "event: " + type + "\ndata: {" + lessonFields(change.getLesson())
+                + ",\"availableSlots\":" + change.getAvailableSlots() + "}\n\n";
+    }
+
+    private static String format(Booking booking) {
+        return "event: booking\ndata: {\"bookingId\":\"" + escape(booking.getBookingID()) + "\",\"learnerId\":\""
+                + escape(booking.getLearner().getId()) + "\"," + lessonFields(booking.getLesson()) + "}\n\n";
+    }
+
+    private static String lessonFields(SwimmingLesson lesson) {
+        return "\"lesson\":" + lesson.getHandle() + ",\"grade\":" + lesson.getGrade().getValue()
+                + ",\"date\":\"" + lesson.getDate() + "\",\"time\":\"" + lesson.getTimeSlot() + "\",\"coach\":\""
+                + (lesson.getCoach() != null ? escape(lesson.getCoach().getName()) : "") + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * An event waiting for the next tick, with the lesson it is about for filtering.
+     */
+    private static final class Event {
+        private final SwimmingLesson lesson;
+        private final String text;
+
+        Event(SwimmingLesson lesson, String text) {
+            this.lesson = lesson;
+            this.text = text;
+        }
+    }
+
+    /**
+     * The state of one client connection, only touched by the selector thread.
+     */
+    private static final class Connection {
+        private ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        private final Deque<ByteBuffer> pending = new ArrayDeque<>();
+        private long pendingBytes;
+        private Predicate<SwimmingLesson> filter;
+        private boolean streaming;
+        private boolean closeWhenFlushed;
+    }
+}
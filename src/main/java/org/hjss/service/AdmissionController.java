@@ -0,0 +1,279 @@
+package org.hjss.service;
+
+import org.hjss.exception.RequestRejected;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Admission control in front of the booking operations.
+ * Each learner has a token bucket limiting how fast they can send requests, and each lesson has a
+ * limit on how many operations run on it at once. Requests for a busy lesson wait in a bounded queue
+ * of that lesson; when the queue is full, or a request has waited too long, it is turned away at once
+ * with a busy message instead of adding to the contention. A bucket which has refilled completely is
+ * no different from a new one, so idle buckets are swept away once the map grows past a threshold.
+ */
+public class AdmissionController {
+
+    public static final String BUSY = "The booking service is busy, please try again shortly.";
+
+    private final int bucketSize;
+    private final double tokensPerSecond;
+    private final int lessonConcurrency;
+    private final int queueCapacity;
+    private final long queueTimeoutNanos;
+    private static final int MIN_SWEEP_THRESHOLD = 1024;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<Integer, LessonGate> lessonGates = new ConcurrentHashMap<>();
+    private final AtomicInteger sweepThreshold = new AtomicInteger(MIN_SWEEP_THRESHOLD);
+    private final Metrics metrics = new Metrics();
+
+    /**
+     * Creates an admission controller.
+     *
+     * @param bucketSize        The number of requests a learner can send in a burst.
+     * @param tokensPerSecond   The number of requests per second a learner's bucket refills with.
+     * @param lessonConcurrency The number of operations which may run on one lesson at once.
+     * @param queueCapacity     The number of requests which may wait for a busy lesson.
+     * @param queueTimeout      How long a request waits for a busy lesson before it is turned away.
+     */
+    public AdmissionController(int bucketSize, double tokensPerSecond, int lessonConcurrency, int queueCapacity, Duration queueTimeout) {
+        if (bucketSize < 1 || tokensPerSecond <= 0 || lessonConcurrency < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid admission limits");
+        }
+        this.bucketSize = bucketSize;
+        this.tokensPerSecond = tokensPerSecond;
+        this.lessonConcurrency = lessonConcurrency;
+        this.queueCapacity = queueCapacity;
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+    }
+
+    /**
+     * Runs an operation for a learner on a lesson if it is admitted.
+     *
+     * @param learnerId    The ID of the learner sending the request.
+     * @param lessonHandle The handle of the lesson the operation works on, or -1 for no lesson limit.
+     * @param operation    The operation to run.
+     * @return The result of the operation, or a message saying why it was turned away.
+     */
+    public String admit(String learnerId, int lessonHandle, Supplier<String> operation) {
+        try {
+            return execute(learnerId, lessonHandle, operation::get);
+        } catch (RequestRejected e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Runs an operation for a learner on a lesson if it is admitted, throwing if it is turned away.
+     *
+     * @param learnerId    The ID of the learner sending the request.
+     * @param lessonHandle The handle of the lesson the operation works on, or -1 for no lesson limit.
+     * @param operation    The operation to run.
+     * @param <T>          The type of the operation's result.
+     * @param <E>          The exception the operation throws when it fails.
+     * @return The result of the operation.
+     * @throws RequestRejected If the learner sent too many requests or the lesson is too busy.
+     * @throws E               If the operation failed.
+     */
+    public <T, E extends Exception> T execute(String learnerId, int lessonHandle, Operation<T, E> operation) throws RequestRejected, E {
+        if (learnerId != null && !bucket(learnerId).tryTake()) {
+            metrics.rateLimited.increment();
+            throw new RequestRejected("Too many requests for learner " + learnerId + ", please try again shortly.");
+        }
+        if (lessonHandle < 0) {
+            metrics.admitted.increment();
+            return operation.run();
+        }
+
+        LessonGate gate = lessonGates.computeIfAbsent(lessonHandle, handle -> new LessonGate());
+        Semaphore permits = gate.permits;
+        if (!permits.tryAcquire()) {
+            if (gate.waiting.incrementAndGet() > queueCapacity) {
+                gate.waiting.decrementAndGet();
+                metrics.shed.increment();
+                throw new RequestRejected(BUSY);
+            }
+            long queuedAt = System.nanoTime();
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            } finally {
+                gate.waiting.decrementAndGet();
+            }
+            metrics.recordQueueTime(System.nanoTime() - queuedAt);
+            if (!acquired) {
+                metrics.timedOut.increment();
+                throw new RequestRejected(BUSY);
+            }
+        }
+        try {
+            metrics.admitted.increment();
+            return operation.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return The number of requests currently waiting for any busy lesson.
+     */
+    public int getWaiting() {
+        int waiting = 0;
+        for (LessonGate gate : lessonGates.values()) {
+            waiting += gate.waiting.get();
+        }
+        return waiting;
+    }
+
+    /**
+     * @param lessonHandle The handle of the lesson.
+     * @return The number of requests currently waiting for the lesson.
+     */
+    public int getWaiting(int lessonHandle) {
+        LessonGate gate = lessonGates.get(lessonHandle);
+        return gate == null ? 0 : gate.waiting.get();
+    }
+
+    /**
+     * @return The number of learners whose token buckets are kept.
+     */
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    // Helper method to get a learner's bucket, sweeping away idle buckets when a new one pushes the map past the threshold...
+    private TokenBucket bucket(String learnerId) {
+        TokenBucket bucket = buckets.get(learnerId);
+        if (bucket != null) {
+            return bucket;
+        }
+        bucket = buckets.computeIfAbsent(learnerId, id -> new TokenBucket());
+        int threshold = sweepThreshold.get();
+        if (buckets.size() > threshold && sweepThreshold.compareAndSet(threshold, Integer.MAX_VALUE)) {
+            TokenBucket created = bucket;
+            buckets.values().removeIf(other -> other != created && other.isFull());
+            sweepThreshold.set(Math.max(MIN_SWEEP_THRESHOLD, buckets.size() * 2));
+        }
+        return bucket;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * An operation run once admitted.
+     *
+     * @param <T> The type of its result.
+     * @param <E> The exception it throws when it fails.
+     */
+    @FunctionalInterface
+    public interface Operation<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Counters of admitted and rejected requests and of the time spent queuing.
+     */
+    public static final class Metrics {
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+        private final LongAdder shed = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private final LongAdder queued = new LongAdder();
+        private final LongAdder queueNanos = new LongAdder();
+        private final LongAccumulator maxQueueNanos = new LongAccumulator(Math::max, 0);
+
+        private void recordQueueTime(long nanos) {
+            queued.increment();
+            queueNanos.add(nanos);
+            maxQueueNanos.accumulate(nanos);
+        }
+
+        public long getAdmitted() {
+            return admitted.sum();
+        }
+
+        public long getRateLimited() {
+            return rateLimited.sum();
+        }
+
+        /**
+         * @return The number of requests turned away because the queue was full.
+         */
+        public long getShed() {
+            return shed.sum();
+        }
+
+        /**
+         * @return The number of requests turned away after waiting too long in the queue.
+         */
+        public long getTimedOut() {
+            return timedOut.sum();
+        }
+
+        public long getQueued() {
+            return queued.sum();
+        }
+
+        /**
+         * @return The average time queued requests waited, or zero if none did.
+         */
+        public Duration getAverageQueueTime() {
+            long count = queued.sum();
+            return count == 0 ? Duration.ZERO : Duration.ofNanos(queueNanos.sum() / count);
+        }
+
+        public Duration getMaxQueueTime() {
+            return Duration.ofNanos(maxQueueNanos.get());
+        }
+    }
+
+    /**
+     * The operations running on one lesson and the requests queued for it.
+     */
+    private final class LessonGate {
+        private final Semaphore permits = new Semaphore(lessonConcurrency);
+        private final AtomicInteger waiting = new AtomicInteger();
+    }
+
+    /**
+     * A learner's request allowance, refilled continuously up to the bucket size.
+     */
+    private final class TokenBucket {
+        private double tokens = bucketSize;
+        private long refilledAt = System.nanoTime();
+
+        synchronized boolean tryTake() {
+            refill();
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        synchronized boolean isFull() {
+            refill();
+            return tokens >= bucketSize;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(bucketSize, tokens + (now - refilledAt) * tokensPerSecond / 1_000_000_000d);
+            refilledAt = now;
+        }
+    }
+}
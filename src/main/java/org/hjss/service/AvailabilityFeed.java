@@ -0,0 +1,241 @@
+package org.hjss.service;
+
+import org.hjss.constants.Grade;
+import org.hjss.models.AvailabilityChange;
+import org.hjss.models.LessonChangeListener;
+import org.hjss.models.SwimmingLesson;
+
+import java.time.DayOfWeek;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Publishes changes to the availability of lessons to subscribers, instead of them polling the timetable.
+ * Each subscriber only receives the lessons matching its filter. Changes pile up per subscriber until
+ * it requests more; while they wait, a newer change to a lesson replaces the older one, so a slow
+ * subscriber only ever holds one pending change per lesson and always sees the latest slot count.
+ * Delivery runs on an executor, one drain at a time per subscriber, never on the thread changing the lesson.
+ */
+public class AvailabilityFeed implements Flow.Publisher<AvailabilityChange>, LessonChangeListener {
+
+    private final Executor executor;
+    private final CopyOnWriteArrayList<FeedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public AvailabilityFeed() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor The executor changes are delivered on.
+     */
+    public AvailabilityFeed(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Subscribes to the changes of every lesson.
+     *
+     * @param subscriber The subscriber.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super AvailabilityChange> subscriber) {
+        subscribe(subscriber, lesson -> true);
+    }
+
+    /**
+     * Subscribes to the changes of the lessons matching the given criteria.
+     *
+     * @param subscriber The subscriber.
+     * @param grade      The grade to filter by, or null for any grade.
+     * @param day        The day of the week to filter by, or null for any day.
+     * @param coachName  The coach's name to filter by, or null for any coach.
+     */
+    public void subscribe(Flow.Subscriber<? super AvailabilityChange> subscriber, Grade grade, DayOfWeek day, String coachName) {
+        subscribe(subscriber, lesson -> (grade == null || lesson.getGrade() == grade)
+                && (day == null || lesson.getDate().getDayOfWeek() == day)
+                && (coachName == null || lesson.getCoach() != null && lesson.getCoach().getName().equals(coachName)));
+    }
+
+    /**
+     * Subscribes to the changes of the lessons matching a filter.
+     *
+     * @param subscriber The subscriber.
+     * @param filter     The filter the lessons must match.
+     */
+    public void subscribe(Flow.Subscriber<? super AvailabilityChange> subscriber, Predicate<SwimmingLesson> filter) {
+        Objects.requireNonNull(subscriber);
+        FeedSubscription subscription = new FeedSubscription(subscriber, filter);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Publishes a lesson added to the timetable and starts following its slots.
+     *
+     * @param lesson The lesson.
+     */
+    public void lessonAdded(SwimmingLesson lesson) {
+        lesson.addChangeListener(this);
+        publish(new AvailabilityChange(AvailabilityChange.Type.ADDED, lesson, lesson.getAvailableSlots()));
+    }
+
+    /**
+     * Publishes a lesson removed from the timetable and stops following its slots.
+     *
+     * @param lesson The lesson.
+     */
+    public void lessonRemoved(SwimmingLesson lesson) {
+        lesson.removeChangeListener(this);
+        publish(new AvailabilityChange(AvailabilityChange.Type.REMOVED, lesson, lesson.getAvailableSlots()));
+    }
+
+    @Override
+    public void slotsChanged(SwimmingLesson lesson, int availableSlots) {
+        publish(new AvailabilityChange(AvailabilityChange.Type.SLOTS, lesson, availableSlots));
+    }
+
+    /**
+     * @return The number of active subscriptions.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Completes every subscription.
+     */
+    public void close() {
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+        subscriptions.clear();
+    }
+
+    // Helper method to hand a change to every subscription whose filter matches the lesson...
+    private void publish(AvailabilityChange change) {
+        for (FeedSubscription subscription : subscriptions) {
+            if (subscription.filter.test(change.getLesson())) {
+                subscription.offer(change);
+            }
+        }
+    }
+
+    /**
+     * The pending changes and outstanding demand of one subscriber.
+     */
+    private final class FeedSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super AvailabilityChange> subscriber;
+        private final Predicate<SwimmingLesson> filter;
+        private final Map<SwimmingLesson, AvailabilityChange> pending = new LinkedHashMap<>();
+        private final AtomicInteger drains = new AtomicInteger();
+        private long demand;
+        private boolean cancelled;
+        private boolean completed;
+        private Throwable error;
+
+        FeedSubscription(Flow.Subscriber<? super AvailabilityChange> subscriber, Predicate<SwimmingLesson> filter) {
+            this.subscriber = subscriber;
+            this.filter = filter;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("Demand must be positive: " + n);
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                pending.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        void offer(AvailabilityChange change) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                AvailabilityChange previous = pending.remove(change.getLesson());
+                if (previous != null && previous.getType() == AvailabilityChange.Type.ADDED
+                        && change.getType() == AvailabilityChange.Type.SLOTS) {
+                    // The subscriber has not seen the lesson yet, so it stays an addition with the latest slots
+                    change = new AvailabilityChange(AvailabilityChange.Type.ADDED, change.getLesson(), change.getAvailableSlots());
+                }
+                pending.put(change.getLesson(), change);
+            }
+            drain();
+        }
+
+        void complete() {
+            synchronized (this) {
+                completed = true;
+            }
+            drain();
+        }
+
+        // Helper method to schedule a drain unless one is already running, which then goes round again...
+        private void drain() {
+            if (drains.getAndIncrement() == 0) {
+                executor.execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            int missed = 1;
+            do {
+                while (true) {
+                    AvailabilityChange next = null;
+                    Throwable failure;
+                    boolean done;
+                    synchronized (this) {
+                        if (cancelled) {
+                            break;
+                        }
+                        failure = error;
+                        if (failure == null && demand > 0 && !pending.isEmpty()) {
+                            Iterator<AvailabilityChange> iterator = pending.values().iterator();
+                            next = iterator.next();
+                            iterator.remove();
+                            demand--;
+                        }
+                        done = next == null && completed && pending.isEmpty();
+                        if (failure != null || done) {
+                            cancelled = true;
+                        }
+                    }
+                    if (failure != null) {
+                        subscriptions.remove(this);
+                        subscriber.onError(failure);
+                        break;
+                    }
+                    if (done) {
+                        subscriber.onComplete();
+                        break;
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    subscriber.onNext(next);
+                }
+                missed = drains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
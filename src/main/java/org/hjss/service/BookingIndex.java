@@ -0,0 +1,195 @@
+package org.hjss.service;
+
+import org.hjss.models.Booking;
+import org.hjss.models.Page;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bookings sorted by booking ID, per learner and per lesson.
+ * The sorted maps are kept in arrays indexed by the learner's and the lesson's handle, and pages
+ * seek straight to the booking ID after the cursor, so a page costs O(log n + page size).
+ */
+public class BookingIndex {
+
+    private final Shelf byLearner = new Shelf("Learner", 64);
+    private final Shelf byLesson = new Shelf("Lesson", 256);
+
+    /**
+     * Indexes a booking under its learner and lesson.
+     *
+     * @param booking The booking to add.
+     */
+    public void add(Booking booking) {
+        learnerBookings(booking.getLearner().getHandle(), true).put(booking.getBookingID(), booking);
+        lessonBookings(booking.getLesson().getHandle(), true).put(booking.getBookingID(), booking);
+    }
+
+    /**
+     * Removes a booking from the index.
+     *
+     * @param booking The booking to remove.
+     */
+    public void remove(Booking booking) {
+        Map<String, Booking> learnerBookings = learnerBookings(booking.getLearner().getHandle(), false);
+        if (learnerBookings != null) {
+            learnerBookings.remove(booking.getBookingID(), booking);
+        }
+        Map<String, Booking> lessonBookings = lessonBookings(booking.getLesson().getHandle(), false);
+        if (lessonBookings != null) {
+            lessonBookings.remove(booking.getBookingID(), booking);
+        }
+    }
+
+    /**
+     * Moves a booking that has been changed to another lesson.
+     *
+     * @param booking        The booking, already pointing at its new lesson.
+     * @param previousHandle The handle of the lesson it was on before.
+     */
+    public void move(Booking booking, int previousHandle) {
+        Map<String, Booking> previous = lessonBookings(previousHandle, false);
+        if (previous != null) {
+            previous.remove(booking.getBookingID(), booking);
+        }
+        lessonBookings(booking.getLesson().getHandle(), true).put(booking.getBookingID(), booking);
+    }
+
+    /**
+     * Lazily iterates a learner's bookings after the given booking ID.
+     *
+     * @param learnerHandle  The learner's handle.
+     * @param afterBookingId The booking ID to start after, or null to start at the first booking.
+     * @return An iterator over the bookings in booking ID order.
+     */
+    public Iterator<Booking> learnerIterator(int learnerHandle, String afterBookingId) {
+        return tail(learnerBookings(learnerHandle, false), afterBookingId);
+    }
+
+    /**
+     * Lazily iterates a lesson's bookings after the given booking ID.
+     *
+     * @param lessonHandle   The lesson's handle.
+     * @param afterBookingId The booking ID to start after, or null to start at the first booking.
+     * @return An iterator over the bookings in booking ID order.
+     */
+    public Iterator<Booking> lessonIterator(int lessonHandle, String afterBookingId) {
+        return tail(lessonBookings(lessonHandle, false), afterBookingId);
+    }
+
+    /**
+     * Returns up to {@code limit} bookings from an iterator, with the booking ID of the last
+     * one as the cursor when more bookings follow.
+     *
+     * @param iterator The bookings to page through.
+     * @param limit    The maximum number of bookings.
+     * @return The page of bookings.
+     */
+    public static Page<Booking> page(Iterator<Booking> iterator, int limit) {
+        List<Booking> items = new ArrayList<>(Math.max(0, Math.min(limit, 256)));
+        while (items.size() < limit && iterator.hasNext()) {
+            items.add(iterator.next());
+        }
+        String nextCursor = iterator.hasNext() && !items.isEmpty() ? items.get(items.size() - 1).getBookingID() : null;
+        return new Page<>(items, nextCursor);
+    }
+
+    /**
+     * Merges two iterators of bookings in booking ID order into one in booking ID order.
+     *
+     * @param first  The first bookings.
+     * @param second The second bookings.
+     * @return An iterator over the bookings of both.
+     */
+    public static Iterator<Booking> merge(Iterator<Booking> first, Iterator<Booking> second) {
+        return new Iterator<Booking>() {
+            private Booking nextFirst = first.hasNext() ? first.next() : null;
+            private Booking nextSecond = second.hasNext() ? second.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextFirst != null || nextSecond != null;
+            }
+
+            @Override
+            public Booking next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Booking next;
+                if (nextSecond == null || (nextFirst != null && nextFirst.getBookingID().compareTo(nextSecond.getBookingID()) <= 0)) {
+                    next = nextFirst;
+                    nextFirst = first.hasNext() ? first.next() : null;
+                } else {
+                    next = nextSecond;
+                    nextSecond = second.hasNext() ? second.next() : null;
+                }
+                return next;
+            }
+        };
+    }
+
+    private Iterator<Booking> tail(ConcurrentSkipListMap<String, Booking> bookings, String afterBookingId) {
+        if (bookings == null) {
+            return Collections.emptyIterator();
+        }
+        return (afterBookingId == null ? bookings : bookings.tailMap(afterBookingId, false)).values().iterator();
+    }
+
+    private ConcurrentSkipListMap<String, Booking> learnerBookings(int handle, boolean create) {
+        return byLearner.get(handle, create);
+    }
+
+    private ConcurrentSkipListMap<String, Booking> lessonBookings(int handle, boolean create) {
+        return byLesson.get(handle, create);
+    }
+
+    /**
+     * The sorted booking maps of one kind of owner, indexed by the owner's handle. Reads go through
+     * the current array without locking; a missing map is created, and the array grown, under the lock.
+     */
+    private static final class Shelf {
+        private final String owner;
+        private volatile AtomicReferenceArray<ConcurrentSkipListMap<String, Booking>> maps;
+
+        Shelf(String owner, int initialCapacity) {
+            this.owner = owner;
+            this.maps = new AtomicReferenceArray<>(initialCapacity);
+        }
+
+        ConcurrentSkipListMap<String, Booking> get(int handle, boolean create) {
+            AtomicReferenceArray<ConcurrentSkipListMap<String, Booking>> current = maps;
+            if (handle >= 0 && handle < current.length()) {
+                ConcurrentSkipListMap<String, Booking> bookings = current.get(handle);
+                if (bookings != null) {
+                    return bookings;
+                }
+            }
+            return create ? create(handle) : null;
+        }
+
+        private synchronized ConcurrentSkipListMap<String, Booking> create(int handle) {
+            if (handle < 0) {
+                throw new IllegalArgumentException(owner + " is not registered");
+            }
+            AtomicReferenceArray<ConcurrentSkipListMap<String, Booking>> current = maps;
+            if (handle >= current.length()) {
+                AtomicReferenceArray<ConcurrentSkipListMap<String, Booking>> grown =
+                        new AtomicReferenceArray<>(Math.max(handle + 1, current.length() * 2));
+                for (int i = 0; i < current.length(); i++) {
+                    grown.set(i, current.get(i));
+                }
+                maps = grown;
+                current = grown;
+            }
+            ConcurrentSkipListMap<String, Booking> bookings = current.get(handle);
+            if (bookings == null) {
+                bookings = new ConcurrentSkipListMap<>();
+                current.set(handle, bookings);
+            }
+            return bookings;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.hjss.service;
+
+import org.hjss.constants.BookingStatus;
+import org.hjss.exception.ConcurrentChange;
+import org.hjss.exception.InvalidBooking;
+import org.hjss.exception.NoSlotsAvailable;
+import org.hjss.models.Booking;
+import org.hjss.models.SwimmingLesson;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves several bookings to other lessons as one change: either every move happens or none does.
+ * Moves are staged in a write-set together with the state each booking was in when it was staged.
+ * On commit the locks of every lesson involved are taken in order of lesson handle, so two transactions
+ * never deadlock and only wait for each other when they share a lesson. The staged states are then
+ * checked, the net change of free slots of each lesson is applied, seats being taken before any are
+ * given back, and the bookings are switched with compare-and-set. Single changes and cancellations do
+ * not take these locks; a conflicting one makes the commit fail and undo what it had applied. A booking
+ * which another request has already acted on after it was switched cannot be switched back; its move is
+ * kept, the free slots are set to match the moves kept, and the commit reports the bookings concerned.
+ */
+public class BookingTransaction {
+
+    private final BookingIndex bookingIndex;
+    private final Map<Booking, Move> writeSet = new LinkedHashMap<>();
+    private boolean finished;
+
+    /**
+     * @param bookingIndex The index to move committed bookings in, or null if there is none.
+     */
+    public BookingTransaction(BookingIndex bookingIndex) {
+        this.bookingIndex = bookingIndex;
+    }
+
+    /**
+     * Stages moving a booking to another lesson.
+     *
+     * @param booking The booking to move.
+     * @param lesson  The lesson to move it to.
+     * @return This transaction.
+     * @throws InvalidBooking If the booking cannot be moved.
+     */
+    public BookingTransaction move(Booking booking, SwimmingLesson lesson) throws InvalidBooking {
+        if (finished) {
+            throw new IllegalStateException("Transaction is already finished");
+        }
+        if (booking == null || lesson == null) {
+            throw new InvalidBooking("Invalid booking or lesson details.");
+        }
+        Move staged = writeSet.get(booking);
+        Booking.State state = staged == null ? booking.getState() : staged.state;
+        checkMovable(booking, state, lesson);
+        writeSet.put(booking, new Move(state, lesson));
+        return this;
+    }
+
+    /**
+     * Stages swapping the lessons of two bookings.
+     *
+     * @param first  The first booking.
+     * @param second The second booking.
+     * @return This transaction.
+     * @throws InvalidBooking If either booking cannot be moved.
+     */
+    public BookingTransaction swap(Booking first, Booking second) throws InvalidBooking {
+        if (first == null || second == null) {
+            throw new InvalidBooking("Invalid booking details.");
+        }
+        SwimmingLesson firstLesson = target(first);
+        SwimmingLesson secondLesson = target(second);
+        move(first, secondLesson);
+        return move(second, firstLesson);
+    }
+
+    /**
+     * @return The number of staged moves.
+     */
+    public int size() {
+        return writeSet.size();
+    }
+
+    /**
+     * Applies every staged move, or none of them.
+     *
+     * @throws InvalidBooking    If a booking can no longer be moved, or a learner would attend a lesson twice.
+     * @throws NoSlotsAvailable  If a lesson would end up with more learners than its capacity.
+     * @throws ConcurrentChange  If a booking or lesson was changed by another request meanwhile.
+     */
+    public void commit() throws InvalidBooking, NoSlotsAvailable, ConcurrentChange {
+        if (finished) {
+            throw new IllegalStateException("Transaction is already finished");
+        }
+        finished = true;
+
+        // Net change of free slots per lesson, positive when seats are given back
+        Map<SwimmingLesson, Integer> deltas = new HashMap<>();
+        for (Map.Entry<Booking, Move> entry : writeSet.entrySet()) {
+            SwimmingLesson from = entry.getValue().state.getLesson();
+            SwimmingLesson to = entry.getValue().lesson;
+            if (from != to) {
+                deltas.merge(from, 1, Integer::sum);
+                deltas.merge(to, -1, Integer::sum);
+            }
+        }
+        List<SwimmingLesson> lessons = new ArrayList<>(deltas.keySet());
+        lessons.sort(Comparator.comparingInt(SwimmingLesson::getHandle)
+                .thenComparingInt(System::identityHashCode));
+
+        List<ReentrantLock> held = new ArrayList<>(lessons.size());
+        Map<SwimmingLesson, Integer> applied = new HashMap<>();
+        Map<Booking, Booking.State> switched = new LinkedHashMap<>();
+        try {
+            for (SwimmingLesson lesson : lessons) {
+                lesson.getLock().lock();
+                held.add(lesson.getLock());
+            }
+            checkWriteSet();
+
+            for (SwimmingLesson lesson : lessons) {
+                int delta = deltas.get(lesson);
+                if (delta < 0) {
+                    if (!lesson.tryAdjustSlots(delta)) {
+                        throw new NoSlotsAvailable("No slots available for lesson " + lesson.getGrade() + " on " + lesson.getDate());
+                    }
+                    applied.put(lesson, delta);
+                }
+            }
+            for (Map.Entry<Booking, Move> entry : writeSet.entrySet()) {
+                Booking booking = entry.getKey();
+                Move move = entry.getValue();
+                if (!booking.compareAndSet(move.state, move.lesson, move.state.getStatus())) {
+                    throw new ConcurrentChange("Booking " + booking.getBookingID() + " was changed by another request. Please retry.");
+                }
+                switched.put(booking, booking.getState());
+            }
+            for (SwimmingLesson lesson : lessons) {
+                int delta = deltas.get(lesson);
+                if (delta > 0 && lesson.tryAdjustSlots(delta)) {
+                    applied.put(lesson, delta);
+                }
+            }
+        } catch (InvalidBooking | NoSlotsAvailable | ConcurrentChange | RuntimeException e) {
+            List<Booking> kept = undo(switched, applied);
+            if (kept.isEmpty()) {
+                throw e;
+            }
+            List<String> keptIds = new ArrayList<>(kept.size());
+            for (Booking booking : kept) {
+                keptIds.add(booking.getBookingID());
+                if (bookingIndex != null) {
+                    bookingIndex.move(booking, writeSet.get(booking).state.getLesson().getHandle());
+                }
+            }
+            ConcurrentChange partial = new ConcurrentChange("Transaction failed, but bookings " + keptIds
+                    + " were changed by other requests after they were moved and keep their new lessons.");
+            partial.initCause(e);
+            throw partial;
+        } finally {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).unlock();
+            }
+        }
+
+        if (bookingIndex != null) {
+            for (Map.Entry<Booking, Move> entry : writeSet.entrySet()) {
+                bookingIndex.move(entry.getKey(), entry.getValue().state.getLesson().getHandle());
+            }
+        }
+    }
+
+    /**
+     * Discards every staged move.
+     */
+    public void rollback() {
+        finished = true;
+        writeSet.clear();
+    }
+
+    // Helper method to switch back the moved bookings, keeping those another request has acted on since, and set the
+    // free slots to what the moves kept need instead of what was applied...
+    private List<Booking> undo(Map<Booking, Booking.State> switched, Map<SwimmingLesson, Integer> applied) {
+        List<Booking> kept = new ArrayList<>();
+        Map<SwimmingLesson, Integer> needed = new HashMap<>();
+        List<Booking> bookings = new ArrayList<>(switched.keySet());
+        for (int i = bookings.size() - 1; i >= 0; i--) {
+            Booking booking = bookings.get(i);
+            Move move = writeSet.get(booking);
+            if (!booking.compareAndSet(switched.get(booking), move.state.getLesson(), move.state.getStatus())) {
+                kept.add(booking);
+                needed.merge(move.state.getLesson(), 1, Integer::sum);
+                needed.merge(move.lesson, -1, Integer::sum);
+            }
+        }
+        Set<SwimmingLesson> lessons = new HashSet<>(applied.keySet());
+        lessons.addAll(needed.keySet());
+        for (SwimmingLesson lesson : lessons) {
+            int correction = needed.getOrDefault(lesson, 0) - applied.getOrDefault(lesson, 0);
+            if (correction != 0) {
+                lesson.tryAdjustSlots(correction);
+            }
+        }
+        return kept;
+    }
+
+    // Helper method to return the lesson a booking is on, or is staged to move to...
+    private SwimmingLesson target(Booking booking) {
+        Move staged = writeSet.get(booking);
+        return staged == null ? booking.getLesson() : staged.lesson;
+    }
+
+    // Helper method to check the staged states are still current and no learner ends up on a lesson twice...
+    private void checkWriteSet() throws InvalidBooking, ConcurrentChange {
+        for (Map.Entry<Booking, Move> entry : writeSet.entrySet()) {
+            Booking booking = entry.getKey();
+            if (booking.getState() != entry.getValue().state) {
+                throw new ConcurrentChange("Booking " + booking.getBookingID() + " was changed by another request. Please retry.");
+            }
+            for (Booking other : booking.getLearner().getBookings()) {
+                if (other == booking || other.getBookingStatus().equals(BookingStatus.CANCELLED.name())) {
+                    continue;
+                }
+                SwimmingLesson lesson = target(other);
+                if (lesson == entry.getValue().lesson) {
+                    throw new InvalidBooking("Learner " + booking.getLearner().getId() + " is already booked on lesson "
+                            + lesson.getGrade() + " on " + lesson.getDate() + " with booking " + other.getBookingID());
+                }
+            }
+        }
+    }
+
+    private static void checkMovable(Booking booking, Booking.State state, SwimmingLesson lesson) throws InvalidBooking {
+        String status = state.getStatus();
+        if (!status.equals(BookingStatus.BOOKED.name()) && !status.equals(BookingStatus.CHANGED.name())) {
+            throw new InvalidBooking("Booking " + booking.getBookingID() + " is " + status.toLowerCase() + " and cannot be moved.");
+        }
+        if (state.getLesson().getDate().isBefore(LocalDate.now()) || lesson.getDate().isBefore(LocalDate.now())) {
+            throw new InvalidBooking("Booking " + booking.getBookingID() + " cannot be moved from or to a past lesson.");
+        }
+        if (!SwimmingSchoolService.isGradeEligible(booking.getLearner().getCurrentGrade(), lesson.getGrade())) {
+            throw new InvalidBooking("Learner " + booking.getLearner().getId() + " cannot book lesson " + lesson.getGrade()
+                    + ". It's either too advanced or not available for their grade.");
+        }
+    }
+
+    /**
+     * A staged move: the state the booking was in when staged and the lesson it moves to.
+     */
+    private static final class Move {
+        private final Booking.State state;
+        private final SwimmingLesson lesson;
+
+        Move(Booking.State state, SwimmingLesson lesson) {
+            this.state = state;
+            this.lesson = lesson;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.hjss.service;
+
+import org.hjss.constants.BookingStatus;
+import org.hjss.constants.Grade;
+import org.hjss.models.Booking;
+import org.hjss.models.Learner;
+import org.hjss.models.SwimmingLesson;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides which lessons a learner may book and when they move up a grade.
+ * A learner may book lessons at their own grade, any lower grade, or one grade higher. For every
+ * grade the lessons a learner at that grade may book are kept as a bitset over lesson handles, so
+ * the bookable lessons of a learner are one bitset lookup, narrowed down with a bitwise AND.
+ * A learner is promoted when they attend a lesson one grade above their own.
+ */
+public class GradeProgression {
+
+    private static final Grade[] GRADES = Grade.values();
+
+    private final BitSet[] lessonsOfGrade = new BitSet[GRADES.length];
+    private final BitSet[] eligibleForGrade = new BitSet[GRADES.length];
+
+    public GradeProgression() {
+        for (int i = 0; i < GRADES.length; i++) {
+            lessonsOfGrade[i] = new BitSet();
+            eligibleForGrade[i] = new BitSet();
+        }
+    }
+
+    /**
+     * @param learnerGrade The learner's current grade.
+     * @param lessonGrade  The grade of the lesson.
+     * @return true if a learner at the grade may book a lesson at the other grade.
+     */
+    public static boolean isEligible(Grade learnerGrade, Grade lessonGrade) {
+        return lessonGrade.getValue() <= learnerGrade.getValue() + 1;
+    }
+
+    /**
+     * Adds a lesson to the eligibility tables of every grade which may book it.
+     *
+     * @param lesson The lesson, which must have a handle.
+     */
+    public synchronized void add(SwimmingLesson lesson) {
+        int handle = lesson.getHandle();
+        lessonsOfGrade[lesson.getGrade().ordinal()].set(handle);
+        for (Grade grade : GRADES) {
+            if (isEligible(grade, lesson.getGrade())) {
+                eligibleForGrade[grade.ordinal()].set(handle);
+            }
+        }
+    }
+
+    /**
+     * Removes a lesson from the eligibility tables.
+     *
+     * @param lesson The lesson to remove.
+     */
+    public synchronized void remove(SwimmingLesson lesson) {
+        int handle = lesson.getHandle();
+        if (handle < 0) {
+            return;
+        }
+        lessonsOfGrade[lesson.getGrade().ordinal()].clear(handle);
+        for (BitSet eligible : eligibleForGrade) {
+            eligible.clear(handle);
+        }
+    }
+
+    /**
+     * @param grade A grade.
+     * @return A copy of the handles of the lessons at the grade.
+     */
+    public synchronized BitSet lessonsOf(Grade grade) {
+        return (BitSet) lessonsOfGrade[grade.ordinal()].clone();
+    }
+
+    /**
+     * Finds the lessons a learner at the given grade may book among a set of candidates.
+     *
+     * @param learnerGrade The learner's current grade.
+     * @param candidates   The handles of the candidate lessons, or null for every lesson.
+     * @return The handles of the bookable lessons.
+     */
+    public synchronized BitSet eligibleLessons(Grade learnerGrade, BitSet candidates) {
+        BitSet eligible = (BitSet) eligibleForGrade[learnerGrade.ordinal()].clone();
+        if (candidates != null) {
+            eligible.and(candidates);
+        }
+        return eligible;
+    }
+
+    /**
+     * Promotes the learner of an attended booking if the lesson was one grade above their own.
+     *
+     * @param booking The booking.
+     * @return true if the learner was promoted.
+     */
+    public boolean promote(Booking booking) {
+        if (!booking.getBookingStatus().equals(BookingStatus.ATTENDED.name())) {
+            return false;
+        }
+        Learner learner = booking.getLearner();
+        synchronized (learner) {
+            Grade lessonGrade = booking.getLesson().getGrade();
+            if (lessonGrade.getValue() == learner.getCurrentGrade().getValue() + 1) {
+                learner.setCurrentGrade(lessonGrade);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Replays the attended bookings of every learner in date order and promotes them accordingly.
+     * Learners are processed in parallel; a learner's grade never goes down.
+     *
+     * @param learners The learners.
+     * @return The number of learners promoted.
+     */
+    public int recomputeAll(Collection<Learner> learners) {
+        AtomicInteger promoted = new AtomicInteger();
+        learners.parallelStream().forEach(learner -> {
+            List<Booking> attended = new ArrayList<>();
+            synchronized (learner) {
+                for (Booking booking : learner.getBookings()) {
+                    if (booking.getBookingStatus().equals(BookingStatus.ATTENDED.name())) {
+                        attended.add(booking);
+                    }
+                }
+            }
+            attended.sort(Comparator.comparing(booking -> booking.getLesson().getStart()));
+            boolean changed = false;
+            for (Booking booking : attended) {
+                changed |= promote(booking);
+            }
+            if (changed) {
+                promoted.incrementAndGet();
+            }
+        });
+        return promoted.get();
+    }
+}
@@ -0,0 +1,274 @@
+package org.hjss.service;
+
+import org.hjss.models.Learner;
+import org.hjss.utils.IdentityRegistry;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Finds learners by name, ID or emergency contact from a few typed characters, tolerating typos.
+ * The words of those fields are kept in a sorted map from word to the handles of the learners having
+ * it, so all words starting with a prefix are one range of the map, and in a trigram index from each
+ * three-letter piece of a word to the words containing it, so words spelt similarly to a misspelt query
+ * word are found by counting shared trigrams instead of comparing against every word; only those few
+ * candidates are then ranked by edit distance.
+ * Every query word must match some word of a learner, by prefix or fuzzily; learners are ranked by how
+ * well their words match, and only the best ones are kept while scoring. Typos are only looked for when
+ * the prefixes alone match fewer learners than asked for, and only in query words of three letters or
+ * more, since shorter words are still being typed and match too much fuzzily.
+ */
+public class LearnerSearchIndex {
+
+    private static final double EXACT = 1.5;
+    private static final double PREFIX = 1.0;
+    private static final double MIN_CANDIDATE_DICE = 0.2;
+    private static final double MIN_SIMILARITY = 0.5;
+    private static final int MIN_FUZZY_LENGTH = 3;
+
+    private final IdentityRegistry identityRegistry;
+    private final NavigableMap<String, BitSet> learnersByWord = new TreeMap<>();
+    private final Map<String, Set<String>> wordsByTrigram = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param identityRegistry The registry the learners' handles come from.
+     */
+    public LearnerSearchIndex(IdentityRegistry identityRegistry) {
+        this.identityRegistry = identityRegistry;
+    }
+
+    /**
+     * Indexes a learner.
+     *
+     * @param learner The learner, which must have a handle.
+     */
+    public void add(Learner learner) {
+        List<String> words = words(learner);
+        lock.writeLock().lock();
+        try {
+            for (String word : words) {
+                BitSet learners = learnersByWord.get(word);
+                if (learners == null) {
+                    learners = new BitSet();
+                    learnersByWord.put(word, learners);
+                    for (String trigram : trigrams(word)) {
+                        wordsByTrigram.computeIfAbsent(trigram, key -> new HashSet<>()).add(word);
+                    }
+                }
+                learners.set(learner.getHandle());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of distinct words indexed.
+     */
+    public int getWordCount() {
+        lock.readLock().lock();
+        try {
+            return learnersByWord.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the learners best matching a query, for example "jo smi", "L12" or "jonh".
+     *
+     * @param query The words to look for.
+     * @param limit The maximum number of learners to return.
+     * @return The matching learners, best match first.
+     */
+    public List<Learner> search(String query, int limit) {
+        List<String> queryWords = split(query);
+        if (queryWords.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Scores scores;
+        lock.readLock().lock();
+        try {
+            // Every indexed learner was registered before it was added, so its handle is below the count
+            int learnerCount = identityRegistry.getLearnerCount();
+            scores = match(queryWords, learnerCount, false);
+            if (scores.matched.cardinality() < limit) {
+                // Too few learners match by prefix alone, so let misspelt words match too
+                scores = match(queryWords, learnerCount, true);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Keep the best matches sorted in a small array, ties going to the earlier learner
+        int[] best = new int[Math.min(limit, scores.matched.cardinality())];
+        int size = 0;
+        for (int handle = scores.matched.nextSetBit(0); handle >= 0; handle = scores.matched.nextSetBit(handle + 1)) {
+            if (size == best.length && !scores.ranksAbove(handle, best[size - 1])) {
+                continue;
+            }
+            int position = size < best.length ? size++ : size - 1;
+            while (position > 0 && scores.ranksAbove(handle, best[position - 1])) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = handle;
+        }
+        List<Learner> learners = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Learner learner = identityRegistry.learner(best[i]);
+            if (learner != null) {
+                learners.add(learner);
+            }
+        }
+        return learners;
+    }
+
+    // Helper method to score the learners matched by every query word...
+    private Scores match(List<String> queryWords, int learnerCount, boolean fuzzy) {
+        Scores scores = null;
+        for (String queryWord : queryWords) {
+            Scores wordScores = score(queryWord, learnerCount, fuzzy);
+            if (scores == null) {
+                scores = wordScores;
+            } else {
+                // Every query word must match, so keep only learners matched by all of them
+                scores.addMatchedByBoth(wordScores);
+            }
+            if (scores.matched.isEmpty()) {
+                break;
+            }
+        }
+        return scores;
+    }
+
+    // Helper method to score the learners whose words match one query word, by prefix or fuzzily...
+    private Scores score(String queryWord, int learnerCount, boolean fuzzy) {
+        Scores scores = new Scores(learnerCount);
+        for (Map.Entry<String, BitSet> entry : learnersByWord.subMap(queryWord, true, queryWord + Character.MAX_VALUE, false).entrySet()) {
+            // Shorter completions of the prefix rank higher, an exact word highest
+            double score = entry.getKey().equals(queryWord) ? EXACT : PREFIX + (double) queryWord.length() / entry.getKey().length() / 4;
+            scores.merge(entry.getValue(), score);
+        }
+        if (!fuzzy || queryWord.length() < MIN_FUZZY_LENGTH) {
+            return scores;
+        }
+
+        Set<String> queryTrigrams = trigrams(queryWord);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : queryTrigrams) {
+            Set<String> words = wordsByTrigram.get(trigram);
+            if (words != null) {
+                for (String word : words) {
+                    shared.merge(word, 1, Integer::sum);
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            String word = entry.getKey();
+            // Shared trigrams only pick the candidates; swapped letters break too many trigrams to rank by
+            double dice = 2.0 * entry.getValue() / (queryTrigrams.size() + trigrams(word).size());
+            if (dice < MIN_CANDIDATE_DICE) {
+                continue;
+            }
+            double similarity = 1.0 - (double) editDistance(queryWord, word) / Math.max(queryWord.length(), word.length());
+            if (similarity >= MIN_SIMILARITY) {
+                scores.merge(learnersByWord.get(word), similarity);
+            }
+        }
+        return scores;
+    }
+
+    // Helper method for the edit distance counting insertions, deletions, substitutions and swaps of adjacent letters...
+    private static int editDistance(String a, String b) {
+        int[] previousRow = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        int[] nextRow = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            row[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            nextRow[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(row[j] + 1, nextRow[j - 1] + 1), row[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, previousRow[j - 2] + 1);
+                }
+                nextRow[j] = distance;
+            }
+            int[] oldest = previousRow;
+            previousRow = row;
+            row = nextRow;
+            nextRow = oldest;
+        }
+        return row[b.length()];
+    }
+
+    private static List<String> words(Learner learner) {
+        List<String> words = new ArrayList<>();
+        words.addAll(split(learner.getName()));
+        words.addAll(split(learner.getId()));
+        words.addAll(split(learner.getEmergencyContact()));
+        return words;
+    }
+
+    private static List<String> split(String text) {
+        List<String> words = new ArrayList<>();
+        if (text != null) {
+            for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    // Trigrams of the word padded with a space on either side, so its first and last letters count. A second
+    // leading space would give every word starting with the same letter a shared trigram, as every learner ID
+    // has in "  l", and make that one trigram pick nearly every word as a candidate
+    private static Set<String> trigrams(String word) {
+        String padded = " " + word + " ";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * The scores of the learners matched so far, in an array indexed by handle.
+     */
+    private static final class Scores {
+        private final BitSet matched = new BitSet();
+        private final double[] values;
+
+        Scores(int learnerCount) {
+            values = new double[learnerCount];
+        }
+
+        // Gives the learners the score unless they already have a higher one...
+        void merge(BitSet learners, double score) {
+            for (int handle = learners.nextSetBit(0); handle >= 0 && handle < values.length; handle = learners.nextSetBit(handle + 1)) {
+                if (!matched.get(handle) || values[handle] < score) {
+                    values[handle] = score;
+                    matched.set(handle);
+                }
+            }
+        }
+
+        void addMatchedByBoth(Scores other) {
+            matched.and(other.matched);
+            for (int handle = matched.nextSetBit(0); handle >= 0; handle = matched.nextSetBit(handle + 1)) {
+                values[handle] += other.values[handle];
+            }
+        }
+
+        boolean ranksAbove(int handle, int other) {
+            return values[handle] > values[other] || (values[handle] == values[other] && handle < other);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package org.hjss.service;
+
+import org.hjss.constants.BookingStatus;
+import org.hjss.constants.Grade;
+import org.hjss.constants.Rating;
+import org.hjss.models.*;
+import org.hjss.utils.ColumnarFileReader;
+import org.hjss.utils.ColumnarFileWriter;
+import org.hjss.utils.IdentityRegistry;
+import org.hjss.utils.SchoolDataExporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.*;
+
+import static org.hjss.utils.ColumnarFileWriter.*;
+
+/**
+ * Moves lessons older than a horizon, together with their bookings and reviews, out of the live
+ * school into segment files on disk, one or more per month. The directory belongs to one school:
+ * every segment in it is read back as part of that school's archive.
+ * The monthly booking counts per learner and the rating totals per coach are kept in memory so the
+ * summary and coach reports need no disk access, and are rebuilt from the segments when the archive
+ * is opened. The month of every archived booking is kept too, so an archived booking can still be
+ * looked up by ID; the detailed report and booking lookups read the rows back from the segments.
+ */
+public class LessonArchive {
+
+    static final String REPORT_ROWS = "report_rows";
+
+    private static final String SEGMENTS = "[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9][0-9][0-9].hjss";
+
+    private final Path directory;
+    private final int horizonDays;
+    private final Map<YearMonth, Map<String, int[]>> bookingCounts = new HashMap<>();
+    private final Map<String, double[]> coachRatings = new HashMap<>();
+    private final Map<String, YearMonth> bookingMonths = new HashMap<>();
+    private final Map<String, Set<YearMonth>> learnerMonths = new HashMap<>();
+
+    /**
+     * Opens the archive of a school in the given directory, rebuilding the aggregates of the
+     * segments already in it.
+     *
+     * @param directory   The school's directory for the segment files.
+     * @param horizonDays Lessons older than this many days are archived.
+     * @throws IOException If a segment already in the directory cannot be read.
+     */
+    public LessonArchive(Path directory, int horizonDays) throws IOException {
+        this.directory = directory;
+        this.horizonDays = horizonDays;
+        if (Files.isDirectory(directory)) {
+            for (Path segment : segments(directory, SEGMENTS)) {
+                load(YearMonth.parse(segment.getFileName().toString().substring(0, 7)), segment);
+            }
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getHorizonDays() {
+        return horizonDays;
+    }
+
+    /**
+     * Archives all lessons of the school dated before the horizon and removes them, their bookings
+     * and reviews from the live school.
+     *
+     * @param swimmingSchool The swimming school to archive from.
+     * @param today          The day the horizon is counted back from.
+     * @return The number of lessons archived.
+     * @throws IOException If a segment cannot be written; the live school is left unchanged then.
+     */
+    public synchronized int archive(SwimmingSchool swimmingSchool, LocalDate today) throws IOException {
+        LocalDate cutoff = today.minusDays(horizonDays);
+        List<SwimmingLesson> past = new ArrayList<>();
+        for (SwimmingLesson lesson : swimmingSchool.getTimetable()) {
+            if (lesson.getDate().isBefore(cutoff)) {
+                past.add(lesson);
+            }
+        }
+        return archive(swimmingSchool, past);
+    }
+
+    /**
+     * Archives the given lessons, whatever their date, and removes them, their bookings and reviews
+     * from the live school. Cancelled lessons are archived this way once their bookings have been
+     * moved or cancelled.
+     *
+     * @param swimmingSchool The swimming school to archive from.
+     * @param lessons        The lessons to archive.
+     * @return The number of lessons archived.
+     * @throws IOException If a segment cannot be written; the live school is left unchanged then.
+     */
+    public synchronized int archive(SwimmingSchool swimmingSchool, Collection<SwimmingLesson> lessons) throws IOException {
+        Map<YearMonth, List<SwimmingLesson>> lessonsByMonth = new TreeMap<>();
+        Set<SwimmingLesson> archived = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (SwimmingLesson lesson : lessons) {
+            if (archived.add(lesson)) {
+                lessonsByMonth.computeIfAbsent(YearMonth.from(lesson.getDate()), month -> new ArrayList<>()).add(lesson);
+            }
+        }
+        if (archived.isEmpty()) {
+            return 0;
+        }
+
+        Map<YearMonth, Map<String, Booking>> bookingsByMonth = new HashMap<>();
+        for (Booking booking : swimmingSchool.getBookings().values()) {
+            if (archived.contains(booking.getLesson())) {
+                bookingsByMonth.computeIfAbsent(YearMonth.from(booking.getLesson().getDate()), month -> new LinkedHashMap<>())
+                        .put(booking.getBookingID(), booking);
+            }
+        }
+
+        Files.createDirectories(directory);
+        for (Map.Entry<YearMonth, List<SwimmingLesson>> entry : lessonsByMonth.entrySet()) {
+            Map<String, Booking> monthBookings = bookingsByMonth.getOrDefault(entry.getKey(), Collections.emptyMap());
+            writeSegment(entry.getKey(), entry.getValue(), monthBookings);
+        }
+        for (Map.Entry<YearMonth, List<SwimmingLesson>> entry : lessonsByMonth.entrySet()) {
+            aggregate(entry.getKey(), entry.getValue(), bookingsByMonth.getOrDefault(entry.getKey(), Collections.emptyMap()));
+        }
+
+        // Only drop the live objects once every segment is safely on disk
+        swimmingSchool.removeLessons(archived);
+        for (Map<String, Booking> monthBookings : bookingsByMonth.values()) {
+            for (Booking booking : monthBookings.values()) {
+                swimmingSchool.removeBooking(booking);
+            }
+        }
+        for (SwimmingLesson lesson : archived) {
+            lesson.getCoach().unscheduleLesson(lesson);
+            swimmingSchool.getIdentityRegistry().release(lesson);
+        }
+        return archived.size();
+    }
+
+    /**
+     * Reads an archived booking back from its segment. The booking is a detached copy: its lesson is
+     * rebuilt from the segment and is not part of the timetable.
+     *
+     * @param bookingId      The ID of the booking.
+     * @param swimmingSchool The school the booking's learner and coach are looked up in.
+     * @return The booking, or null if it has not been archived.
+     * @throws IOException If the segment cannot be read.
+     */
+    public Booking findBooking(String bookingId, SwimmingSchool swimmingSchool) throws IOException {
+        YearMonth month;
+        synchronized (this) {
+            month = bookingMonths.get(bookingId);
+        }
+        if (month == null) {
+            return null;
+        }
+        List<Booking> bookings = readBookings(month, swimmingSchool, bookingId, null);
+        return bookings.isEmpty() ? null : bookings.get(0);
+    }
+
+    /**
+     * Reads the archived bookings of a learner back from the segments, as detached copies.
+     *
+     * @param learnerId      The ID of the learner.
+     * @param swimmingSchool The school the learner and coaches are looked up in.
+     * @return The learner's archived bookings in booking ID order.
+     * @throws IOException If a segment cannot be read.
+     */
+    public List<Booking> findLearnerBookings(String learnerId, SwimmingSchool swimmingSchool) throws IOException {
+        List<YearMonth> months;
+        synchronized (this) {
+            months = new ArrayList<>(learnerMonths.getOrDefault(learnerId, Collections.emptySet()));
+        }
+        List<Booking> bookings = new ArrayList<>();
+        for (YearMonth month : months) {
+            bookings.addAll(readBookings(month, swimmingSchool, null, learnerId));
+        }
+        bookings.sort(Comparator.comparing(Booking::getBookingID));
+        return bookings;
+    }
+
+    /**
+     * @param month     The month.
+     * @param learnerId The ID of the learner.
+     * @return The archived booked, changed, cancelled, attended and no-show counts, or null if there are none.
+     */
+    public synchronized int[] getBookingCounts(YearMonth month, String learnerId) {
+        Map<String, int[]> counts = bookingCounts.get(month);
+        return counts == null ? null : counts.get(learnerId);
+    }
+
+    /**
+     * @param month The month.
+     * @return true if lessons of this month have been archived.
+     */
+    public synchronized boolean isArchived(YearMonth month) {
+        return bookingCounts.containsKey(month);
+    }
+
+    /**
+     * @return A copy of the archived rating total and count per coach name.
+     */
+    public synchronized Map<String, double[]> getCoachRatings() {
+        Map<String, double[]> copy = new HashMap<>();
+        for (Map.Entry<String, double[]> entry : coachRatings.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().clone());
+        }
+        return copy;
+    }
+
+    /**
+     * Reads the detailed report rows of an archived month back from its segments.
+     *
+     * @param month   The month.
+     * @param service The service used to format the rows.
+     * @return The formatted rows per learner ID, empty if the month has not been archived.
+     * @throws IOException If a segment cannot be read.
+     */
+    public synchronized Map<String, StringBuilder> readDetailedRows(YearMonth month, SwimmingSchoolService service) throws IOException {
+        Map<String, StringBuilder> rows = new HashMap<>();
+        if (!Files.isDirectory(directory)) {
+            return rows;
+        }
+        for (Path segment : segments(directory, month + "-[0-9][0-9][0-9][0-9].hjss")) {
+            try (InputStream in = Files.newInputStream(segment); ColumnarFileReader reader = new ColumnarFileReader(in)) {
+                ColumnarFileReader.TableReader table;
+                while ((table = reader.nextTable()) != null) {
+                    if (!table.getName().equals(REPORT_ROWS)) {
+                        continue;
+                    }
+                    while (table.next()) {
+                        String learnerId = table.getString(0);
+                        service.appendBookingDetails(rows.computeIfAbsent(learnerId, id -> new StringBuilder()),
+                                learnerId, table.getString(1), Grade.valueOfGrade(table.getInt(2)),
+                                LocalDate.ofEpochDay(table.getLong(3)), LocalTime.ofSecondOfDay(table.getInt(4)),
+                                table.getString(5), table.getString(6), table.getString(7));
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Helper method to write a new segment for one month...
+    private void writeSegment(YearMonth month, List<SwimmingLesson> lessons, Map<String, Booking> bookings) throws IOException {
+        int sequence = 0;
+        Path segment;
+        do {
+            segment = directory.resolve(String.format("%s-%04d.hjss", month, sequence++));
+        } while (Files.exists(segment));
+
+        SchoolDataExporter exporter = new SchoolDataExporter();
+        try (OutputStream out = Files.newOutputStream(segment); ColumnarFileWriter writer = new ColumnarFileWriter(out)) {
+            exporter.writeLessons(writer, lessons);
+            exporter.writeBookings(writer, bookings);
+            exporter.writeReviews(writer, lessons, bookings);
+
+            ColumnarFileWriter.TableWriter table = writer.startTable(REPORT_ROWS, stringColumn("learnerId"),
+                    stringColumn("bookingId"), intColumn("grade"), longColumn("date"), intColumn("time"),
+                    stringColumn("coach"), stringColumn("status"), stringColumn("rating"));
+            for (Booking booking : bookings.values()) {
+                SwimmingLesson lesson = booking.getLesson();
+                table.set(0, booking.getLearner().getId())
+                        .set(1, booking.getBookingID())
+                        .set(2, (int) lesson.getGrade().getValue())
+                        .set(3, lesson.getDate().toEpochDay())
+                        .set(4, lesson.getTimeSlot().toSecondOfDay())
+                        .set(5, lesson.getCoach().getName())
+                        .set(6, booking.getBookingStatus())
+                        .set(7, booking.getReview() != null ? booking.getReview().getRating().name() : "-")
+                        .endRow();
+            }
+        }
+    }
+
+    // Helper method to fold a month's bookings and reviews into the in-memory aggregates...
+    private void aggregate(YearMonth month, List<SwimmingLesson> lessons, Map<String, Booking> bookings) {
+        bookingCounts.computeIfAbsent(month, m -> new HashMap<>());
+        for (Booking booking : bookings.values()) {
+            count(month, booking.getBookingID(), booking.getLearner().getId(), booking.getBookingStatus());
+        }
+        for (SwimmingLesson lesson : lessons) {
+            if (lesson.getReviews() == null) {
+                continue;
+            }
+            for (Review review : lesson.getReviews()) {
+                rate(lesson.getCoach().getName(), review.getRating().getValue());
+            }
+        }
+    }
+
+    // Helper method to fold the bookings and reviews of a segment written before into the aggregates...
+    private void load(YearMonth month, Path segment) throws IOException {
+        bookingCounts.computeIfAbsent(month, m -> new HashMap<>());
+        Map<Integer, String> coachByLesson = new HashMap<>();
+        try (InputStream in = Files.newInputStream(segment); ColumnarFileReader reader = new ColumnarFileReader(in)) {
+            ColumnarFileReader.TableReader table;
+            while ((table = reader.nextTable()) != null) {
+                switch (table.getName()) {
+                    case SchoolDataExporter.LESSONS:
+                        while (table.next()) {
+                            coachByLesson.put(table.getInt(0), table.getString(4));
+                        }
+                        break;
+                    case SchoolDataExporter.BOOKINGS:
+                        while (table.next()) {
+                            count(month, table.getString(0), table.getString(2), table.getString(4));
+                        }
+                        break;
+                    case SchoolDataExporter.REVIEWS:
+                        while (table.next()) {
+                            rate(coachByLesson.get(table.getInt(0)), table.getInt(2));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    private void count(YearMonth month, String bookingId, String learnerId, String status) {
+        int[] learnerCounts = bookingCounts.computeIfAbsent(month, m -> new HashMap<>()).computeIfAbsent(learnerId, id -> new int[5]);
+        if (status.equals(BookingStatus.BOOKED.name())) {
+            learnerCounts[0]++;
+        } else if (status.equals(BookingStatus.CHANGED.name())) {
+            learnerCounts[1]++;
+        } else if (status.equals(BookingStatus.CANCELLED.name())) {
+            learnerCounts[2]++;
+        } else if (status.equals(BookingStatus.ATTENDED.name())) {
+            learnerCounts[3]++;
+        } else if (status.equals(BookingStatus.NO_SHOW.name())) {
+            learnerCounts[4]++;
+        }
+        bookingMonths.put(bookingId, month);
+        learnerMonths.computeIfAbsent(learnerId, id -> new HashSet<>()).add(month);
+    }
+
+    private void rate(String coachName, int rating) {
+        double[] ratings = coachRatings.computeIfAbsent(coachName, name -> new double[2]);
+        ratings[0] += rating;
+        ratings[1]++;
+    }
+
+    // Helper method to rebuild the bookings of a month matching a booking ID or learner ID from its segments...
+    private List<Booking> readBookings(YearMonth month, SwimmingSchool swimmingSchool, String bookingId,
+                                       String learnerId) throws IOException {
+        List<Booking> bookings = new ArrayList<>();
+        IdentityRegistry identityRegistry = swimmingSchool.getIdentityRegistry();
+        List<Path> monthSegments;
+        synchronized (this) {
+            monthSegments = Files.isDirectory(directory)
+                    ? segments(directory, month + "-[0-9][0-9][0-9][0-9].hjss") : Collections.emptyList();
+        }
+        for (Path segment : monthSegments) {
+            Map<Integer, SwimmingLesson> lessons = new HashMap<>();
+            Map<String, Booking> found = new HashMap<>();
+            try (InputStream in = Files.newInputStream(segment); ColumnarFileReader reader = new ColumnarFileReader(in)) {
+                ColumnarFileReader.TableReader table;
+                while ((table = reader.nextTable()) != null) {
+                    switch (table.getName()) {
+                        case SchoolDataExporter.LESSONS:
+                            while (table.next()) {
+                                Coach coach = identityRegistry.coach(identityRegistry.coachHandle(table.getString(4)));
+                                if (coach == null) {
+                                    coach = new Coach(table.getString(4), new ArrayList<>());
+                                }
+                                lessons.put(table.getInt(0), new SwimmingLesson(Grade.valueOfGrade(table.getInt(1)),
+                                        LocalDate.ofEpochDay(table.getLong(2)), LocalTime.ofSecondOfDay(table.getInt(3)), coach,
+                                        new ArrayList<>(), table.getInt(5), new ArrayList<>(), table.getInt(6)));
+                            }
+                            break;
+                        case SchoolDataExporter.BOOKINGS:
+                            while (table.next()) {
+                                if ((bookingId == null || bookingId.equals(table.getString(0)))
+                                        && (learnerId == null || learnerId.equals(table.getString(2)))) {
+                                    Learner learner = swimmingSchool.getLearnerByLearnerId(table.getString(2));
+                                    found.put(table.getString(0), new Booking(table.getString(0), LocalDate.ofEpochDay(table.getLong(1)),
+                                            learner, lessons.get(table.getInt(3)), table.getString(4), null));
+                                }
+                            }
+                            break;
+                        case SchoolDataExporter.REVIEWS:
+                            while (table.next()) {
+                                Booking booking = table.getString(1) != null ? found.get(table.getString(1)) : null;
+                                if (booking != null) {
+                                    Review review = new Review(Rating.valueOfRating(table.getInt(2)), table.getString(3), table.getInt(4),
+                                            LocalDate.ofEpochDay(table.getLong(5)), LocalDate.ofEpochDay(table.getLong(6)), table.getString(7));
+                                    booking.getLesson().getReviews().add(review);
+                                    booking.setReview(review);
+                                }
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+            bookings.addAll(found.values());
+        }
+        return bookings;
+    }
+
+    // Helper method to list the segments of the directory matching a glob, oldest first...
+    private static List<Path> segments(Path directory, String glob) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+}
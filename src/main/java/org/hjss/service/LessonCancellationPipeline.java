@@ -0,0 +1,131 @@
+package org.hjss.service;
+
+import org.hjss.constants.BookingStatus;
+import org.hjss.exception.ConcurrentChange;
+import org.hjss.exception.InvalidBooking;
+import org.hjss.exception.NoSlotsAvailable;
+import org.hjss.models.Booking;
+import org.hjss.models.Learner;
+import org.hjss.models.Notification;
+import org.hjss.models.SwimmingLesson;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Rebooks the learners of cancelled lessons. The open bookings of each lesson are read from the
+ * per-lesson booking index, and each is moved to the earliest lesson the recommender offers the
+ * learner under the grade rules, trying the next one when another rebooking took the last seat first.
+ * The recommender is asked for a small batch of lessons first and for twice as many each time a batch
+ * is used up, so every lesson the learner may book is tried before a booking is cancelled. Lessons are processed in parallel, and every
+ * learner affected gets a notification saying where their booking went.
+ */
+public class LessonCancellationPipeline {
+
+    private static final int FIRST_CANDIDATES = 5;
+
+    private final BookingIndex bookingIndex;
+    private final Supplier<LessonRecommender> recommender;
+
+    /**
+     * @param bookingIndex The index the bookings of a lesson are found in, and moved in.
+     * @param recommender  Gives the recommender over the timetable without the cancelled lessons.
+     */
+    public LessonCancellationPipeline(BookingIndex bookingIndex, Supplier<LessonRecommender> recommender) {
+        this.bookingIndex = bookingIndex;
+        this.recommender = recommender;
+    }
+
+    /**
+     * Moves or cancels every open booking of the given lessons, which must already be cancelled.
+     *
+     * @param lessons The cancelled lessons.
+     * @return One notification per booking moved or cancelled.
+     */
+    public List<Notification> rebook(Collection<SwimmingLesson> lessons) {
+        LessonRecommender lessonRecommender = recommender.get();
+        return lessons.parallelStream()
+                .flatMap(lesson -> rebook(lesson, lessonRecommender).stream())
+                .collect(Collectors.toList());
+    }
+
+    // Helper method to rebook the open bookings of one lesson...
+    private List<Notification> rebook(SwimmingLesson lesson, LessonRecommender lessonRecommender) {
+        List<Booking> affected = new ArrayList<>();
+        for (Iterator<Booking> iterator = bookingIndex.lessonIterator(lesson.getHandle(), null); iterator.hasNext(); ) {
+            Booking booking = iterator.next();
+            if (isOpen(booking.getBookingStatus())) {
+                affected.add(booking);
+            }
+        }
+
+        List<Notification> notifications = new ArrayList<>(affected.size());
+        for (Booking booking : affected) {
+            Notification notification = moveOrCancel(booking, lesson, lessonRecommender);
+            if (notification != null) {
+                notifications.add(notification);
+            }
+        }
+        return notifications;
+    }
+
+    private Notification moveOrCancel(Booking booking, SwimmingLesson cancelled, LessonRecommender lessonRecommender) {
+        Learner learner = booking.getLearner();
+        Set<SwimmingLesson> tried = Collections.newSetFromMap(new IdentityHashMap<>());
+        candidates:
+        for (int limit = FIRST_CANDIDATES; ; limit = limit * 2) {
+            List<SwimmingLesson> candidates = lessonRecommender.recommend(learner, null, limit, LocalDate.now());
+            for (SwimmingLesson candidate : candidates) {
+                if (candidate.isCancelled() || !tried.add(candidate)) {
+                    continue;
+                }
+                try {
+                    new BookingTransaction(bookingIndex).move(booking, candidate).commit();
+                    return notify(Notification.Type.MOVED, booking, "Lesson " + cancelled.getGrade() + " on " + cancelled.getDate()
+                            + " at " + cancelled.getTimeSlot() + " is cancelled. Your booking " + booking.getBookingID()
+                            + " has been moved to lesson " + candidate.getGrade() + " on " + candidate.getDate() + " at " + candidate.getTimeSlot() + ".");
+                } catch (NoSlotsAvailable | InvalidBooking e) {
+                    // Taken by another rebooking or not allowed for this learner, so try the next lesson
+                } catch (ConcurrentChange e) {
+                    break candidates;
+                }
+            }
+            // A batch shorter than asked for holds every lesson the recommender can offer
+            if (candidates.size() < limit || limit > Integer.MAX_VALUE / 4) {
+                break;
+            }
+        }
+
+        while (true) {
+            Booking.State state = booking.getState();
+            if (state.getLesson() != cancelled || !isOpen(state.getStatus())) {
+                // The learner changed or cancelled the booking themselves meanwhile
+                return null;
+            }
+            if (booking.compareAndSet(state, cancelled, BookingStatus.CANCELLED.name())) {
+                cancelled.releaseSlot();
+                return notify(Notification.Type.CANCELLED, booking, "Lesson " + cancelled.getGrade() + " on " + cancelled.getDate()
+                        + " at " + cancelled.getTimeSlot() + " is cancelled and no other lesson was free. Your booking "
+                        + booking.getBookingID() + " has been cancelled.");
+            }
+        }
+    }
+
+    private static Notification notify(Notification.Type type, Booking booking, String message) {
+        Learner learner = booking.getLearner();
+        return new Notification(type, learner.getId(), learner.getEmergencyContact(), booking.getBookingID(), message, LocalDateTime.now());
+    }
+
+    private static boolean isOpen(String status) {
+        return status.equals(BookingStatus.BOOKED.name()) || status.equals(BookingStatus.CHANGED.name());
+    }
+}
@@ -0,0 +1,116 @@
+package org.hjss.service;
+
+import org.hjss.constants.Grade;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.BitSet;
+
+/**
+ * A search over the lessons of a {@link LessonSearchIndex}, built from criteria combined with
+ * AND, OR and NOT, for example
+ * {@code LessonQuery.grade(Grade.GRADE_2).and(LessonQuery.hasFreeSlots()).and(LessonQuery.coach("Helen").not())}.
+ */
+public abstract class LessonQuery {
+
+    /**
+     * Evaluates the query on the index.
+     *
+     * @param index The index, locked by the caller.
+     * @return The handles of the matching lessons, a bitset the caller may change.
+     */
+    abstract BitSet evaluate(LessonSearchIndex index);
+
+    public static LessonQuery all() {
+        return of(LessonSearchIndex::all);
+    }
+
+    public static LessonQuery day(DayOfWeek day) {
+        return of(index -> index.day(day));
+    }
+
+    public static LessonQuery grade(Grade grade) {
+        return of(index -> index.grade(grade));
+    }
+
+    public static LessonQuery coach(String coachName) {
+        return of(index -> index.coach(coachName));
+    }
+
+    public static LessonQuery time(LocalTime time) {
+        return of(index -> index.time(time));
+    }
+
+    /**
+     * @param date Any day of the week.
+     * @return A query matching the lessons from the Monday to the Sunday of that week.
+     */
+    public static LessonQuery week(LocalDate date) {
+        return of(index -> index.week(date));
+    }
+
+    /**
+     * @param from The first date, inclusive.
+     * @param to   The last date, inclusive.
+     * @return A query matching the lessons in the date range.
+     */
+    public static LessonQuery between(LocalDate from, LocalDate to) {
+        return of(index -> index.between(from, to));
+    }
+
+    public static LessonQuery hasFreeSlots() {
+        return of(LessonSearchIndex::freeSlots);
+    }
+
+    /**
+     * @param other Another query.
+     * @return A query matching the lessons matching both queries.
+     */
+    public LessonQuery and(LessonQuery other) {
+        LessonQuery self = this;
+        return of(index -> {
+            BitSet matches = self.evaluate(index);
+            matches.and(other.evaluate(index));
+            return matches;
+        });
+    }
+
+    /**
+     * @param other Another query.
+     * @return A query matching the lessons matching either query.
+     */
+    public LessonQuery or(LessonQuery other) {
+        LessonQuery self = this;
+        return of(index -> {
+            BitSet matches = self.evaluate(index);
+            matches.or(other.evaluate(index));
+            return matches;
+        });
+    }
+
+    /**
+     * @return A query matching the lessons this query does not match.
+     */
+    public LessonQuery not() {
+        LessonQuery self = this;
+        return of(index -> {
+            BitSet matches = index.all();
+            matches.andNot(self.evaluate(index));
+            return matches;
+        });
+    }
+
+    private static LessonQuery of(Evaluator evaluator) {
+        return new LessonQuery() {
+            @Override
+            BitSet evaluate(LessonSearchIndex index) {
+                return evaluator.evaluate(index);
+            }
+        };
+    }
+
+    private interface Evaluator {
+        BitSet evaluate(LessonSearchIndex index);
+    }
+}
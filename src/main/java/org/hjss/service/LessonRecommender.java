@@ -0,0 +1,272 @@
+package org.hjss.service;
+
+import org.hjss.constants.Grade;
+import org.hjss.models.Booking;
+import org.hjss.models.Learner;
+import org.hjss.models.LessonChangeListener;
+import org.hjss.models.SwimmingLesson;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Recommends the earliest lessons a learner can book at their own grade or one grade above.
+ * Lessons are kept in one list per grade sorted by date and time, and once more per coach, and the
+ * candidate grades are merged through a priority queue so only the lessons actually returned are
+ * visited. The preferred coach's lessons are taken from that coach's own lists, so asking for a
+ * coach never walks the other coaches' lessons to find them.
+ * The school keeps the index in step as lessons join and leave the timetable, and the recommender
+ * listens to every lesson it indexes so a lesson is dropped as soon as it is cancelled.
+ */
+public class LessonRecommender implements LessonChangeListener {
+
+    private static final Comparator<SwimmingLesson> BY_START =
+            Comparator.comparing(SwimmingLesson::getDate).thenComparing(SwimmingLesson::getTimeSlot);
+
+    private final Map<Grade, List<SwimmingLesson>> lessonsByGrade = new EnumMap<>(Grade.class);
+    private final Map<String, Map<Grade, List<SwimmingLesson>>> lessonsByCoach = new HashMap<>();
+    private int indexedLessons;
+
+    /**
+     * Creates a recommender indexing the given timetable.
+     *
+     * @param timetable The lessons to index.
+     */
+    public LessonRecommender(List<SwimmingLesson> timetable) {
+        rebuild(timetable);
+    }
+
+    /**
+     * Rebuilds the per-grade and per-coach lesson lists from the timetable.
+     *
+     * @param timetable The lessons to index.
+     */
+    public synchronized void rebuild(List<SwimmingLesson> timetable) {
+        for (List<SwimmingLesson> lessons : lessonsByGrade.values()) {
+            for (SwimmingLesson lesson : lessons) {
+                lesson.removeChangeListener(this);
+            }
+        }
+        lessonsByGrade.clear();
+        lessonsByCoach.clear();
+        for (Grade grade : Grade.values()) {
+            lessonsByGrade.put(grade, new ArrayList<>());
+        }
+        indexedLessons = 0;
+        for (SwimmingLesson lesson : timetable) {
+            if (!lesson.isCancelled()) {
+                lessonsByGrade.get(lesson.getGrade()).add(lesson);
+                coachLessons(lesson, true).add(lesson);
+                lesson.addChangeListener(this);
+                indexedLessons++;
+            }
+        }
+        for (List<SwimmingLesson> lessons : lessonsByGrade.values()) {
+            lessons.sort(BY_START);
+        }
+        for (Map<Grade, List<SwimmingLesson>> byGrade : lessonsByCoach.values()) {
+            for (List<SwimmingLesson> lessons : byGrade.values()) {
+                lessons.sort(BY_START);
+            }
+        }
+    }
+
+    /**
+     * Adds a single lesson to the index keeping its lists sorted.
+     *
+     * @param lesson The lesson to add.
+     */
+    public synchronized void addLesson(SwimmingLesson lesson) {
+        if (lesson.isCancelled()) {
+            return;
+        }
+        insert(lessonsByGrade.get(lesson.getGrade()), lesson);
+        insert(coachLessons(lesson, true), lesson);
+        lesson.addChangeListener(this);
+        indexedLessons++;
+    }
+
+    /**
+     * Removes a single lesson from the index.
+     *
+     * @param lesson The lesson to remove.
+     */
+    public synchronized void removeLesson(SwimmingLesson lesson) {
+        lesson.removeChangeListener(this);
+        if (delete(lessonsByGrade.get(lesson.getGrade()), lesson)) {
+            List<SwimmingLesson> coachLessons = coachLessons(lesson, false);
+            if (coachLessons != null) {
+                delete(coachLessons, lesson);
+            }
+            indexedLessons--;
+        }
+    }
+
+    @Override
+    public void slotsChanged(SwimmingLesson lesson, int availableSlots) {
+        // Free slots are read when recommending, so the lists do not change with them
+    }
+
+    @Override
+    public void lessonCancelled(SwimmingLesson lesson) {
+        removeLesson(lesson);
+    }
+
+    /**
+     * @return The number of lessons currently indexed.
+     */
+    public synchronized int getIndexedLessons() {
+        return indexedLessons;
+    }
+
+    /**
+     * Returns up to {@code limit} upcoming lessons with a free slot that the learner can book at
+     * their current grade or one grade above, earliest first. Lessons with the preferred coach
+     * come before the others when a coach is given.
+     *
+     * @param learner        The learner to recommend lessons for.
+     * @param preferredCoach The coach's name to prefer, or null for no preference.
+     * @param limit          The maximum number of lessons to return.
+     * @param after          Only lessons after this date are considered.
+     * @return The recommended lessons.
+     */
+    public synchronized List<SwimmingLesson> recommend(Learner learner, String preferredCoach, int limit, LocalDate after) {
+        List<SwimmingLesson> recommended = new ArrayList<>(Math.max(limit, 0));
+        if (learner == null || limit <= 0) {
+            return recommended;
+        }
+        String coachKey = preferredCoach == null ? null : preferredCoach.toLowerCase(Locale.ROOT);
+        if (coachKey != null) {
+            Map<Grade, List<SwimmingLesson>> coachLessons = lessonsByCoach.get(coachKey);
+            if (coachLessons != null) {
+                merge(coachLessons, learner, after, limit, null, recommended);
+            }
+        }
+        merge(lessonsByGrade, learner, after, limit, coachKey, recommended);
+        return recommended;
+    }
+
+    // Helper method to add the earliest bookable lessons of the learner's candidate grades until the limit is reached...
+    private void merge(Map<Grade, List<SwimmingLesson>> lists, Learner learner, LocalDate after, int limit,
+                       String skippedCoach, List<SwimmingLesson> recommended) {
+        // One cursor per candidate grade, merged by lesson start
+        PriorityQueue<Cursor> queue = new PriorityQueue<>();
+        Grade learnerGrade = learner.getCurrentGrade();
+        for (Grade grade : Grade.values()) {
+            List<SwimmingLesson> lessons = lists.get(grade);
+            if (lessons != null && grade.getValue() >= learnerGrade.getValue()
+                    && SwimmingSchoolService.isGradeEligible(learnerGrade, grade)) {
+                int start = firstAfter(lessons, after);
+                if (start < lessons.size()) {
+                    queue.add(new Cursor(lessons, start));
+                }
+            }
+        }
+
+        while (!queue.isEmpty() && recommended.size() < limit) {
+            Cursor cursor = queue.poll();
+            SwimmingLesson lesson = cursor.current();
+            if (lesson.getAvailableSlots() > 0 && !isAlreadyRegistered(learner, lesson)
+                    && (skippedCoach == null || !skippedCoach.equals(coachKey(lesson)))) {
+                recommended.add(lesson);
+            }
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+    }
+
+    // Helper method to get the list of a lesson's coach at its grade, creating it if asked to...
+    private List<SwimmingLesson> coachLessons(SwimmingLesson lesson, boolean create) {
+        String coach = coachKey(lesson);
+        if (!create) {
+            Map<Grade, List<SwimmingLesson>> byGrade = lessonsByCoach.get(coach);
+            return byGrade == null ? null : byGrade.get(lesson.getGrade());
+        }
+        return lessonsByCoach.computeIfAbsent(coach, name -> new EnumMap<>(Grade.class))
+                .computeIfAbsent(lesson.getGrade(), grade -> new ArrayList<>());
+    }
+
+    private static String coachKey(SwimmingLesson lesson) {
+        return lesson.getCoach() == null ? "" : lesson.getCoach().getName().toLowerCase(Locale.ROOT);
+    }
+
+    // Helper method to insert a lesson into a list sorted by start...
+    private static void insert(List<SwimmingLesson> lessons, SwimmingLesson lesson) {
+        int index = Collections.binarySearch(lessons, lesson, BY_START);
+        lessons.add(index < 0 ? -index - 1 : index, lesson);
+    }
+
+    // Helper method to remove a lesson from a list sorted by start, looking only among the lessons starting with it...
+    private static boolean delete(List<SwimmingLesson> lessons, SwimmingLesson lesson) {
+        int index = Collections.binarySearch(lessons, lesson, BY_START);
+        if (index < 0) {
+            return false;
+        }
+        while (index > 0 && BY_START.compare(lessons.get(index - 1), lesson) == 0) {
+            index--;
+        }
+        for (; index < lessons.size() && BY_START.compare(lessons.get(index), lesson) == 0; index++) {
+            if (lessons.get(index) == lesson) {
+                lessons.remove(index);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Helper method to find the first lesson strictly after the given date...
+    private int firstAfter(List<SwimmingLesson> lessons, LocalDate after) {
+        int low = 0;
+        int high = lessons.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lessons.get(mid).getDate().isAfter(after)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    // Helper method applying the same already registered rule as booking...
+    private boolean isAlreadyRegistered(Learner learner, SwimmingLesson lesson) {
+        if (learner.getBookings() == null) {
+            return false;
+        }
+        for (Booking booking : learner.getBookings()) {
+            if (booking.getLesson().getGrade().equals(lesson.getGrade())
+                    && booking.getLesson().getDate().isEqual(lesson.getDate())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Position in one grade's sorted lesson list.
+     */
+    private static class Cursor implements Comparable<Cursor> {
+        private final List<SwimmingLesson> lessons;
+        private int position;
+
+        Cursor(List<SwimmingLesson> lessons, int position) {
+            this.lessons = lessons;
+            this.position = position;
+        }
+
+        SwimmingLesson current() {
+            return lessons.get(position);
+        }
+
+        boolean advance() {
+            return ++position < lessons.size();
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            return BY_START.compare(current(), other.current());
+        }
+    }
+}
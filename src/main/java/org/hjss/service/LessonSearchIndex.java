@@ -0,0 +1,270 @@
+package org.hjss.service;
+
+import org.hjss.constants.Grade;
+import org.hjss.models.LessonChangeListener;
+import org.hjss.models.SwimmingLesson;
+import org.hjss.utils.IdentityRegistry;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bitmap index over the lessons of the timetable for multi-criteria search.
+ * There is one bitset over lesson handles per day of the week, grade, coach, time slot, date and
+ * week, and one of the lessons with free slots. A {@link LessonQuery} is answered by combining
+ * these bitsets with AND, OR and AND NOT, so counting matches never touches a lesson object.
+ * Handles are dense, so plain bitsets already stay small and need no run-length compression.
+ * The free-slots bitset follows every change of a lesson's slots through a change listener. That
+ * happens on every booking, so it only takes the shared read lock and flips its bit with a
+ * compare-and-set on the word holding it; adding and removing lessons take the write lock.
+ */
+public class LessonSearchIndex implements LessonChangeListener {
+
+    private final IdentityRegistry identityRegistry;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BitSet all = new BitSet();
+    private final AtomicBitSet freeSlots = new AtomicBitSet();
+    private final BitSet[] byDay = new BitSet[DayOfWeek.values().length];
+    private final BitSet[] byGrade = new BitSet[Grade.values().length];
+    private final Map<String, BitSet> byCoach = new HashMap<>();
+    private final Map<LocalTime, BitSet> byTime = new HashMap<>();
+    private final NavigableMap<LocalDate, BitSet> byDate = new TreeMap<>();
+    private final Map<LocalDate, BitSet> byWeek = new HashMap<>();
+
+    /**
+     * Creates an empty index resolving handles through the given registry.
+     *
+     * @param identityRegistry The registry the lessons' handles come from.
+     */
+    public LessonSearchIndex(IdentityRegistry identityRegistry) {
+        this.identityRegistry = identityRegistry;
+        for (int i = 0; i < byDay.length; i++) {
+            byDay[i] = new BitSet();
+        }
+        for (int i = 0; i < byGrade.length; i++) {
+            byGrade[i] = new BitSet();
+        }
+    }
+
+    /**
+     * Indexes a lesson and starts following its free slots.
+     *
+     * @param lesson The lesson, which must have a handle.
+     */
+    public void add(SwimmingLesson lesson) {
+        lock.writeLock().lock();
+        try {
+            int handle = lesson.getHandle();
+            all.set(handle);
+            byDay[lesson.getDate().getDayOfWeek().ordinal()].set(handle);
+            byGrade[lesson.getGrade().ordinal()].set(handle);
+            if (lesson.getCoach() != null) {
+                byCoach.computeIfAbsent(lesson.getCoach().getName(), name -> new BitSet()).set(handle);
+            }
+            byTime.computeIfAbsent(lesson.getTimeSlot(), time -> new BitSet()).set(handle);
+            byDate.computeIfAbsent(lesson.getDate(), date -> new BitSet()).set(handle);
+            byWeek.computeIfAbsent(weekOf(lesson.getDate()), week -> new BitSet()).set(handle);
+            freeSlots.ensureCapacity(handle);
+            freeSlots.set(handle, lesson.getAvailableSlots() > 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        lesson.addChangeListener(this);
+    }
+
+    /**
+     * Removes a lesson from the index.
+     *
+     * @param lesson The lesson to remove.
+     */
+    public void remove(SwimmingLesson lesson) {
+        lesson.removeChangeListener(this);
+        lock.writeLock().lock();
+        try {
+            int handle = lesson.getHandle();
+            if (handle < 0 || !all.get(handle)) {
+                return;
+            }
+            all.clear(handle);
+            freeSlots.set(handle, false);
+            byDay[lesson.getDate().getDayOfWeek().ordinal()].clear(handle);
+            byGrade[lesson.getGrade().ordinal()].clear(handle);
+            if (lesson.getCoach() != null) {
+                clear(byCoach, lesson.getCoach().getName(), handle);
+            }
+            clear(byTime, lesson.getTimeSlot(), handle);
+            clear(byDate, lesson.getDate(), handle);
+            clear(byWeek, weekOf(lesson.getDate()), handle);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void slotsChanged(SwimmingLesson lesson, int availableSlots) {
+        lock.readLock().lock();
+        try {
+            int handle = lesson.getHandle();
+            if (handle < 0 || !all.get(handle)) {
+                return;
+            }
+            // Read the slots again after each write, so notifications racing each other still leave the latest state
+            boolean free;
+            do {
+                free = lesson.getAvailableSlots() > 0;
+                freeSlots.set(handle, free);
+            } while ((lesson.getAvailableSlots() > 0) != free);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param query The query.
+     * @return The handles of the matching lessons.
+     */
+    public BitSet match(LessonQuery query) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = query.evaluate(this);
+            matches.and(all);
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the lessons matching a query without looking at the lessons themselves.
+     *
+     * @param query The query.
+     * @return The number of matching lessons.
+     */
+    public int count(LessonQuery query) {
+        return match(query).cardinality();
+    }
+
+    /**
+     * @param query The query.
+     * @return The matching lessons, ordered by date and time.
+     */
+    public List<SwimmingLesson> search(LessonQuery query) {
+        BitSet matches = match(query);
+        List<SwimmingLesson> lessons = new ArrayList<>(matches.cardinality());
+        for (int handle = matches.nextSetBit(0); handle >= 0; handle = matches.nextSetBit(handle + 1)) {
+            SwimmingLesson lesson = identityRegistry.lesson(handle);
+            if (lesson != null) {
+                lessons.add(lesson);
+            }
+        }
+        lessons.sort(Comparator.comparing(SwimmingLesson::getStart));
+        return lessons;
+    }
+
+    // Below are the bitsets the queries are evaluated on; each returns a copy the caller may change...
+    BitSet all() {
+        return (BitSet) all.clone();
+    }
+
+    BitSet freeSlots() {
+        return freeSlots.toBitSet();
+    }
+
+    BitSet day(DayOfWeek day) {
+        return (BitSet) byDay[day.ordinal()].clone();
+    }
+
+    BitSet grade(Grade grade) {
+        return (BitSet) byGrade[grade.ordinal()].clone();
+    }
+
+    BitSet coach(String coachName) {
+        return copy(byCoach.get(coachName));
+    }
+
+    BitSet time(LocalTime time) {
+        return copy(byTime.get(time));
+    }
+
+    BitSet week(LocalDate date) {
+        return copy(byWeek.get(weekOf(date)));
+    }
+
+    BitSet between(LocalDate from, LocalDate to) {
+        BitSet matches = new BitSet();
+        if (!to.isBefore(from)) {
+            for (BitSet lessons : byDate.subMap(from, true, to, true).values()) {
+                matches.or(lessons);
+            }
+        }
+        return matches;
+    }
+
+    private static BitSet copy(BitSet bitSet) {
+        return bitSet == null ? new BitSet() : (BitSet) bitSet.clone();
+    }
+
+    private static <K> void clear(Map<K, BitSet> index, K key, int handle) {
+        BitSet lessons = index.get(key);
+        if (lessons != null) {
+            lessons.clear(handle);
+            if (lessons.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static LocalDate weekOf(LocalDate date) {
+        return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    /**
+     * A bitset whose bits are set and cleared with a compare-and-set on their word. It only grows
+     * under the index's write lock, so writers holding the read lock always see the current words.
+     */
+    private static final class AtomicBitSet {
+        private volatile AtomicLongArray words = new AtomicLongArray(4);
+
+        void ensureCapacity(int bit) {
+            AtomicLongArray current = words;
+            int needed = (bit >> 6) + 1;
+            if (needed > current.length()) {
+                AtomicLongArray grown = new AtomicLongArray(Math.max(needed, current.length() * 2));
+                for (int i = 0; i < current.length(); i++) {
+                    grown.set(i, current.get(i));
+                }
+                words = grown;
+            }
+        }
+
+        void set(int bit, boolean value) {
+            AtomicLongArray current = words;
+            int index = bit >> 6;
+            if (index >= current.length()) {
+                return;
+            }
+            long mask = 1L << bit;
+            long word;
+            long updated;
+            do {
+                word = current.get(index);
+                updated = value ? word | mask : word & ~mask;
+            } while (word != updated && !current.compareAndSet(index, word, updated));
+        }
+
+        BitSet toBitSet() {
+            AtomicLongArray current = words;
+            long[] copy = new long[current.length()];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = current.get(i);
+            }
+            return BitSet.valueOf(copy);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.hjss.service;
+
+import org.hjss.models.Learner;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+
+/**
+ * Renders per-learner report rows in parallel on a fork-join pool.
+ * The learner list is split into chunks whose rows are computed concurrently, and the chunks
+ * are joined back left to right so the output keeps the learner order of the list and is
+ * identical to rendering the learners one after another.
+ */
+public class ReportPipeline {
+
+    /** Number of learners below which a chunk is rendered without splitting further. */
+    public static final int CHUNK_SIZE = 256;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a pipeline with its own fork-join pool.
+     *
+     * @param parallelism The number of worker threads.
+     */
+    public ReportPipeline(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * @return The number of worker threads of this pipeline.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Renders the rows of every learner.
+     *
+     * @param learners  The learners to report on, in output order.
+     * @param rowWriter Appends the rows of one learner to a buffer.
+     * @return The rows of all learners in list order.
+     */
+    public String render(List<Learner> learners, BiConsumer<Learner, StringBuilder> rowWriter) {
+        return pool.invoke(new ChunkTask(learners, rowWriter, 0, learners.size())).toString();
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Renders the learners in [from, to) by splitting the range in halves.
+     */
+    private static class ChunkTask extends RecursiveTask<StringBuilder> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Learner> learners;
+        private final BiConsumer<Learner, StringBuilder> rowWriter;
+        private final int from;
+        private final int to;
+
+        ChunkTask(List<Learner> learners, BiConsumer<Learner, StringBuilder> rowWriter, int from, int to) {
+            this.learners = learners;
+            this.rowWriter = rowWriter;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected StringBuilder compute() {
+            if (to - from <= CHUNK_SIZE) {
+                StringBuilder rows = new StringBuilder();
+                for (int i = from; i < to; i++) {
+                    rowWriter.accept(learners.get(i), rows);
+                }
+                return rows;
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(learners, rowWriter, from, middle);
+            ChunkTask right = new ChunkTask(learners, rowWriter, middle, to);
+            right.fork();
+            StringBuilder rows = left.compute();
+            return rows.append(right.join());
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package org.hjss.service;
+
+import org.hjss.constants.Grade;
+import org.hjss.models.Review;
+import org.hjss.models.SwimmingLesson;
+import org.hjss.utils.IdentityRegistry;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incrementally maintained rating statistics per coach, per grade and per weekday.
+ * Every review is folded into fixed-size counters when it is given, so each key uses
+ * constant memory and queries never scan the reviews themselves.
+ */
+public class ReviewAnalytics {
+
+    /** Number of most recent ratings the rolling average is taken over. */
+    public static final int WINDOW = 10;
+    /** How far the rolling average must fall below the earlier average to count as a drop. */
+    public static final double DROP_THRESHOLD = 1.0;
+
+    private final IdentityRegistry identityRegistry;
+    private RatingStats[] coachStats = new RatingStats[8];
+    private final RatingStats[] gradeStats = new RatingStats[Grade.values().length];
+    private final RatingStats[] dayStats = new RatingStats[DayOfWeek.values().length];
+
+    /**
+     * Creates an empty analytics engine.
+     *
+     * @param identityRegistry The registry used to resolve coach names to handles.
+     */
+    public ReviewAnalytics(IdentityRegistry identityRegistry) {
+        this.identityRegistry = identityRegistry;
+        for (int i = 0; i < gradeStats.length; i++) {
+            gradeStats[i] = new RatingStats(Grade.values()[i].name());
+        }
+        for (int i = 0; i < dayStats.length; i++) {
+            dayStats[i] = new RatingStats(DayOfWeek.values()[i].name());
+        }
+    }
+
+    /**
+     * Folds a review of a lesson into the statistics of its coach, grade and weekday.
+     *
+     * @param lesson The lesson reviewed.
+     * @param review The review given.
+     */
+    public void record(SwimmingLesson lesson, Review review) {
+        int rating = review.getRating().getValue();
+        statsForCoach(lesson).add(rating);
+        gradeStats[lesson.getGrade().ordinal()].add(rating);
+        dayStats[lesson.getDate().getDayOfWeek().ordinal()].add(rating);
+    }
+
+    /**
+     * Folds all reviews already attached to the given lessons into the statistics.
+     *
+     * @param lessons The lessons whose reviews to record.
+     */
+    public void recordAll(List<SwimmingLesson> lessons) {
+        for (SwimmingLesson lesson : lessons) {
+            if (lesson.getReviews() != null) {
+                for (Review review : lesson.getReviews()) {
+                    record(lesson, review);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param coachName The coach's name.
+     * @return The coach's statistics, or null if the coach has no reviews.
+     */
+    public synchronized RatingStats getCoachStats(String coachName) {
+        int handle = identityRegistry.coachHandle(coachName);
+        return handle >= 0 && handle < coachStats.length ? coachStats[handle] : null;
+    }
+
+    /**
+     * @param grade The lesson grade.
+     * @return The statistics of lessons of this grade.
+     */
+    public RatingStats getGradeStats(Grade grade) {
+        return gradeStats[grade.ordinal()];
+    }
+
+    /**
+     * @param dayOfWeek The day of the week.
+     * @return The statistics of lessons held on this day.
+     */
+    public RatingStats getDayStats(DayOfWeek dayOfWeek) {
+        return dayStats[dayOfWeek.ordinal()];
+    }
+
+    /**
+     * @return All coach, grade and weekday keys whose ratings have recently dropped.
+     */
+    public synchronized List<RatingStats> getDrops() {
+        List<RatingStats> drops = new ArrayList<>();
+        for (RatingStats stats : coachStats) {
+            if (stats != null && stats.isDropDetected()) {
+                drops.add(stats);
+            }
+        }
+        for (RatingStats stats : gradeStats) {
+            if (stats.isDropDetected()) {
+                drops.add(stats);
+            }
+        }
+        for (RatingStats stats : dayStats) {
+            if (stats.isDropDetected()) {
+                drops.add(stats);
+            }
+        }
+        return drops;
+    }
+
+    // Helper method to get or create the statistics of a lesson's coach by handle...
+    private synchronized RatingStats statsForCoach(SwimmingLesson lesson) {
+        int handle = identityRegistry.register(lesson.getCoach());
+        if (handle >= coachStats.length) {
+            coachStats = Arrays.copyOf(coachStats, Math.max(handle + 1, coachStats.length * 2));
+        }
+        if (coachStats[handle] == null) {
+            coachStats[handle] = new RatingStats(lesson.getCoach().getName());
+        }
+        return coachStats[handle];
+    }
+
+    /**
+     * Constant-size rating statistics for one key: totals, a histogram of the five rating
+     * values (which gives exact quantiles) and a ring buffer of the most recent ratings.
+     */
+    public static class RatingStats {
+        private final String key;
+        private final int[] histogram = new int[5];
+        private final int[] recent = new int[WINDOW];
+        private long count;
+        private long sum;
+        private int recentSum;
+        private boolean dropDetected;
+
+        public RatingStats(String key) {
+            this.key = key;
+        }
+
+        synchronized void add(int rating) {
+            int slot = (int) (count % WINDOW);
+            if (count >= WINDOW) {
+                recentSum -= recent[slot];
+            }
+            recent[slot] = rating;
+            recentSum += rating;
+            histogram[rating - 1]++;
+            count++;
+            sum += rating;
+
+            // Compare the recent window with everything before it once both have enough ratings
+            long earlierCount = count - WINDOW;
+            if (earlierCount >= WINDOW) {
+                double earlierAverage = (double) (sum - recentSum) / earlierCount;
+                dropDetected = getRollingAverage() <= earlierAverage - DROP_THRESHOLD;
+            }
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized double getAverage() {
+            return count > 0 ? (double) sum / count : 0;
+        }
+
+        /**
+         * @return The average of the last {@link #WINDOW} ratings.
+         */
+        public synchronized double getRollingAverage() {
+            int size = (int) Math.min(count, WINDOW);
+            return size > 0 ? (double) recentSum / size : 0;
+        }
+
+        /**
+         * @param quantile The quantile between 0 and 1, for example 0.5 for the median.
+         * @return The rating at this quantile, or 0 if there are no ratings.
+         */
+        public synchronized int getQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return i + 1;
+                }
+            }
+            return histogram.length;
+        }
+
+        /**
+         * @return true if the rolling average has fallen well below the earlier average.
+         */
+        public synchronized boolean isDropDetected() {
+            return dropDetected;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return key + " average " + getAverage() + " rolling " + getRollingAverage() + " over " + count + " reviews";
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.hjss.service;
+
+import org.hjss.models.Coach;
+import org.hjss.models.SwimmingLesson;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Validates a whole set of lessons, such as a generated term, for coaches booked on
+ * overlapping lessons. Each coach's lessons are sorted and swept independently, and the
+ * coaches are checked in parallel.
+ */
+public class ScheduleValidator {
+
+    /**
+     * Finds all pairs of overlapping lessons taught by the same coach.
+     *
+     * @param lessons The lessons to validate.
+     * @return The conflicts found, empty if the schedule is valid.
+     */
+    public List<Conflict> validate(List<SwimmingLesson> lessons) {
+        Map<Coach, List<SwimmingLesson>> lessonsByCoach = new IdentityHashMap<>();
+        for (SwimmingLesson lesson : lessons) {
+            lessonsByCoach.computeIfAbsent(lesson.getCoach(), coach -> new ArrayList<>()).add(lesson);
+        }
+
+        return lessonsByCoach.values().parallelStream()
+                .flatMap(coachLessons -> findConflicts(coachLessons).stream())
+                .collect(Collectors.toList());
+    }
+
+    // Helper method to sweep one coach's lessons in start order...
+    private List<Conflict> findConflicts(List<SwimmingLesson> coachLessons) {
+        List<SwimmingLesson> sorted = new ArrayList<>(coachLessons);
+        sorted.sort(Comparator.comparing(SwimmingLesson::getStart));
+
+        List<Conflict> conflicts = new ArrayList<>();
+        SwimmingLesson latestEnding = null;
+        for (SwimmingLesson lesson : sorted) {
+            if (latestEnding != null && latestEnding.getEnd().isAfter(lesson.getStart())) {
+                conflicts.add(new Conflict(latestEnding, lesson));
+            }
+            if (latestEnding == null || lesson.getEnd().isAfter(latestEnding.getEnd())) {
+                latestEnding = lesson;
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Two lessons of the same coach that overlap.
+     */
+    public static class Conflict {
+        private final SwimmingLesson first;
+        private final SwimmingLesson second;
+
+        public Conflict(SwimmingLesson first, SwimmingLesson second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        public SwimmingLesson getFirst() {
+            return first;
+        }
+
+        public SwimmingLesson getSecond() {
+            return second;
+        }
+
+        @Override
+        public String toString() {
+            return "Coach " + first.getCoach().getName() + " has overlapping lessons " + first.getGrade() + " at "
+                    + first.getStart() + " and " + second.getGrade() + " at " + second.getStart();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.hjss.service;
+
+import org.hjss.exception.InvalidBooking;
+import org.hjss.exception.NoSlotsAvailable;
+import org.hjss.models.SwimmingLesson;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds seats of lessons for a few minutes while a booking is confirmed.
+ * A hold takes a slot from the lesson straight away with a compare-and-set on its slot counter, so
+ * holds and bookings together can never take more slots than the lesson's capacity. Confirming
+ * a hold hands its slot over to the booking; releasing it or letting it expire gives the slot back.
+ * Holds expire through a delay queue ordered by deadline, so only holds which are due are looked at;
+ * confirmed and released holds are left in the queue and skipped when they come due.
+ */
+public class SeatInventory {
+
+    private final Duration holdTime;
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+    private final DelayQueue<Hold> expiries = new DelayQueue<>();
+    private final AtomicLong holdSequence = new AtomicLong();
+    private Thread expiryThread;
+
+    /**
+     * Creates an inventory whose holds last the given time.
+     *
+     * @param holdTime How long a hold keeps its seat before it expires.
+     */
+    public SeatInventory(Duration holdTime) {
+        this.holdTime = holdTime;
+    }
+
+    /**
+     * Holds a seat of the lesson for a learner.
+     *
+     * @param lesson    The lesson to hold a seat of.
+     * @param learnerId The ID of the learner the seat is held for.
+     * @return The ID of the hold.
+     * @throws NoSlotsAvailable If the lesson has no free slot.
+     */
+    public String reserve(SwimmingLesson lesson, String learnerId) throws NoSlotsAvailable {
+        if (!lesson.tryAcquireSlot()) {
+            throw new NoSlotsAvailable("No slots available for lesson " + lesson.getGrade() + " on " + lesson.getDate());
+        }
+        Hold hold = new Hold("H" + holdSequence.incrementAndGet(), lesson, learnerId, System.nanoTime() + holdTime.toNanos());
+        holds.put(hold.holdId, hold);
+        expiries.add(hold);
+        return hold.holdId;
+    }
+
+    /**
+     * Confirms a hold. Its seat stays taken and now belongs to the caller, who books it or releases it.
+     *
+     * @param holdId The ID of the hold.
+     * @return The confirmed hold.
+     * @throws InvalidBooking If the hold does not exist, has expired or was already confirmed or released.
+     */
+    public Hold confirm(String holdId) throws InvalidBooking {
+        Hold hold = holds.remove(holdId);
+        if (hold != null && System.nanoTime() - hold.deadline > 0) {
+            // Past its deadline but not reaped yet: give the seat back as the expiry would
+            hold.lesson.releaseSlot();
+            hold = null;
+        }
+        if (hold == null) {
+            throw new InvalidBooking("Hold " + holdId + " has expired or does not exist.");
+        }
+        return hold;
+    }
+
+    /**
+     * Releases a hold, giving its seat back.
+     *
+     * @param holdId The ID of the hold.
+     * @return true if the hold was released, false if it no longer existed.
+     */
+    public boolean release(String holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold == null) {
+            return false;
+        }
+        hold.lesson.releaseSlot();
+        return true;
+    }
+
+    /**
+     * Gives back the seats of every hold which has expired.
+     *
+     * @return The number of holds expired.
+     */
+    public int expire() {
+        int expired = 0;
+        Hold hold;
+        while ((hold = expiries.poll()) != null) {
+            if (expire(hold)) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return The number of holds currently keeping a seat.
+     */
+    public int getHoldCount() {
+        return holds.size();
+    }
+
+    /**
+     * Starts expiring holds in the background as soon as they are due. Calling it again has no effect.
+     */
+    public synchronized void start() {
+        if (expiryThread != null) {
+            return;
+        }
+        expiryThread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    expire(expiries.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "hjss-seat-holds");
+        expiryThread.setDaemon(true);
+        expiryThread.start();
+    }
+
+    /**
+     * Stops expiring holds in the background.
+     */
+    public synchronized void stop() {
+        if (expiryThread != null) {
+            expiryThread.interrupt();
+            expiryThread = null;
+        }
+    }
+
+    // Helper method to give back the seat of an expired hold unless it was confirmed or released meanwhile...
+    private boolean expire(Hold hold) {
+        if (holds.remove(hold.holdId, hold)) {
+            hold.lesson.releaseSlot();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * A seat held for a learner until its deadline.
+     */
+    public static final class Hold implements Delayed {
+        private final String holdId;
+        private final SwimmingLesson lesson;
+        private final String learnerId;
+        private final long deadline;
+
+        Hold(String holdId, SwimmingLesson lesson, String learnerId, long deadline) {
+            this.holdId = holdId;
+            this.lesson = lesson;
+            this.learnerId = learnerId;
+            this.deadline = deadline;
+        }
+
+        public String getHoldId() {
+            return holdId;
+        }
+
+        public SwimmingLesson getLesson() {
+            return lesson;
+        }
+
+        public String getLearnerId() {
+            return learnerId;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof Hold) {
+                return Long.compare(deadline, ((Hold) other).deadline);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
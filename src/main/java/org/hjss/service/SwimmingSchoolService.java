@@ -9,9 +9,12 @@ import org.hjss.models.*;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Service class providing operations related to booking, marking attendance,
@@ -19,6 +22,9 @@ import java.util.Map;
  */
 public class SwimmingSchoolService {
 
+    // Booking numbers follow the clock but never repeat, even for bookings made in the same millisecond
+    private static final AtomicLong BOOKING_SEQUENCE = new AtomicLong();
+
     /**
      * Method to book a swimming lesson for a learner.
      *
@@ -33,51 +39,68 @@ public class SwimmingSchoolService {
      */
     public String bookLesson(SwimmingLesson swimmingLessonToBook, Learner learner, Map<String, Booking> bookingMap)
             throws InvalidLesson, InvalidBooking, NoSlotsAvailable, AlreadyRegistered {
+        return bookLesson(swimmingLessonToBook, learner, bookingMap, false);
+    }
+
+    /**
+     * Method to book a swimming lesson for a learner, optionally with a slot already held for them.
+     *
+     * @param swimmingLessonToBook The swimming lesson to book.
+     * @param learner              The learner who wants to book the lesson.
+     * @param bookingMap           The map of bookings to update.
+     * @param slotHeld             Whether a slot of the lesson has already been taken for this booking.
+     * @return The ID of the booking.
+     * @throws InvalidLesson       If the lesson is invalid.
+     * @throws InvalidBooking     If the booking is invalid.
+     * @throws NoSlotsAvailable   If no slots are available for the lesson.
+     * @throws AlreadyRegistered  If the learner is already registered for the lesson.
+     */
+    public String bookLesson(SwimmingLesson swimmingLessonToBook, Learner learner, Map<String, Booking> bookingMap, boolean slotHeld)
+            throws InvalidLesson, InvalidBooking, NoSlotsAvailable, AlreadyRegistered {
             if (swimmingLessonToBook != null && learner != null) {
-                String bookingId = learner.getId() + getEpochTime(LocalDate.now());
-            if (swimmingLessonToBook.getAvailableSlots()<=0) {
+            if (!slotHeld && swimmingLessonToBook.getAvailableSlots()<=0) {
                 throw new NoSlotsAvailable("No slots available for lesson " + swimmingLessonToBook.getGrade() + " on " + swimmingLessonToBook.getDate());
             }
             // Check if the learner's current grade matches the grade of the lesson or one grade higher
-            if (learner.getCurrentGrade().getValue() <= swimmingLessonToBook.getGrade().getValue()
-                    && swimmingLessonToBook.getGrade().getValue() <= learner.getCurrentGrade().getValue() + 1 ||
-                    learner.getCurrentGrade().getValue() >= swimmingLessonToBook.getGrade().getValue()) {
-
-                // check for already registered case
-                List<Booking> leanerBookings = learner.getBookings();
-                if(leanerBookings != null) {
-                    for (Booking booking : leanerBookings) {
-                        if (booking.getLesson().getGrade().equals(swimmingLessonToBook.getGrade())
-                                && booking.getLesson().getDate().isEqual(swimmingLessonToBook.getDate())) {
-                            throw new AlreadyRegistered(
-                                    "You have already registered for the lesson with Id: " + booking.getBookingID());
+            if (isGradeEligible(learner.getCurrentGrade(), swimmingLessonToBook.getGrade())) {
+
+                // The learner's lock keeps the already registered check and the add together, so two requests
+                // of the same learner cannot both pass the check
+                synchronized (learner) {
+                    // check for already registered case
+                    List<Booking> leanerBookings = learner.getBookings();
+                    if(leanerBookings != null) {
+                        for (Booking booking : leanerBookings) {
+                            if (booking.getLesson().getGrade().equals(swimmingLessonToBook.getGrade())
+                                    && booking.getLesson().getDate().isEqual(swimmingLessonToBook.getDate())) {
+                                throw new AlreadyRegistered(
+                                        "You have already registered for the lesson with Id: " + booking.getBookingID());
+                            }
                         }
                     }
-                }
-
-                // Create a new booking
-                Booking booking = new Booking();
-                booking.setBookingID(bookingId); // Generate a unique booking ID
-                booking.setBookingDate(swimmingLessonToBook.getDate());
-                booking.setLearner(learner);
-                booking.setLesson(swimmingLessonToBook);
-                booking.setBookingStatus(BookingStatus.BOOKED.toString());
 
-                // Add the booking to the learner's bookings
-                learner.getBookings().add(booking);
+                    // Take the slot atomically, the lesson may have filled up since the check above
+                    if (!slotHeld && !swimmingLessonToBook.tryAcquireSlot()) {
+                        throw new NoSlotsAvailable("No slots available for lesson " + swimmingLessonToBook.getGrade() + " on " + swimmingLessonToBook.getDate());
+                    }
 
-                // Update the learner's current grade if they attended a higher grade lesson
-                if (swimmingLessonToBook.getGrade().getValue() == learner.getCurrentGrade().getValue() + 1) {
-                    learner.setCurrentGrade(swimmingLessonToBook.getGrade());
-                }
+                    // Create a new booking
+                    String bookingId = learner.getId() + nextBookingNumber();
+                    Booking booking = new Booking();
+                    booking.setBookingID(bookingId); // Generate a unique booking ID
+                    booking.setBookingDate(swimmingLessonToBook.getDate());
+                    booking.setLearner(learner);
+                    booking.setLesson(swimmingLessonToBook);
+                    booking.setBookingStatus(BookingStatus.BOOKED.toString());
 
-                // Update the booking in the SwimmingSchool's bookings map
-                bookingMap.put(bookingId, booking);
+                    // Add the booking to the learner's bookings
+                    learner.getBookings().add(booking);
 
-                swimmingLessonToBook.setAvailableSlots(swimmingLessonToBook.getAvailableSlots()-1);
+                    // Update the booking in the SwimmingSchool's bookings map
+                    bookingMap.put(bookingId, booking);
 
-                System.out.println("****** You have successfully registered the lesson Grade: " + swimmingLessonToBook.getGrade() + " on " + swimmingLessonToBook.getDate() + " with booking Id : " + bookingId + " ********");
-                return bookingId;
+                    return bookingId;
+                }
             } else {
                 throw new InvalidBooking("Learner cannot book this lesson. It's either too advanced or not available for their grade.");
             }
@@ -98,20 +121,58 @@ public class SwimmingSchoolService {
             throw new InvalidBooking("Invalid booking details.");
         }
 
-        if (booking.getBookingStatus().equals(BookingStatus.CANCELLED.name())) {
-            throw new InvalidBooking("Lesson is cancelled and cannot be changed");
-        }
+        Booking.State state;
+        do {
+            state = booking.getState();
+            if (state.getStatus().equals(BookingStatus.CANCELLED.name())) {
+                throw new InvalidBooking("Lesson is cancelled and cannot be changed");
+            }
 
-        if (booking.getLesson().getDate().isAfter(LocalDate.now())) {
-            throw new InvalidBooking("Cannot mark attended as the lesson has not yet started yet");
-        }
+            if (state.getLesson().getDate().isAfter(LocalDate.now())) {
+                throw new InvalidBooking("Cannot mark attended as the lesson has not yet started yet");
+            }
+        } while (!booking.compareAndSet(state, state.getLesson(), BookingStatus.ATTENDED.name()));
 
-        booking.setBookingStatus(BookingStatus.ATTENDED.name());
-        booking.getLesson().setAvailableSlots(booking.getLesson().getAvailableSlots() + 1);
+        // A no-show has already given its seat back when the lesson was closed, and an attended one has no seat left
+        if (!state.getStatus().equals(BookingStatus.NO_SHOW.name()) && !state.getStatus().equals(BookingStatus.ATTENDED.name())) {
+            state.getLesson().releaseSlot();
+        }
 
         return "Learner - " + booking.getLearner().getId() + " has attended the Lesson " + booking.getLesson().getGrade() + " on " + booking.getLesson().getDate();
     }
 
+    /**
+     * Method to close a lesson which has ended. Every booking still open is marked attended if it is on
+     * the attendance register, or as a no-show otherwise, and its seat is released.
+     *
+     * @param bookings The bookings of the lesson.
+     * @param register The IDs of the bookings whose learners were present. Applied IDs are removed.
+     * @param onClosed Told of each booking closed, after its status is set.
+     * @return The number of bookings closed.
+     */
+    public int closeLesson(Iterator<Booking> bookings, Set<String> register, Consumer<Booking> onClosed) {
+        int closed = 0;
+        while (bookings.hasNext()) {
+            Booking booking = bookings.next();
+            boolean present = register.contains(booking.getBookingID());
+            String closedStatus = present ? BookingStatus.ATTENDED.name() : BookingStatus.NO_SHOW.name();
+            while (true) {
+                Booking.State state = booking.getState();
+                if (!state.getStatus().equals(BookingStatus.BOOKED.name()) && !state.getStatus().equals(BookingStatus.CHANGED.name())) {
+                    break;
+                }
+                if (booking.compareAndSet(state, state.getLesson(), closedStatus)) {
+                    register.remove(booking.getBookingID());
+                    state.getLesson().releaseSlot();
+                    onClosed.accept(booking);
+                    closed++;
+                    break;
+                }
+            }
+        }
+        return closed;
+    }
+
     /**
      * Method to cancel a booking.
      *
@@ -126,17 +187,25 @@ public class SwimmingSchoolService {
             throw new InvalidBooking("Invalid booking details.");
         }
 
-        if (bookedLesson.getBookingStatus().equals(BookingStatus.ATTENDED.name())) {
-            throw new InvalidBooking("Invalid booking details. Booking is already attended or changed");
-        }
         if (bookedLesson.getBookingDate().isBefore(LocalDate.now())) {
             throw new InvalidDate("Lesson already attended. Cancel Rejected.");
         }
 
-        bookedLesson.setBookingStatus(BookingStatus.CANCELLED.name());
-        bookedLesson.getLesson().setAvailableSlots(bookedLesson.getLesson().getAvailableSlots() + 1);
+        // Decide on a snapshot and only write it back if nobody changed the booking meanwhile, so the seat
+        // released is the one of the lesson the booking was actually on, and it is released exactly once
+        Booking.State state;
+        do {
+            state = bookedLesson.getState();
+            if (state.getStatus().equals(BookingStatus.ATTENDED.name()) || state.getStatus().equals(BookingStatus.NO_SHOW.name())) {
+                throw new InvalidBooking("Invalid booking details. Booking is already attended or changed");
+            }
+            if (state.getStatus().equals(BookingStatus.CANCELLED.name())) {
+                throw new InvalidBooking("Booking " + bookedLesson.getBookingID() + " is already cancelled.");
+            }
+        } while (!bookedLesson.compareAndSet(state, state.getLesson(), BookingStatus.CANCELLED.name()));
+        state.getLesson().releaseSlot();
 
-        return "Your booking : " + bookedLesson.getBookingID() + " for lesson " + bookedLesson.getLesson().getGrade() + " on " + bookedLesson.getLesson().getDate() + " has been cancelled successfully.";
+        return "Your booking : " + bookedLesson.getBookingID() + " for lesson " + state.getLesson().getGrade() + " on " + state.getLesson().getDate() + " has been cancelled successfully.";
     }
 
     /**
@@ -203,46 +272,71 @@ public class SwimmingSchoolService {
      * @throws NoSlotsAvailable   If no slots are available for the lesson.
      * @throws AlreadyRegistered  If the learner is already registered for the lesson.
      * @throws InvalidDate         If the date is invalid.
+     * @throws ConcurrentChange    If the booking was changed by another request meanwhile.
      */
-    public String changeBooking(Booking booking, Learner learner, SwimmingLesson swimmingLessonToBook) throws InvalidLesson, InvalidBooking, NoSlotsAvailable, AlreadyRegistered, InvalidDate {
-
+    public String changeBooking(Booking booking, Learner learner, SwimmingLesson swimmingLessonToBook) throws InvalidLesson, InvalidBooking, NoSlotsAvailable, AlreadyRegistered, InvalidDate, ConcurrentChange {
         if (booking == null) {
             throw new InvalidBooking("Invalid booking");
         }
+        return changeBooking(booking.getState(), booking, learner, swimmingLessonToBook);
+    }
 
-        if (booking.getLesson().getDate().isBefore(LocalDate.now())) {
-            throw new InvalidDate("Learner - " + learner.getId() + " has already attended the session " + booking.getLesson().getGrade() + " on " + booking.getLesson().getDate() + ". Change not allowed");
+    /**
+     * Method to update/change a booking, provided it is still in the state it was read in.
+     *
+     * @param state                The state of the booking the change was decided on.
+     * @param booking              The booking to update/change.
+     * @param learner              The learner associated with the booking.
+     * @param swimmingLessonToBook The new swimming lesson to book.
+     * @return A message indicating the result of updating/changing the booking.
+     * @throws InvalidLesson      If the lesson is invalid.
+     * @throws InvalidBooking     If the booking is invalid.
+     * @throws NoSlotsAvailable   If no slots are available for the lesson.
+     * @throws AlreadyRegistered  If the learner is already registered for the lesson.
+     * @throws InvalidDate        If the date is invalid.
+     * @throws ConcurrentChange   If the booking is no longer in the given state.
+     */
+    public String changeBooking(Booking.State state, Booking booking, Learner learner, SwimmingLesson swimmingLessonToBook) throws InvalidLesson, InvalidBooking, NoSlotsAvailable, AlreadyRegistered, InvalidDate, ConcurrentChange {
+        if (state.getStatus().equals(BookingStatus.CANCELLED.name())) {
+            throw new InvalidBooking("Booking " + booking.getBookingID() + " is cancelled and cannot be changed.");
+        }
+        // The seat of a closed lesson has already been given back
+        if (state.getStatus().equals(BookingStatus.ATTENDED.name()) || state.getStatus().equals(BookingStatus.NO_SHOW.name())) {
+            throw new InvalidBooking("Booking " + booking.getBookingID() + " is already closed and cannot be changed.");
+        }
+        if (state.getLesson().getDate().isBefore(LocalDate.now())) {
+            throw new InvalidDate("Learner - " + learner.getId() + " has already attended the session " + state.getLesson().getGrade() + " on " + state.getLesson().getDate() + ". Change not allowed");
         }
         // Check if the learner's current grade matches the grade of the lesson or one grade higher
-        if (learner.getCurrentGrade().getValue() <= swimmingLessonToBook.getGrade().getValue()
-                && swimmingLessonToBook.getGrade().getValue() <= learner.getCurrentGrade().getValue() + 1
-        || learner.getCurrentGrade().getValue() >= swimmingLessonToBook.getGrade().getValue()) {
+        if (isGradeEligible(learner.getCurrentGrade(), swimmingLessonToBook.getGrade())) {
 
-            if (swimmingLessonToBook.getCapacity() <= 0) {
+            if (swimmingLessonToBook.getAvailableSlots() <= 0) {
                 throw new NoSlotsAvailable("No slots available for lesson " + swimmingLessonToBook.getGrade() + " on " + swimmingLessonToBook.getDate());
             }
 
-            // Check if the learner is already registered for the new lesson
-            for (Booking existingBooking : learner.getBookings()) {
-                if (existingBooking.getLesson().getGrade().equals(swimmingLessonToBook.getGrade())
-                        && existingBooking.getLesson().getDate().isEqual(swimmingLessonToBook.getDate())) {
-                    throw new AlreadyRegistered("You have already registered for the lesson with Id: " + existingBooking.getBookingID());
+            // Checked and switched under the learner's lock, as a booking is, so no other booking of the
+            // learner can land on the same grade and date in between
+            synchronized (learner) {
+                // Check if the learner is already registered for the new lesson
+                for (Booking existingBooking : learner.getBookings()) {
+                    if (existingBooking.getLesson().getGrade().equals(swimmingLessonToBook.getGrade())
+                            && existingBooking.getLesson().getDate().isEqual(swimmingLessonToBook.getDate())) {
+                        throw new AlreadyRegistered("You have already registered for the lesson with Id: " + existingBooking.getBookingID());
+                    }
                 }
-            }
-
-            // Update the previous lesson's capacity
-            booking.getLesson().setAvailableSlots(booking.getLesson().getAvailableSlots() + 1);
 
-            // Update the existing booking with the new lesson details
-            booking.setLesson(swimmingLessonToBook);
+                // Take a slot on the new lesson before giving back the one on the previous lesson
+                if (!swimmingLessonToBook.tryAcquireSlot()) {
+                    throw new NoSlotsAvailable("No slots available for lesson " + swimmingLessonToBook.getGrade() + " on " + swimmingLessonToBook.getDate());
+                }
 
-            // Update the learner's current grade if they attended a higher grade lesson
-            if (swimmingLessonToBook.getGrade().getValue() == learner.getCurrentGrade().getValue() + 1) {
-                learner.setCurrentGrade(swimmingLessonToBook.getGrade());
+                // Update the existing booking with the new lesson details, unless another request changed it first
+                if (!booking.compareAndSet(state, swimmingLessonToBook, state.getStatus())) {
+                    swimmingLessonToBook.releaseSlot();
+                    throw new ConcurrentChange("Booking " + booking.getBookingID() + " was changed by another request. Please retry.");
+                }
             }
-
-            // Update the new lesson's capacity
-            swimmingLessonToBook.setAvailableSlots(swimmingLessonToBook.getAvailableSlots() - 1);
+            state.getLesson().releaseSlot();
 
             return "Your Booking " + booking.getBookingID() + " has been successfully changed to lesson " + swimmingLessonToBook.getGrade() + " on " + swimmingLessonToBook.getDate();
 
@@ -259,18 +353,33 @@ public class SwimmingSchoolService {
      */
     public void generateDetailedLearnerReport(LocalDate startOfMonth, LocalDate endOfMonth, List<Learner> learners) {
 
+        StringBuilder rows = new StringBuilder();
         for (Learner learner : learners) {
-            for (Booking booking : learner.getBookings()) {
-                SwimmingLesson swimmingLesson = booking.getLesson();
-                Review review = booking.getReview();
-
-                // Check if the lesson falls within the specified month
-                LocalDate lessonDate = swimmingLesson.getDate();
-                if (lessonDate.isEqual(startOfMonth) || (lessonDate.isAfter(startOfMonth) && lessonDate.isBefore(endOfMonth))) {
-                    String rating = (review != null) ? review.getRating().name() : "-";
-                    printBookingDetails(learner.getId(), booking.getBookingID(), swimmingLesson.getGrade(), swimmingLesson.getDate(),
-                            swimmingLesson.getTimeSlot(), swimmingLesson.getCoach().getName(), booking.getBookingStatus(), rating);
-                }
+            appendDetailedLearnerRows(startOfMonth, endOfMonth, learner, rows);
+            System.out.print(rows);
+            rows.setLength(0);
+        }
+    }
+
+    /**
+     * Method to append the detailed report rows of one learner.
+     *
+     * @param startOfMonth The start date of the month.
+     * @param endOfMonth   The end date of the month.
+     * @param learner      The learner to report on.
+     * @param rows         The buffer the rows are appended to.
+     */
+    public void appendDetailedLearnerRows(LocalDate startOfMonth, LocalDate endOfMonth, Learner learner, StringBuilder rows) {
+        for (Booking booking : learner.getBookings()) {
+            SwimmingLesson swimmingLesson = booking.getLesson();
+            Review review = booking.getReview();
+
+            // Check if the lesson falls within the specified month
+            LocalDate lessonDate = swimmingLesson.getDate();
+            if (isInMonth(lessonDate, startOfMonth, endOfMonth)) {
+                String rating = (review != null) ? review.getRating().name() : "-";
+                appendBookingDetails(rows, learner.getId(), booking.getBookingID(), swimmingLesson.getGrade(), swimmingLesson.getDate(),
+                        swimmingLesson.getTimeSlot(), swimmingLesson.getCoach().getName(), booking.getBookingStatus(), rating);
             }
         }
     }
@@ -279,42 +388,50 @@ public class SwimmingSchoolService {
      * Method to generate a coach average ratings report.
      */
     public void generateCoachRatingsReport(List<Coach> coaches, List<SwimmingLesson> timetable) {
+        generateCoachRatingsReport(coaches, timetable, null);
+    }
 
-        Map<String, List<Review>> coachReviewsMap = new HashMap<>(); // Map to store reviews for each coach
+    /**
+     * Method to generate a coach average ratings report including archived ratings.
+     *
+     * @param coaches         The coaches to report on.
+     * @param timetable       The live lessons.
+     * @param archivedRatings The archived rating total and count per coach name, or null.
+     */
+    public void generateCoachRatingsReport(List<Coach> coaches, List<SwimmingLesson> timetable, Map<String, double[]> archivedRatings) {
 
-        // Initialize the map with empty lists for each coach
+        // Totals are kept in arrays indexed by the coach's handle
+        int size = 0;
         for (Coach coach : coaches) {
-            coachReviewsMap.put(coach.getName(), new ArrayList<>());
+            size = Math.max(size, coach.getHandle() + 1);
         }
+        double[] totalRatings = new double[size];
+        int[] numRatings = new int[size];
 
         // Collect reviews for each coach
         for (SwimmingLesson swimmingLesson : timetable) {
-            List<Review> reviews = swimmingLesson.getReviews();
-            for (Review review : reviews) {
-                List<Review> coachReviews = coachReviewsMap.get(swimmingLesson.getCoach().getName());
-                coachReviews.add(review);
+            int handle = swimmingLesson.getCoach().getHandle();
+            if (handle < 0 || handle >= size) {
+                continue;
+            }
+            for (Review review : swimmingLesson.getReviews()) {
+                totalRatings[handle] += review.getRating().getValue();
+                numRatings[handle]++;
             }
         }
 
         // Calculate and display average ratings for each coach
-        for (Map.Entry<String, List<Review>> entry : coachReviewsMap.entrySet()) {
-            String coachName = entry.getKey();
-            List<Review> reviews = entry.getValue();
-
-            double totalRating = 0;
-            int numRatings = 0;
-
-            // Calculate total rating and count number of ratings
-            for (Review review : reviews) {
-                totalRating += review.getRating().getValue();
-                numRatings++;
+        for (Coach coach : coaches) {
+            int handle = coach.getHandle();
+            double totalRating = handle >= 0 ? totalRatings[handle] : 0;
+            double numRating = handle >= 0 ? numRatings[handle] : 0;
+            double[] archived = archivedRatings != null ? archivedRatings.get(coach.getName()) : null;
+            if (archived != null) {
+                totalRating += archived[0];
+                numRating += archived[1];
             }
-
-            // Calculate average rating
-            double avgRating = numRatings > 0 ? totalRating / numRatings : 0;
-
-            // Display coach name and average rating
-            System.out.println(coachName + "\t\t" + avgRating);
+            double avgRating = numRating > 0 ? totalRating / numRating : 0;
+            System.out.println(coach.getName() + "\t\t" + avgRating);
         }
 
     }
@@ -327,49 +444,116 @@ public class SwimmingSchoolService {
      */
     public void generateMonthlySummaryOfBookings(LocalDate startOfMonth, LocalDate endOfMonth, List<Learner> learners) {
 
+        StringBuilder row = new StringBuilder();
         for (Learner learner : learners) {
-            String learnerName = learner.getName();
-            String learnerId = learner.getId();
-            String currentGrade = learner.getCurrentGrade().name();
-            int booked = 0, cancelled = 0, attended = 0, changed = 0;
-
-            for (Booking booking : learner.getBookings()) {
-                SwimmingLesson swimmingLesson = booking.getLesson();
-                LocalDate lessonDate = swimmingLesson.getDate();
-
-                // Check if the lesson falls within the specified month
-                if ((lessonDate.isEqual(startOfMonth) || lessonDate.isAfter(startOfMonth)) && lessonDate.isBefore(endOfMonth)) {
-                    switch (booking.getBookingStatus()) {
-                        case "BOOKED":
-                            booked++;
-                            break;
-                        case "CANCELLED":
-                            cancelled++;
-                            break;
-                        case "ATTENDED":
-                            attended++;
-                            break;
-                        case "CHANGED":
-                            changed++;
-                            break;
-                    }
+            appendMonthlySummaryRow(startOfMonth, endOfMonth, learner, row);
+            System.out.print(row);
+            row.setLength(0);
+        }
+    }
+
+    /**
+     * Method to append the monthly summary row of one learner.
+     *
+     * @param startOfMonth The start date of the month.
+     * @param endOfMonth   The end date of the month.
+     * @param learner      The learner to summarise.
+     * @param row          The buffer the row is appended to.
+     */
+    public void appendMonthlySummaryRow(LocalDate startOfMonth, LocalDate endOfMonth, Learner learner, StringBuilder row) {
+        appendMonthlySummaryRow(startOfMonth, endOfMonth, learner, null, row);
+    }
+
+    /**
+     * Method to append the monthly summary row of one learner, adding the counts of archived bookings.
+     *
+     * @param startOfMonth   The start date of the month.
+     * @param endOfMonth     The end date of the month.
+     * @param learner        The learner to summarise.
+     * @param archivedCounts The archived booked, changed, cancelled, attended and no-show counts, or null.
+     * @param row            The buffer the row is appended to.
+     */
+    public void appendMonthlySummaryRow(LocalDate startOfMonth, LocalDate endOfMonth, Learner learner, int[] archivedCounts, StringBuilder row) {
+        String learnerName = learner.getName();
+        String learnerId = learner.getId();
+        String currentGrade = learner.getCurrentGrade().name();
+        int booked = 0, cancelled = 0, attended = 0, changed = 0, noShow = 0;
+        if (archivedCounts != null) {
+            booked = archivedCounts[0];
+            changed = archivedCounts[1];
+            cancelled = archivedCounts[2];
+            attended = archivedCounts[3];
+            noShow = archivedCounts[4];
+        }
+
+        for (Booking booking : learner.getBookings()) {
+            SwimmingLesson swimmingLesson = booking.getLesson();
+            LocalDate lessonDate = swimmingLesson.getDate();
+
+            // Check if the lesson falls within the specified month
+            if (isInMonth(lessonDate, startOfMonth, endOfMonth)) {
+                switch (booking.getBookingStatus()) {
+                    case "BOOKED":
+                        booked++;
+                        break;
+                    case "CANCELLED":
+                        cancelled++;
+                        break;
+                    case "ATTENDED":
+                        attended++;
+                        break;
+                    case "CHANGED":
+                        changed++;
+                        break;
+                    case "NO_SHOW":
+                        noShow++;
+                        break;
                 }
             }
-
-            System.out.printf("%-10s | %-24s | %-13s | %-6s | %-8s | %-9s | %-8s%n",
-                    learnerId, learnerName, currentGrade, booked, changed, cancelled, attended);
         }
+
+        row.append(String.format("%-10s | %-24s | %-13s | %-6s | %-8s | %-9s | %-8s | %-7s%n",
+                learnerId, learnerName, currentGrade, booked, changed, cancelled, attended, noShow));
+    }
+
+    /**
+     * Checks whether a learner of the given grade may book a lesson of the given grade,
+     * i.e. a lesson at their own grade, one grade higher, or any lower grade.
+     *
+     * @param learnerGrade The learner's current grade.
+     * @param lessonGrade  The grade of the lesson.
+     * @return true if the lesson can be booked by the learner.
+     */
+    public static boolean isGradeEligible(Grade learnerGrade, Grade lessonGrade) {
+        return GradeProgression.isEligible(learnerGrade, lessonGrade);
     }
 
-    // Helper method to print booking details...
-    private void printBookingDetails(String learnerId, String bookingId, Grade grade, LocalDate lessonDate,
+    /**
+     * Method to append one row of the detailed learner report.
+     *
+     * @param rows          The buffer the row is appended to.
+     * @param learnerId     The ID of the learner.
+     * @param bookingId     The ID of the booking.
+     * @param grade         The grade of the lesson.
+     * @param lessonDate    The date of the lesson.
+     * @param time          The time of the lesson.
+     * @param coach         The coach's name.
+     * @param bookingStatus The status of the booking.
+     * @param review        The rating given, or "-".
+     */
+    public void appendBookingDetails(StringBuilder rows, String learnerId, String bookingId, Grade grade, LocalDate lessonDate,
                                      LocalTime time, String coach, String bookingStatus, String review) {
-        System.out.printf("%-10s | %-9s | %-5s | %-13s | %-8s | %-9s | %-14s | %-6s%n",
-                learnerId, bookingId, grade, lessonDate, time, coach, bookingStatus, review);
+        rows.append(String.format("%-10s | %-9s | %-5s | %-13s | %-8s | %-9s | %-14s | %-6s%n",
+                learnerId, bookingId, grade, lessonDate, time, coach, bookingStatus, review));
+    }
+
+    // Helper method to check a lesson date lies in the month, both of its first and last day included as the archive does...
+    private static boolean isInMonth(LocalDate lessonDate, LocalDate startOfMonth, LocalDate endOfMonth) {
+        return !lessonDate.isBefore(startOfMonth) && !lessonDate.isAfter(endOfMonth);
     }
 
-    // Helper method to get epoch time...
-    private Long getEpochTime(LocalDate date) {
-        return System.currentTimeMillis();
+    // Helper method to get the next booking number, the current time unless that was already handed out...
+    private static long nextBookingNumber() {
+        return BOOKING_SEQUENCE.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
     }
 }
@@ -0,0 +1,146 @@
+package org.hjss.service;
+
+import org.hjss.models.Page;
+import org.hjss.models.SwimmingLesson;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Lessons sorted by date, time and handle in a concurrent skip list.
+ * Pages and iterators start from a cursor with one O(log n) seek and then walk the map lazily,
+ * so the cost of a page depends on its size, not on the size of the timetable.
+ * A cursor has the form {@code 2024-03-18T16:00#12}, the start and handle of the last lesson seen.
+ */
+public class TimetableIndex {
+
+    private final ConcurrentSkipListMap<LessonKey, SwimmingLesson> lessons = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param lesson The lesson to add.
+     */
+    public void add(SwimmingLesson lesson) {
+        lessons.put(LessonKey.of(lesson), lesson);
+    }
+
+    /**
+     * @param lesson The lesson to remove.
+     */
+    public void remove(SwimmingLesson lesson) {
+        lessons.remove(LessonKey.of(lesson), lesson);
+    }
+
+    public int size() {
+        return lessons.size();
+    }
+
+    /**
+     * Finds the first lesson at the given date and time.
+     *
+     * @param time The time of the lesson.
+     * @param date The date of the lesson.
+     * @return The lesson, or null if there is none.
+     */
+    public SwimmingLesson find(LocalTime time, LocalDate date) {
+        Map.Entry<LessonKey, SwimmingLesson> entry = lessons.ceilingEntry(new LessonKey(date, time, Integer.MIN_VALUE));
+        if (entry != null && entry.getKey().date.equals(date) && entry.getKey().time.equals(time)) {
+            return entry.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Lazily iterates the lessons after the cursor, in date and time order.
+     *
+     * @param afterCursor The cursor to start after, or null to start at the first lesson.
+     * @return An iterator over the lessons.
+     */
+    public Iterator<SwimmingLesson> iterator(String afterCursor) {
+        return tail(afterCursor).values().iterator();
+    }
+
+    /**
+     * Returns up to {@code limit} lessons after the cursor.
+     *
+     * @param afterCursor The cursor to start after, or null to start at the first lesson.
+     * @param limit       The maximum number of lessons.
+     * @return The page of lessons.
+     */
+    public Page<SwimmingLesson> page(String afterCursor, int limit) {
+        List<SwimmingLesson> items = new ArrayList<>(Math.max(0, Math.min(limit, 256)));
+        Iterator<SwimmingLesson> iterator = iterator(afterCursor);
+        while (items.size() < limit && iterator.hasNext()) {
+            items.add(iterator.next());
+        }
+        String nextCursor = iterator.hasNext() && !items.isEmpty() ? cursorOf(items.get(items.size() - 1)) : null;
+        return new Page<>(items, nextCursor);
+    }
+
+    /**
+     * @param lesson A lesson.
+     * @return The cursor pointing just after this lesson.
+     */
+    public static String cursorOf(SwimmingLesson lesson) {
+        return lesson.getDate() + "T" + lesson.getTimeSlot() + "#" + lesson.getHandle();
+    }
+
+    // Helper method to get the part of the map after a cursor...
+    private ConcurrentNavigableMap<LessonKey, SwimmingLesson> tail(String afterCursor) {
+        if (afterCursor == null) {
+            return lessons;
+        }
+        return lessons.tailMap(LessonKey.parse(afterCursor), false);
+    }
+
+    /**
+     * Sort key of a lesson: date, time, then handle to keep lessons at the same time apart.
+     */
+    private static final class LessonKey implements Comparable<LessonKey> {
+        private final LocalDate date;
+        private final LocalTime time;
+        private final int handle;
+
+        LessonKey(LocalDate date, LocalTime time, int handle) {
+            this.date = date;
+            this.time = time;
+            this.handle = handle;
+        }
+
+        static LessonKey of(SwimmingLesson lesson) {
+            return new LessonKey(lesson.getDate(), lesson.getTimeSlot(), lesson.getHandle());
+        }
+
+        static LessonKey parse(String cursor) {
+            try {
+                int t = cursor.indexOf('T');
+                int h = cursor.indexOf('#');
+                return new LessonKey(LocalDate.parse(cursor.substring(0, t)), LocalTime.parse(cursor.substring(t + 1, h)),
+                        Integer.parseInt(cursor.substring(h + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid timetable cursor: " + cursor, e);
+            }
+        }
+
+        @Override
+        public int compareTo(LessonKey other) {
+            int compare = date.compareTo(other.date);
+            if (compare == 0) {
+                compare = time.compareTo(other.time);
+            }
+            return compare != 0 ? compare : Integer.compare(handle, other.handle);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof LessonKey && compareTo((LessonKey) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(date, time, handle);
+        }
+    }
+}
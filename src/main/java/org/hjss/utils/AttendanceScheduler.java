@@ -0,0 +1,215 @@
+package org.hjss.utils;
+
+import org.hjss.models.SwimmingLesson;
+import org.hjss.models.SwimmingSchool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes lessons when they end: every booking still open on the lesson is marked attended if it is on
+ * the imported attendance register, or as a no-show otherwise, and its seat is released.
+ * Lesson end times are kept on a hashed timing wheel with one-minute ticks, so scheduling a lesson and
+ * expiring it are constant time however many lessons are waiting; a lesson more than one turn of the
+ * wheel away simply waits for the remaining number of rounds in its bucket.
+ */
+public class AttendanceScheduler {
+
+    static final int WHEEL_SIZE = 4096;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final SwimmingSchool swimmingSchool;
+    private final Entry[] wheel = new Entry[WHEEL_SIZE];
+    private final Set<String> register = ConcurrentHashMap.newKeySet();
+    private long currentTick = Long.MIN_VALUE;
+    private int pending;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a scheduler closing the lessons of the given school.
+     *
+     * @param swimmingSchool The swimming school whose lessons are closed.
+     */
+    public AttendanceScheduler(SwimmingSchool swimmingSchool) {
+        this.swimmingSchool = swimmingSchool;
+    }
+
+    /**
+     * Schedules a lesson to be closed at its end. Lessons which have already ended are closed on the
+     * next advance.
+     *
+     * @param lesson The lesson to schedule.
+     */
+    public synchronized void schedule(SwimmingLesson lesson) {
+        long tick = tickOf(lesson.getEnd());
+        int bucket;
+        long rounds = 0;
+        if (currentTick == Long.MIN_VALUE) {
+            // Rounds are worked out on the first advance, once the current tick is known
+            bucket = (int) (tick & MASK);
+        } else if (tick <= currentTick) {
+            bucket = (int) ((currentTick + 1) & MASK);
+        } else {
+            bucket = (int) (tick & MASK);
+            rounds = (tick - currentTick - 1) / WHEEL_SIZE;
+        }
+        wheel[bucket] = new Entry(lesson.getHandle(), tick, rounds, wheel[bucket]);
+        pending++;
+    }
+
+    /**
+     * Records that the learner of a booking was present. It is applied when the lesson is closed.
+     *
+     * @param bookingId The ID of the booking.
+     */
+    public void recordPresent(String bookingId) {
+        register.add(bookingId);
+    }
+
+    /**
+     * Imports an attendance register, one booking ID per line. Blank lines and a {@code bookingId}
+     * header are skipped.
+     *
+     * @param inputStream The register to read. It is closed when the import is done.
+     * @return The number of booking IDs imported.
+     * @throws IOException If the register cannot be read.
+     */
+    public int importRegister(InputStream inputStream) throws IOException {
+        int imported = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.equalsIgnoreCase("bookingId")) {
+                    register.add(line);
+                    imported++;
+                }
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * Turns the wheel up to the given time and closes every lesson which has ended by then.
+     * The first call only closes lessons which ended in the current minute or before.
+     *
+     * @param now The current time.
+     * @return The number of lessons closed.
+     */
+    public int advanceTo(LocalDateTime now) {
+        List<Entry> due = new ArrayList<>();
+        synchronized (this) {
+            long target = tickOf(now);
+            if (currentTick == Long.MIN_VALUE || target - currentTick >= WHEEL_SIZE) {
+                // The first advance and jumps of more than one turn sweep every bucket by deadline
+                for (int bucket = 0; bucket < WHEEL_SIZE; bucket++) {
+                    wheel[bucket] = expire(wheel[bucket], target, true, due);
+                }
+            } else {
+                for (long tick = currentTick + 1; tick <= target; tick++) {
+                    int bucket = (int) (tick & MASK);
+                    wheel[bucket] = expire(wheel[bucket], target, false, due);
+                }
+            }
+            currentTick = Math.max(currentTick, target);
+            pending -= due.size();
+        }
+        int closed = 0;
+        for (Entry entry : due) {
+            SwimmingLesson lesson = swimmingSchool.getIdentityRegistry().lesson(entry.lessonHandle);
+            // Archived and discarded lessons have released their handle, which a later lesson may have
+            // taken; that lesson has an entry of its own, due when it ends
+            if (lesson != null && tickOf(lesson.getEnd()) == entry.deadlineTick) {
+                swimmingSchool.closeLesson(lesson, register);
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * @return The number of lessons waiting to be closed.
+     */
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    /**
+     * Starts closing lessons in the background once a minute. Calling it again has no effect.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hjss-attendance-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> advanceTo(LocalDateTime.now()), 0, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops closing lessons in the background.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    // Helper method to unlink the due entries of one bucket, counting down the rounds of the others...
+    private static Entry expire(Entry head, long target, boolean byDeadline, List<Entry> due) {
+        Entry kept = null;
+        Entry entry = head;
+        while (entry != null) {
+            Entry next = entry.next;
+            boolean expired = byDeadline ? entry.deadlineTick <= target : entry.rounds-- <= 0;
+            if (expired) {
+                due.add(entry);
+            } else {
+                if (byDeadline) {
+                    entry.rounds = (entry.deadlineTick - target - 1) / WHEEL_SIZE;
+                }
+                entry.next = kept;
+                kept = entry;
+            }
+            entry = next;
+        }
+        return kept;
+    }
+
+    private static long tickOf(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    /**
+     * A lesson waiting in a bucket of the wheel.
+     */
+    private static final class Entry {
+        private final int lessonHandle;
+        private final long deadlineTick;
+        private long rounds;
+        private Entry next;
+
+        Entry(int lessonHandle, long deadlineTick, long rounds, Entry next) {
+            this.lessonHandle = lessonHandle;
+            this.deadlineTick = deadlineTick;
+            this.rounds = rounds;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.hjss.utils;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams tables back out of a file written by {@link ColumnarFileWriter}.
+ * Only the current row group of the current table is held in memory.
+ */
+public class ColumnarFileReader implements Closeable {
+
+    private final DataInputStream in;
+    private TableReader openTable;
+    private boolean endOfFile;
+
+    /**
+     * Opens a columnar file on the given stream.
+     *
+     * @param inputStream The stream to read from. It is closed with this reader.
+     * @throws IOException If the stream is not a columnar file.
+     */
+    public ColumnarFileReader(InputStream inputStream) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream, 1 << 16), 1 << 16));
+        if (in.readInt() != ColumnarFileWriter.MAGIC) {
+            throw new IOException("Not an HJSS columnar file");
+        }
+        int version = in.readInt();
+        if (version != ColumnarFileWriter.VERSION) {
+            throw new IOException("Unsupported columnar file version " + version);
+        }
+    }
+
+    /**
+     * Moves to the next table, skipping whatever is left of the current one.
+     *
+     * @return The next table, or null at the end of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public TableReader nextTable() throws IOException {
+        if (openTable != null) {
+            while (openTable.next()) {
+                // skip the rest of the table
+            }
+        }
+        if (endOfFile) {
+            return null;
+        }
+        String name = in.readUTF();
+        if (name.isEmpty()) {
+            endOfFile = true;
+            return null;
+        }
+        int columnCount = in.readInt();
+        String[] names = new String[columnCount];
+        byte[] types = new byte[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = in.readUTF();
+            types[i] = in.readByte();
+        }
+        openTable = new TableReader(name, names, types);
+        return openTable;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Iterates the rows of one table a row group at a time.
+     */
+    public class TableReader {
+        private final String name;
+        private final String[] columnNames;
+        private final byte[] types;
+        private final String[][] strings;
+        private final int[][] ints;
+        private final long[][] longs;
+        private int rows;
+        private int row = -1;
+        private boolean finished;
+
+        TableReader(String name, String[] columnNames, byte[] types) {
+            this.name = name;
+            this.columnNames = columnNames;
+            this.types = types;
+            this.strings = new String[types.length][];
+            this.ints = new int[types.length][];
+            this.longs = new long[types.length][];
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param columnName The name of a column.
+         * @return The index of the column, or -1 if the table has no such column.
+         */
+        public int columnIndex(String columnName) {
+            for (int i = 0; i < columnNames.length; i++) {
+                if (columnNames[i].equals(columnName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Moves to the next row, reading the next row group when needed.
+         *
+         * @return false once all rows of the table have been read.
+         * @throws IOException If the file cannot be read.
+         */
+        public boolean next() throws IOException {
+            if (finished) {
+                return false;
+            }
+            if (++row < rows) {
+                return true;
+            }
+            rows = in.readInt();
+            if (rows == 0) {
+                finished = true;
+                return false;
+            }
+            readRowGroup();
+            row = 0;
+            return true;
+        }
+
+        public String getString(int column) {
+            return strings[column][row];
+        }
+
+        public int getInt(int column) {
+            return ints[column][row];
+        }
+
+        public long getLong(int column) {
+            return longs[column][row];
+        }
+
+        // Helper method to load one row group column by column...
+        private void readRowGroup() throws IOException {
+            for (int c = 0; c < types.length; c++) {
+                switch (types[c]) {
+                    case ColumnarFileWriter.STRING:
+                        String[] dictionary = new String[in.readInt()];
+                        for (int i = 0; i < dictionary.length; i++) {
+                            dictionary[i] = in.readUTF();
+                        }
+                        strings[c] = ensure(strings[c]);
+                        for (int r = 0; r < rows; r++) {
+                            int code = in.readInt();
+                            strings[c][r] = code < 0 ? null : dictionary[code];
+                        }
+                        break;
+                    case ColumnarFileWriter.INT:
+                        if (ints[c] == null || ints[c].length < rows) {
+                            ints[c] = new int[rows];
+                        }
+                        for (int r = 0; r < rows; r++) {
+                            ints[c][r] = in.readInt();
+                        }
+                        break;
+                    case ColumnarFileWriter.LONG:
+                        if (longs[c] == null || longs[c].length < rows) {
+                            longs[c] = new long[rows];
+                        }
+                        for (int r = 0; r < rows; r++) {
+                            longs[c][r] = in.readLong();
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unknown column type " + types[c] + " in table " + name);
+                }
+            }
+        }
+
+        private String[] ensure(String[] column) {
+            return column == null || column.length < rows ? new String[rows] : column;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.hjss.utils;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes tables into a gzip-compressed columnar file.
+ * Rows are buffered into row groups of {@link #ROW_GROUP_SIZE} rows; each full group is written
+ * column by column, with strings dictionary encoded, so memory stays bounded by one row group
+ * per table however many rows are written. Files are read back with {@link ColumnarFileReader}.
+ */
+public class ColumnarFileWriter implements Closeable {
+
+    static final int MAGIC = 0x484A5353;
+    static final int VERSION = 1;
+    static final byte STRING = 0;
+    static final byte INT = 1;
+    static final byte LONG = 2;
+
+    /** Number of rows buffered per table before they are written out. */
+    public static final int ROW_GROUP_SIZE = 8192;
+
+    private final DataOutputStream out;
+    private TableWriter openTable;
+
+    /**
+     * Starts a columnar file on the given stream.
+     *
+     * @param outputStream The stream to write to. It is closed with this writer.
+     * @throws IOException If the header cannot be written.
+     */
+    public ColumnarFileWriter(OutputStream outputStream) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(outputStream, 1 << 16), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Starts a new table. The previous table, if any, is finished first.
+     *
+     * @param name    The name of the table.
+     * @param columns The columns of the table.
+     * @return A writer for the rows of the table.
+     * @throws IOException If the table header cannot be written.
+     */
+    public TableWriter startTable(String name, Column... columns) throws IOException {
+        if (openTable != null) {
+            openTable.finish();
+        }
+        out.writeUTF(name);
+        out.writeInt(columns.length);
+        for (Column column : columns) {
+            out.writeUTF(column.name);
+            out.writeByte(column.type);
+        }
+        openTable = new TableWriter(columns);
+        return openTable;
+    }
+
+    /**
+     * Finishes the last table and closes the file.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (openTable != null) {
+            openTable.finish();
+        }
+        out.writeUTF("");
+        out.close();
+    }
+
+    /**
+     * @param name The column name.
+     * @return A string column, which may hold nulls.
+     */
+    public static Column stringColumn(String name) {
+        return new Column(name, STRING);
+    }
+
+    /**
+     * @param name The column name.
+     * @return An int column.
+     */
+    public static Column intColumn(String name) {
+        return new Column(name, INT);
+    }
+
+    /**
+     * @param name The column name.
+     * @return A long column.
+     */
+    public static Column longColumn(String name) {
+        return new Column(name, LONG);
+    }
+
+    /**
+     * Name and type of a column.
+     */
+    public static class Column {
+        final String name;
+        final byte type;
+
+        Column(String name, byte type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Buffers the rows of one table and writes them out a row group at a time.
+     * Values of a row are set with the typed setters and committed with {@link #endRow()}.
+     */
+    public class TableWriter {
+        private final Column[] columns;
+        private final String[][] strings;
+        private final int[][] ints;
+        private final long[][] longs;
+        private int rows;
+        private boolean finished;
+
+        TableWriter(Column[] columns) {
+            this.columns = columns;
+            this.strings = new String[columns.length][];
+            this.ints = new int[columns.length][];
+            this.longs = new long[columns.length][];
+            for (int i = 0; i < columns.length; i++) {
+                switch (columns[i].type) {
+                    case STRING:
+                        strings[i] = new String[ROW_GROUP_SIZE];
+                        break;
+                    case INT:
+                        ints[i] = new int[ROW_GROUP_SIZE];
+                        break;
+                    default:
+                        longs[i] = new long[ROW_GROUP_SIZE];
+                        break;
+                }
+            }
+        }
+
+        public TableWriter set(int column, String value) {
+            strings[column][rows] = value;
+            return this;
+        }
+
+        public TableWriter set(int column, int value) {
+            ints[column][rows] = value;
+            return this;
+        }
+
+        public TableWriter set(int column, long value) {
+            longs[column][rows] = value;
+            return this;
+        }
+
+        /**
+         * Commits the current row, writing the row group out when it is full.
+         *
+         * @throws IOException If the row group cannot be written.
+         */
+        public void endRow() throws IOException {
+            if (++rows == ROW_GROUP_SIZE) {
+                writeRowGroup();
+            }
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (rows > 0) {
+                writeRowGroup();
+            }
+            out.writeInt(0);
+            finished = true;
+            openTable = null;
+        }
+
+        // Helper method to write the buffered rows column by column...
+        private void writeRowGroup() throws IOException {
+            out.writeInt(rows);
+            for (int c = 0; c < columns.length; c++) {
+                switch (columns[c].type) {
+                    case STRING:
+                        writeStrings(strings[c]);
+                        break;
+                    case INT:
+                        for (int r = 0; r < rows; r++) {
+                            out.writeInt(ints[c][r]);
+                        }
+                        break;
+                    default:
+                        for (int r = 0; r < rows; r++) {
+                            out.writeLong(longs[c][r]);
+                        }
+                        break;
+                }
+            }
+            for (String[] column : strings) {
+                if (column != null) {
+                    Arrays.fill(column, 0, rows, null);
+                }
+            }
+            rows = 0;
+        }
+
+        // Helper method to write a string column as a dictionary followed by codes, -1 for null...
+        private void writeStrings(String[] values) throws IOException {
+            Map<String, Integer> dictionary = new HashMap<>();
+            int[] codes = new int[rows];
+            for (int r = 0; r < rows; r++) {
+                codes[r] = values[r] == null ? -1 : dictionary.computeIfAbsent(values[r], v -> dictionary.size());
+            }
+            String[] entries = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                entries[entry.getValue()] = entry.getKey();
+            }
+            out.writeInt(entries.length);
+            for (String entry : entries) {
+                out.writeUTF(entry);
+            }
+            for (int code : codes) {
+                out.writeInt(code);
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package org.hjss.utils;
+
+import org.hjss.constants.LogLevel;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured event logger which never makes the caller wait for the disk.
+ * Events go into a ring buffer of preallocated slots: a caller claims the next sequence number
+ * with one compare-and-set, fills the slot and publishes it, taking no lock. One background thread
+ * reads the slots in sequence order, formats each event as a line of key=value fields and writes it
+ * to a file rotated by size. When the writer falls a whole buffer behind, new events are dropped and
+ * counted rather than blocking the caller. An idle writer parks until a caller publishes an event and
+ * wakes it; a caller only pays for the wake-up when the writer is actually asleep.
+ */
+public class EventLogger {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    private final Path file;
+    private final LogLevel minLevel;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long written;
+    private volatile boolean writerParked;
+    private BufferedWriter writer;
+    private long fileBytes;
+    private volatile Thread writerThread;
+
+    /**
+     * Creates a logger writing to a file, rotated to file.1, file.2, ... once it reaches the size limit.
+     *
+     * @param file         The file to write to.
+     * @param minLevel     The lowest level logged.
+     * @param bufferSize   The number of events the buffer holds, rounded up to a power of two.
+     * @param maxFileBytes The size at which the file is rotated.
+     * @param maxFiles     The number of rotated files kept.
+     */
+    public EventLogger(Path file, LogLevel minLevel, int bufferSize, long maxFileBytes, int maxFiles) {
+        this.file = file;
+        this.minLevel = minLevel;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(i - capacity);
+        }
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return A logger which logs nothing.
+     */
+    public static EventLogger disabled() {
+        return new EventLogger(null, LogLevel.OFF, 2, 0, 0);
+    }
+
+    /**
+     * @param level A level.
+     * @return Whether events of that level are logged.
+     */
+    public boolean isEnabled(LogLevel level) {
+        return level != LogLevel.OFF && level.compareTo(minLevel) >= 0;
+    }
+
+    /**
+     * Logs an event.
+     *
+     * @param level  The level of the event.
+     * @param event  The name of the event, for example booking.requested.
+     * @param fields Alternating field names and values.
+     */
+    public void log(LogLevel level, String event, Object... fields) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - written >= slots.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) (sequence & mask)];
+        slot.timestamp = System.currentTimeMillis();
+        slot.level = level;
+        slot.event = event;
+        slot.fields = fields;
+        slot.thread = Thread.currentThread().getName();
+        slot.published = sequence;
+        if (writerParked) {
+            Thread writer = writerThread;
+            if (writer != null) {
+                LockSupport.unpark(writer);
+            }
+        }
+    }
+
+    public void info(String event, Object... fields) {
+        log(LogLevel.INFO, event, fields);
+    }
+
+    public void warn(String event, Object... fields) {
+        log(LogLevel.WARN, event, fields);
+    }
+
+    /**
+     * Starts writing events in the background. Calling it again has no effect.
+     */
+    public synchronized void start() {
+        if (writerThread != null || !isEnabled(LogLevel.ERROR)) {
+            return;
+        }
+        writerThread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (drain() == 0) {
+                    // Announce the park before checking again, so a caller publishing meanwhile either
+                    // is seen here or sees the flag and unparks
+                    writerParked = true;
+                    if (slots[(int) (written & mask)].published != written) {
+                        LockSupport.park(this);
+                    }
+                    writerParked = false;
+                }
+            }
+            drain();
+            closeWriter();
+        }, "hjss-event-log");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stops the background writer after it has written the events already logged.
+     */
+    public synchronized void stop() {
+        if (writerThread != null) {
+            writerThread.interrupt();
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writerThread = null;
+        }
+    }
+
+    /**
+     * Waits until every event logged so far has been written.
+     *
+     * @param timeoutMillis How long to wait at most.
+     * @return true if everything was written in time.
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = claimed.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (written < target) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of events dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of events written to the file.
+     */
+    public long getWrittenCount() {
+        return written;
+    }
+
+    // Helper method for the writer thread to write every published event in sequence order...
+    private int drain() {
+        int count = 0;
+        StringBuilder line = new StringBuilder(128);
+        long next = written;
+        while (true) {
+            Slot slot = slots[(int) (next & mask)];
+            if (slot.published != next) {
+                break;
+            }
+            line.setLength(0);
+            format(slot, line);
+            slot.fields = null;
+            write(line);
+            // Free the slot only after it has been read
+            written = ++next;
+            count++;
+        }
+        if (count > 0 && writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                System.err.println("Could not write event log " + file + ": " + e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    private static void format(Slot slot, StringBuilder line) {
+        line.append(TIMESTAMP.format(Instant.ofEpochMilli(slot.timestamp)))
+                .append(' ').append(slot.level)
+                .append(' ').append(slot.event)
+                .append(" thread=").append(slot.thread);
+        Object[] fields = slot.fields;
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            line.append(' ').append(fields[i]).append('=');
+            String value = String.valueOf(fields[i + 1]);
+            if (value.indexOf(' ') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+                line.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+            } else {
+                line.append(value);
+            }
+        }
+        line.append(System.lineSeparator());
+    }
+
+    // Helper method to append a line to the file, rotating it first when it is full...
+    private void write(CharSequence line) {
+        try {
+            if (writer == null || fileBytes + line.length() > maxFileBytes) {
+                rotate();
+            }
+            writer.append(line);
+            fileBytes += line.length();
+        } catch (IOException e) {
+            System.err.println("Could not write event log " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void rotate() throws IOException {
+        boolean rotate = writer != null || Files.exists(file) && Files.size(file) > 0 && Files.size(file) >= maxFileBytes;
+        closeWriter();
+        if (rotate && maxFiles > 0) {
+            Files.deleteIfExists(rotated(maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                if (Files.exists(rotated(i))) {
+                    Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (Files.exists(file)) {
+                Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                rotate ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND);
+        fileBytes = Files.size(file);
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Could not close event log " + file + ": " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * One preallocated event of the ring buffer. It is ready to read once published holds its sequence.
+     */
+    private static final class Slot {
+        private long timestamp;
+        private LogLevel level;
+        private String event;
+        private Object[] fields;
+        private String thread;
+        private volatile long published;
+
+        Slot(long published) {
+            this.published = published;
+        }
+    }
+}
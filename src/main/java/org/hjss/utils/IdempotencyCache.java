@@ -0,0 +1,141 @@
+package org.hjss.utils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers the result of operations by a client-supplied idempotency key, so a retried request
+ * gets the original result back in one map lookup instead of running again.
+ * A retry arriving while the original is still running waits for it. Only successful results are
+ * kept: an operation which throws is forgotten, so it can be retried, and the retries which waited
+ * for it get the same exception. Results are kept for a fixed time and at most a fixed number of
+ * keys are kept, the oldest being evicted first.
+ */
+public class IdempotencyCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries The number of keys kept at most.
+     * @param ttl        How long a result is kept.
+     */
+    public IdempotencyCache(int maxEntries, Duration ttl) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one entry: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Runs an operation once per key and returns its result to every call with the same key.
+     *
+     * @param key       The idempotency key, or null to always run the operation.
+     * @param operation The operation, which throws when it fails.
+     * @param <E>       The exception the operation throws when it fails.
+     * @return The result of the first successful call with this key.
+     * @throws E If the operation failed, or the call with this key it waited for failed.
+     */
+    public <E extends Exception> String execute(String key, Operation<E> operation) throws E {
+        if (key == null) {
+            return operation.run();
+        }
+        while (true) {
+            long now = System.nanoTime();
+            Entry existing = entries.get(key);
+            if (existing != null && existing.expiresAt - now > 0) {
+                try {
+                    return existing.result.join();
+                } catch (CompletionException e) {
+                    throw IdempotencyCache.<E>failure(e.getCause());
+                }
+            }
+            Entry entry = new Entry(key, now + ttlNanos);
+            boolean claimed = existing == null ? entries.putIfAbsent(key, entry) == null : entries.replace(key, existing, entry);
+            if (!claimed) {
+                continue;
+            }
+            String result;
+            try {
+                result = operation.run();
+            } catch (Exception | Error e) {
+                // A failure is not remembered; the entry only joins the eviction order once it succeeded
+                entries.remove(key, entry);
+                entry.result.completeExceptionally(e);
+                throw e;
+            }
+            entry.result.complete(result);
+            insertionOrder.add(entry);
+            size.incrementAndGet();
+            evict(now);
+            return result;
+        }
+    }
+
+    /**
+     * @return The number of keys currently kept.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    // Helper method to drop expired entries and the oldest entries over the size limit from the head of the queue...
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null
+                && (size.get() > maxEntries || oldest.expiresAt - now <= 0 || entries.get(oldest.key) != oldest)) {
+            if (insertionOrder.remove(oldest)) {
+                size.decrementAndGet();
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    // Helper method to throw the failure of the call a retry waited for, which ran the same operation...
+    @SuppressWarnings("unchecked")
+    private static <E extends Exception> E failure(Throwable cause) {
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return (E) cause;
+    }
+
+    /**
+     * An operation run under an idempotency key.
+     *
+     * @param <E> The exception it throws when it fails.
+     */
+    @FunctionalInterface
+    public interface Operation<E extends Exception> {
+        String run() throws E;
+    }
+
+    /**
+     * The result of one key, possibly still being computed.
+     */
+    private static final class Entry {
+        private final String key;
+        private final long expiresAt;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        Entry(String key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
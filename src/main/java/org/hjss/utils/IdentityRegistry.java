@@ -0,0 +1,200 @@
+package org.hjss.utils;
+
+import org.hjss.models.Coach;
+import org.hjss.models.Learner;
+import org.hjss.models.SwimmingLesson;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense integer handles to learners, coaches and lessons.
+ * Objects are looked up by handle through plain arrays, so indexes elsewhere can be arrays
+ * or bitsets keyed by handle. String IDs are only resolved once, at the edge of the API.
+ * Registration is synchronized; lookups by handle read a volatile array and lookups by learner ID
+ * a concurrent map, so neither locks.
+ * The rolling timetable creates lessons for as long as the school runs, so the handles of released
+ * lessons are kept on a free list and handed out again. The handle space, and with it every index
+ * keyed by lesson handle, stays bounded by the most lessons live at once rather than growing with
+ * every lesson ever created. A lesson is only released once it has left every such index.
+ */
+public class IdentityRegistry {
+
+    private volatile Learner[] learners = new Learner[64];
+    private volatile Coach[] coaches = new Coach[8];
+    private volatile SwimmingLesson[] lessons = new SwimmingLesson[256];
+    private int learnerCount;
+    private int coachCount;
+    private int lessonCount;
+    private int[] freeLessons = new int[16];
+    private int freeLessonCount;
+    private final Map<String, Integer> learnerHandles = new ConcurrentHashMap<>();
+    private final Map<String, Integer> coachHandles = new HashMap<>();
+
+    /**
+     * Registers a learner, assigning the next free handle. Registering twice keeps the handle.
+     *
+     * @param learner The learner to register.
+     * @return The learner's handle.
+     * @throws IllegalArgumentException If the learner has no ID, or another learner already has the same ID.
+     */
+    public synchronized int register(Learner learner) {
+        int handle = learner.getHandle();
+        if (handle >= 0 && handle < learnerCount && learners[handle] == learner) {
+            return handle;
+        }
+        if (learner.getId() == null || learnerHandles.containsKey(learner.getId())) {
+            throw new IllegalArgumentException(learner.getId() == null ? "Learner has no ID" : "Learner ID already registered: " + learner.getId());
+        }
+        if (learnerCount == learners.length) {
+            learners = Arrays.copyOf(learners, learnerCount * 2);
+        }
+        handle = learnerCount++;
+        learners[handle] = learner;
+        learner.setHandle(handle);
+        learnerHandles.put(learner.getId(), handle);
+        return handle;
+    }
+
+    /**
+     * Registers a coach, assigning the next free handle. Registering twice keeps the handle.
+     *
+     * @param coach The coach to register.
+     * @return The coach's handle.
+     */
+    public synchronized int register(Coach coach) {
+        int handle = coach.getHandle();
+        if (handle >= 0 && handle < coachCount && coaches[handle] == coach) {
+            return handle;
+        }
+        if (coachCount == coaches.length) {
+            coaches = Arrays.copyOf(coaches, coachCount * 2);
+        }
+        handle = coachCount++;
+        coaches[handle] = coach;
+        coach.setHandle(handle);
+        coachHandles.put(coach.getName(), handle);
+        return handle;
+    }
+
+    /**
+     * Registers a lesson, reusing a released handle if there is one. Registering twice keeps the handle.
+     *
+     * @param lesson The lesson to register.
+     * @return The lesson's handle.
+     */
+    public synchronized int register(SwimmingLesson lesson) {
+        int handle = lesson.getHandle();
+        if (handle >= 0 && handle < lessonCount && lessons[handle] == lesson) {
+            return handle;
+        }
+        if (freeLessonCount > 0) {
+            handle = freeLessons[--freeLessonCount];
+        } else {
+            if (lessonCount == lessons.length) {
+                lessons = Arrays.copyOf(lessons, lessonCount * 2);
+            }
+            handle = lessonCount++;
+        }
+        lessons[handle] = lesson;
+        lesson.setHandle(handle);
+        if (lesson.getCoach() != null) {
+            register(lesson.getCoach());
+        }
+        return handle;
+    }
+
+    /**
+     * Releases a lesson that is no longer live and has been removed from every index keyed by its
+     * handle. The handle goes on the free list for the next lesson registered, and the lesson is
+     * left without a handle, so it can no longer be mistaken for the lesson reusing it.
+     *
+     * @param lesson The lesson to release.
+     */
+    public synchronized void release(SwimmingLesson lesson) {
+        int handle = lesson.getHandle();
+        if (handle >= 0 && handle < lessonCount && lessons[handle] == lesson) {
+            lessons[handle] = null;
+            lesson.setHandle(-1);
+            if (freeLessonCount == freeLessons.length) {
+                freeLessons = Arrays.copyOf(freeLessons, freeLessonCount * 2);
+            }
+            freeLessons[freeLessonCount++] = handle;
+        }
+    }
+
+    /**
+     * @param handle The learner's handle.
+     * @return The learner, or null if the handle is unknown.
+     */
+    public Learner learner(int handle) {
+        Learner[] snapshot = learners;
+        return handle >= 0 && handle < snapshot.length ? snapshot[handle] : null;
+    }
+
+    /**
+     * @param handle The coach's handle.
+     * @return The coach, or null if the handle is unknown.
+     */
+    public Coach coach(int handle) {
+        Coach[] snapshot = coaches;
+        return handle >= 0 && handle < snapshot.length ? snapshot[handle] : null;
+    }
+
+    /**
+     * @param handle The lesson's handle.
+     * @return The lesson, or null if the handle is unknown.
+     */
+    public SwimmingLesson lesson(int handle) {
+        SwimmingLesson[] snapshot = lessons;
+        return handle >= 0 && handle < snapshot.length ? snapshot[handle] : null;
+    }
+
+    /**
+     * Resolves a learner ID to its handle.
+     *
+     * @param learnerId The ID of the learner.
+     * @return The handle, or -1 if no learner has this ID.
+     */
+    public int learnerHandle(String learnerId) {
+        Integer handle = learnerId == null ? null : learnerHandles.get(learnerId);
+        return handle == null ? -1 : handle;
+    }
+
+    /**
+     * Resolves a coach's name to its handle.
+     *
+     * @param coachName The name of the coach.
+     * @return The handle, or -1 if no coach has this name.
+     */
+    public synchronized int coachHandle(String coachName) {
+        Integer handle = coachHandles.get(coachName);
+        return handle == null ? -1 : handle;
+    }
+
+    public synchronized int getLearnerCount() {
+        return learnerCount;
+    }
+
+    /**
+     * @return The learners registered so far, in order of registration.
+     */
+    public synchronized List<Learner> learners() {
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(learners, learnerCount)));
+    }
+
+    public synchronized int getCoachCount() {
+        return coachCount;
+    }
+
+    /**
+     * @return The number of lesson handles handed out and not released.
+     */
+    public synchronized int getLessonCount() {
+        return lessonCount - freeLessonCount;
+    }
+}
@@ -0,0 +1,219 @@
+package org.hjss.utils;
+
+import org.hjss.models.SwimmingSchool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Registers learners in bulk from a CSV file with the columns name, gender, age, emergency contact
+ * and grade, after a header line. Fields may be quoted with double quotes.
+ * A file is read as a stream, a batch of rows at a time, so only one batch is held in memory however
+ * large the file. The rows of a batch are validated and registered in parallel; every learner gets
+ * the next ID of the school's sequence, so the IDs are unique but not in the order of the rows. Rows
+ * which fail validation, including rows with a quote left open, are reported with their line number
+ * and do not stop the others.
+ */
+public class LearnerCsvImporter {
+
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * Validates and registers every learner of a CSV file.
+     *
+     * @param swimmingSchool The school to register the learners in.
+     * @param csvFile        The CSV file.
+     * @return The IDs given to the learners and the rows rejected.
+     * @throws IOException If the file cannot be read.
+     */
+    public Result importLearners(SwimmingSchool swimmingSchool, Path csvFile) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            return importLearners(swimmingSchool, reader);
+        }
+    }
+
+    /**
+     * Validates and registers every learner of a CSV stream, reading it a batch of rows at a time.
+     *
+     * @param swimmingSchool The school to register the learners in.
+     * @param reader         The CSV stream, starting with the header.
+     * @return The IDs given to the learners and the rows rejected.
+     * @throws IOException If the stream cannot be read.
+     */
+    public Result importLearners(SwimmingSchool swimmingSchool, BufferedReader reader) throws IOException {
+        List<String> imported = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        int firstLineNumber = 2;
+        if (reader.readLine() == null) {
+            return new Result(imported, errors);
+        }
+        String line;
+        while ((line = reader.readLine()) != null) {
+            batch.add(line);
+            if (batch.size() == BATCH_SIZE) {
+                registerBatch(swimmingSchool, batch, firstLineNumber, imported, errors);
+                firstLineNumber += batch.size();
+                batch.clear();
+            }
+        }
+        registerBatch(swimmingSchool, batch, firstLineNumber, imported, errors);
+        return new Result(imported, errors);
+    }
+
+    /**
+     * Validates and registers the learners of the lines of a CSV file.
+     *
+     * @param swimmingSchool The school to register the learners in.
+     * @param lines          The lines, starting with the header.
+     * @return The IDs given to the learners and the rows rejected.
+     */
+    public Result importLearners(SwimmingSchool swimmingSchool, List<String> lines) {
+        List<String> imported = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        if (lines.size() > 1) {
+            registerBatch(swimmingSchool, lines.subList(1, lines.size()), 2, imported, errors);
+        }
+        return new Result(imported, errors);
+    }
+
+    // Helper method to register the rows of a batch in parallel, collecting the outcomes in row order...
+    private static void registerBatch(SwimmingSchool swimmingSchool, List<String> rows, int firstLineNumber,
+                                      List<String> imported, List<String> errors) {
+        List<Outcome> outcomes = IntStream.range(0, rows.size())
+                .parallel()
+                .filter(index -> !rows.get(index).trim().isEmpty())
+                .mapToObj(index -> register(swimmingSchool, firstLineNumber + index, rows.get(index)))
+                .collect(Collectors.toList());
+
+        for (Outcome outcome : outcomes) {
+            if (outcome.error != null) {
+                errors.add(outcome.error);
+            } else {
+                imported.add(outcome.learnerId);
+            }
+        }
+    }
+
+    // Helper method to validate one row and register its learner, returning the ID or the error...
+    private static Outcome register(SwimmingSchool swimmingSchool, int lineNumber, String line) {
+        List<String> fields = split(line);
+        if (fields == null) {
+            return Outcome.rejected(lineNumber, "quoted field is not closed");
+        }
+        if (fields.size() != 5) {
+            return Outcome.rejected(lineNumber, "expected 5 fields but found " + fields.size());
+        }
+        String name = fields.get(0).trim();
+        String gender = fields.get(1).trim();
+        String contact = fields.get(3).trim();
+        if (name.isEmpty()) {
+            return Outcome.rejected(lineNumber, "name is missing");
+        }
+        if (!gender.equalsIgnoreCase("male") && !gender.equalsIgnoreCase("female")) {
+            return Outcome.rejected(lineNumber, "invalid gender " + gender);
+        }
+        int age;
+        int grade;
+        try {
+            age = Integer.parseInt(fields.get(2).trim());
+            grade = Integer.parseInt(fields.get(4).trim());
+        } catch (NumberFormatException e) {
+            return Outcome.rejected(lineNumber, "age and grade must be numbers");
+        }
+        if (age < 4 || age > 11) {
+            return Outcome.rejected(lineNumber, "age must be between 4 and 11");
+        }
+        if (grade < 1 || grade > 5) {
+            return Outcome.rejected(lineNumber, "grade must be between 1 and 5");
+        }
+        if (contact.isEmpty()) {
+            return Outcome.rejected(lineNumber, "emergency contact is missing");
+        }
+        return new Outcome(swimmingSchool.addLearner(name, gender, age, contact, grade), null);
+    }
+
+    // Helper method to split a CSV line on commas outside double quotes, or return null if a quote is left open...
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * The ID given to the learner of one row, or why the row was rejected.
+     */
+    private static final class Outcome {
+        private final String learnerId;
+        private final String error;
+
+        Outcome(String learnerId, String error) {
+            this.learnerId = learnerId;
+            this.error = error;
+        }
+
+        static Outcome rejected(int lineNumber, String reason) {
+            return new Outcome(null, "Line " + lineNumber + ": " + reason);
+        }
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static class Result {
+        private final List<String> importedIds;
+        private final List<String> errors;
+
+        Result(List<String> importedIds, List<String> errors) {
+            this.importedIds = Collections.unmodifiableList(importedIds);
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * @return The IDs of the learners registered, in the order of their rows.
+         */
+        public List<String> getImportedIds() {
+            return importedIds;
+        }
+
+        /**
+         * @return One message per rejected row, with its line number, in the order of the rows.
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+}
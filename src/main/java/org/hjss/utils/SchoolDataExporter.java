@@ -0,0 +1,167 @@
+package org.hjss.utils;
+
+import org.hjss.models.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hjss.utils.ColumnarFileWriter.*;
+
+/**
+ * Exports the coaches, lessons, learners, bookings and reviews of a swimming school into a
+ * columnar file, one table each. Lessons are referenced by their handle, dates are written as
+ * epoch days and times as seconds of the day. Cancelled lessons which are off the timetable but
+ * still have bookings on them go in a table of their own, so those bookings keep their lesson.
+ */
+public class SchoolDataExporter {
+
+    public static final String COACHES = "coaches";
+    public static final String LESSONS = "lessons";
+    public static final String CANCELLED_LESSONS = "cancelledLessons";
+    public static final String LEARNERS = "learners";
+    public static final String BOOKINGS = "bookings";
+    public static final String REVIEWS = "reviews";
+
+    /**
+     * Writes all data of the school to the given stream.
+     *
+     * @param swimmingSchool The swimming school to export.
+     * @param outputStream   The stream to write to. It is closed when the export is done.
+     * @throws IOException If the data cannot be written.
+     */
+    public void export(SwimmingSchool swimmingSchool, OutputStream outputStream) throws IOException {
+        try (ColumnarFileWriter writer = new ColumnarFileWriter(outputStream)) {
+            writeCoaches(writer, swimmingSchool.getCoaches());
+            writeLessons(writer, swimmingSchool.getTimetable());
+            writeLessons(writer, CANCELLED_LESSONS, offTimetable(swimmingSchool));
+            writeLearners(writer, swimmingSchool.getLearners());
+            writeBookings(writer, swimmingSchool.getBookings());
+            writeReviews(writer, swimmingSchool.getTimetable(), swimmingSchool.getBookings());
+        }
+    }
+
+    /**
+     * Writes the lessons table for the given lessons.
+     *
+     * @param writer  The file to write to.
+     * @param lessons The lessons to write.
+     * @throws IOException If the data cannot be written.
+     */
+    public void writeLessons(ColumnarFileWriter writer, List<SwimmingLesson> lessons) throws IOException {
+        writeLessons(writer, LESSONS, lessons);
+    }
+
+    // Helper method to find the lessons bookings are on which are no longer on the timetable...
+    private static List<SwimmingLesson> offTimetable(SwimmingSchool swimmingSchool) {
+        Set<SwimmingLesson> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        seen.addAll(swimmingSchool.getTimetable());
+        List<SwimmingLesson> lessons = new ArrayList<>();
+        for (Booking booking : swimmingSchool.getBookings().values()) {
+            if (seen.add(booking.getLesson())) {
+                lessons.add(booking.getLesson());
+            }
+        }
+        return lessons;
+    }
+
+    private void writeLessons(ColumnarFileWriter writer, String tableName, List<SwimmingLesson> lessons) throws IOException {
+        ColumnarFileWriter.TableWriter table = writer.startTable(tableName, intColumn("handle"), intColumn("grade"),
+                longColumn("date"), intColumn("time"), stringColumn("coach"), intColumn("capacity"), intColumn("availableSlots"));
+        for (SwimmingLesson lesson : lessons) {
+            table.set(0, lesson.getHandle())
+                    .set(1, (int) lesson.getGrade().getValue())
+                    .set(2, lesson.getDate().toEpochDay())
+                    .set(3, lesson.getTimeSlot().toSecondOfDay())
+                    .set(4, lesson.getCoach().getName())
+                    .set(5, lesson.getCapacity())
+                    .set(6, lesson.getAvailableSlots())
+                    .endRow();
+        }
+    }
+
+    /**
+     * Writes the bookings table for the given bookings.
+     *
+     * @param writer   The file to write to.
+     * @param bookings The bookings to write, keyed by booking ID.
+     * @throws IOException If the data cannot be written.
+     */
+    public void writeBookings(ColumnarFileWriter writer, Map<String, Booking> bookings) throws IOException {
+        ColumnarFileWriter.TableWriter table = writer.startTable(BOOKINGS, stringColumn("bookingId"),
+                longColumn("bookingDate"), stringColumn("learnerId"), intColumn("lesson"), stringColumn("status"));
+        for (Booking booking : bookings.values()) {
+            table.set(0, booking.getBookingID())
+                    .set(1, booking.getBookingDate().toEpochDay())
+                    .set(2, booking.getLearner().getId())
+                    .set(3, booking.getLesson().getHandle())
+                    .set(4, booking.getBookingStatus())
+                    .endRow();
+        }
+    }
+
+    /**
+     * Writes the reviews table for the reviews of the given lessons.
+     *
+     * @param writer   The file to write to.
+     * @param lessons  The lessons whose reviews to write.
+     * @param bookings The bookings, used to link each review to the booking it was given for.
+     * @throws IOException If the data cannot be written.
+     */
+    public void writeReviews(ColumnarFileWriter writer, List<SwimmingLesson> lessons, Map<String, Booking> bookings) throws IOException {
+        Map<Review, String> reviewBookings = new IdentityHashMap<>();
+        for (Booking booking : bookings.values()) {
+            if (booking.getReview() != null) {
+                reviewBookings.put(booking.getReview(), booking.getBookingID());
+            }
+        }
+
+        ColumnarFileWriter.TableWriter table = writer.startTable(REVIEWS, intColumn("lesson"), stringColumn("bookingId"),
+                intColumn("rating"), stringColumn("learnerId"), intColumn("lessonType"), longColumn("lessonDate"),
+                longColumn("reviewDate"), stringColumn("description"));
+        for (SwimmingLesson lesson : lessons) {
+            if (lesson.getReviews() == null) {
+                continue;
+            }
+            for (Review review : lesson.getReviews()) {
+                table.set(0, lesson.getHandle())
+                        .set(1, reviewBookings.get(review))
+                        .set(2, review.getRating().getValue())
+                        .set(3, review.getLearnerId())
+                        .set(4, review.getLessonType())
+                        .set(5, review.getLessonDate().toEpochDay())
+                        .set(6, review.getReviewDate().toEpochDay())
+                        .set(7, review.getDescription())
+                        .endRow();
+            }
+        }
+    }
+
+    // Helper method to write the coaches table...
+    private void writeCoaches(ColumnarFileWriter writer, List<Coach> coaches) throws IOException {
+        ColumnarFileWriter.TableWriter table = writer.startTable(COACHES, stringColumn("name"));
+        for (Coach coach : coaches) {
+            table.set(0, coach.getName()).endRow();
+        }
+    }
+
+    // Helper method to write the learners table...
+    private void writeLearners(ColumnarFileWriter writer, List<Learner> learners) throws IOException {
+        ColumnarFileWriter.TableWriter table = writer.startTable(LEARNERS, stringColumn("id"), stringColumn("name"),
+                stringColumn("gender"), intColumn("age"), stringColumn("emergencyContact"), intColumn("grade"));
+        for (Learner learner : learners) {
+            table.set(0, learner.getId())
+                    .set(1, learner.getName())
+                    .set(2, learner.getGender().getValue())
+                    .set(3, learner.getAge())
+                    .set(4, learner.getEmergencyContact())
+                    .set(5, (int) learner.getCurrentGrade().getValue())
+                    .endRow();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.hjss.utils;
+
+import org.hjss.constants.Gender;
+import org.hjss.constants.Grade;
+import org.hjss.constants.Rating;
+import org.hjss.exception.ScheduleConflict;
+import org.hjss.models.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk loads a file written by {@link SchoolDataExporter} into a swimming school.
+ * Rows are turned straight into model objects and linked together, without going through the
+ * booking checks, and lessons are added to the timetable one row group at a time.
+ */
+public class SchoolDataImporter {
+
+    /**
+     * Loads every table of the file into the school.
+     *
+     * @param swimmingSchool The swimming school to load into, normally created without default data.
+     * @param inputStream    The stream to read from. It is closed when the import is done.
+     * @throws IOException If the file cannot be read or references unknown data.
+     */
+    public void importInto(SwimmingSchool swimmingSchool, InputStream inputStream) throws IOException {
+        Map<Integer, SwimmingLesson> lessonsByHandle = new HashMap<>();
+        try (ColumnarFileReader reader = new ColumnarFileReader(inputStream)) {
+            ColumnarFileReader.TableReader table;
+            while ((table = reader.nextTable()) != null) {
+                switch (table.getName()) {
+                    case SchoolDataExporter.COACHES:
+                        readCoaches(swimmingSchool, table);
+                        break;
+                    case SchoolDataExporter.LESSONS:
+                        readLessons(swimmingSchool, table, lessonsByHandle);
+                        break;
+                    case SchoolDataExporter.CANCELLED_LESSONS:
+                        readCancelledLessons(swimmingSchool, table, lessonsByHandle);
+                        break;
+                    case SchoolDataExporter.LEARNERS:
+                        readLearners(swimmingSchool, table);
+                        break;
+                    case SchoolDataExporter.BOOKINGS:
+                        readBookings(swimmingSchool, table, lessonsByHandle);
+                        break;
+                    case SchoolDataExporter.REVIEWS:
+                        readReviews(swimmingSchool, table, lessonsByHandle);
+                        break;
+                    default:
+                        // Tables from newer versions are skipped
+                        break;
+                }
+            }
+        }
+    }
+
+    // Helper method to load the coaches table...
+    private void readCoaches(SwimmingSchool swimmingSchool, ColumnarFileReader.TableReader table) throws IOException {
+        while (table.next()) {
+            swimmingSchool.addCoach(new Coach(table.getString(0), new ArrayList<>()));
+        }
+    }
+
+    // Helper method to load the lessons table, scheduling each lesson with its coach...
+    private void readLessons(SwimmingSchool swimmingSchool, ColumnarFileReader.TableReader table,
+                             Map<Integer, SwimmingLesson> lessonsByHandle) throws IOException {
+        IdentityRegistry identityRegistry = swimmingSchool.getIdentityRegistry();
+        List<SwimmingLesson> batch = new ArrayList<>();
+        while (table.next()) {
+            Coach coach = identityRegistry.coach(identityRegistry.coachHandle(table.getString(4)));
+            if (coach == null) {
+                throw new IOException("Unknown coach " + table.getString(4));
+            }
+            SwimmingLesson lesson = lesson(table, coach);
+            try {
+                coach.scheduleLesson(lesson);
+            } catch (ScheduleConflict e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            lessonsByHandle.put(table.getInt(0), lesson);
+            batch.add(lesson);
+            if (batch.size() == ColumnarFileWriter.ROW_GROUP_SIZE) {
+                swimmingSchool.addLessons(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        swimmingSchool.addLessons(batch);
+    }
+
+    // Helper method to load the cancelled lessons bookings are still on, registered but kept off the timetable...
+    private void readCancelledLessons(SwimmingSchool swimmingSchool, ColumnarFileReader.TableReader table,
+                                      Map<Integer, SwimmingLesson> lessonsByHandle) throws IOException {
+        IdentityRegistry identityRegistry = swimmingSchool.getIdentityRegistry();
+        while (table.next()) {
+            Coach coach = identityRegistry.coach(identityRegistry.coachHandle(table.getString(4)));
+            if (coach == null) {
+                throw new IOException("Unknown coach " + table.getString(4));
+            }
+            SwimmingLesson lesson = lesson(table, coach);
+            lesson.setCancelled(true);
+            identityRegistry.register(lesson);
+            lessonsByHandle.put(table.getInt(0), lesson);
+        }
+    }
+
+    private static SwimmingLesson lesson(ColumnarFileReader.TableReader table, Coach coach) throws IOException {
+        return new SwimmingLesson(Grade.valueOfGrade(table.getInt(1)),
+                LocalDate.ofEpochDay(table.getLong(2)), LocalTime.ofSecondOfDay(table.getInt(3)), coach,
+                new ArrayList<>(), table.getInt(5), new ArrayList<>(), table.getInt(6));
+    }
+
+    // Helper method to load the learners table...
+    private void readLearners(SwimmingSchool swimmingSchool, ColumnarFileReader.TableReader table) throws IOException {
+        while (table.next()) {
+            swimmingSchool.addLearner(new Learner(table.getString(0), table.getString(1),
+                    Gender.valueOfGenderString(table.getString(2)), table.getInt(3), table.getString(4),
+                    Grade.valueOfGrade(table.getInt(5)), new ArrayList<>()));
+        }
+    }
+
+    // Helper method to load the bookings table, linking each booking to its learner and lesson...
+    private void readBookings(SwimmingSchool swimmingSchool, ColumnarFileReader.TableReader table,
+                              Map<Integer, SwimmingLesson> lessonsByHandle) throws IOException {
+        while (table.next()) {
+            Learner learner = swimmingSchool.getLearnerByLearnerId(table.getString(2));
+            SwimmingLesson lesson = lessonsByHandle.get(table.getInt(3));
+            if (learner == null || lesson == null) {
+                throw new IOException("Booking " + table.getString(0) + " references an unknown learner or lesson");
+            }
+            Booking booking = new Booking(table.getString(0), LocalDate.ofEpochDay(table.getLong(1)), learner, lesson,
+                    table.getString(4), null);
+            swimmingSchool.addBooking(booking);
+        }
+    }
+
+    // Helper method to load the reviews table, attaching each review to its lesson and booking...
+    private void readReviews(SwimmingSchool swimmingSchool, ColumnarFileReader.TableReader table,
+                             Map<Integer, SwimmingLesson> lessonsByHandle) throws IOException {
+        while (table.next()) {
+            SwimmingLesson lesson = lessonsByHandle.get(table.getInt(0));
+            if (lesson == null) {
+                throw new IOException("Review references an unknown lesson");
+            }
+            Review review = new Review(Rating.valueOfRating(table.getInt(2)), table.getString(3), table.getInt(4),
+                    LocalDate.ofEpochDay(table.getLong(5)), LocalDate.ofEpochDay(table.getLong(6)), table.getString(7));
+            lesson.getReviews().add(review);
+            String bookingId = table.getString(1);
+            if (bookingId != null) {
+                Booking booking = swimmingSchool.getBookingById(bookingId);
+                if (booking != null) {
+                    booking.setReview(review);
+                }
+            }
+            swimmingSchool.getReviewAnalytics().record(lesson, review);
+        }
+    }
+}
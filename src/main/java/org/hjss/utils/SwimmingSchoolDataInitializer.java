@@ -4,6 +4,7 @@ import org.hjss.constants.BookingStatus;
 import org.hjss.constants.Gender;
 import org.hjss.constants.Grade;
 import org.hjss.constants.Rating;
+import org.hjss.exception.ScheduleConflict;
 import org.hjss.models.*;
 
 import java.time.DayOfWeek;
@@ -30,7 +31,8 @@ public class SwimmingSchoolDataInitializer {
     }
 
     /**
-     * Generates the swimming lesson timetable for a specified number of weeks.
+     * Generates the past week's lessons and the recurrence rules for the swimming lesson
+     * timetable, materializing them for a specified number of weeks.
      *
      * @param swimmingSchool The swimming school instance.
      * @param numWeeks       The number of weeks to generate timetable for.
@@ -42,10 +44,10 @@ public class SwimmingSchoolDataInitializer {
         Coach c3 = new Coach("Helen", null);
         Coach c4 = new Coach("Alice", null);
 
-        swimmingSchool.getCoaches().add(c1);
-        swimmingSchool.getCoaches().add(c2);
-        swimmingSchool.getCoaches().add(c3);
-        swimmingSchool.getCoaches().add(c4);
+        swimmingSchool.addCoach(c1);
+        swimmingSchool.addCoach(c2);
+        swimmingSchool.addCoach(c3);
+        swimmingSchool.addCoach(c4);
 
         LocalDate currentDate = LocalDate.now();
 
@@ -55,37 +57,42 @@ public class SwimmingSchoolDataInitializer {
         LocalDate previousSaturday = currentDate.with(TemporalAdjusters.previous(DayOfWeek.SATURDAY));
 
 
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_1, previousMonday, LocalTime.of(16, 0), c1, new ArrayList<>(), 4, new ArrayList<>(), 4));
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_2, previousMonday, LocalTime.of(17, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_3, previousMonday, LocalTime.of(18, 0), c3, new ArrayList<>(), 4, new ArrayList<>(), 4));
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_1, previousWednesday, LocalTime.of(16, 0), c1, new ArrayList<>(), 4, new ArrayList<>(), 4));
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_2, previousWednesday, LocalTime.of(17, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_3, previousWednesday, LocalTime.of(18, 0), c3, new ArrayList<>(), 4, new ArrayList<>(), 4));
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_1, previousFriday, LocalTime.of(16, 0), c1, new ArrayList<>(), 4, new ArrayList<>(), 4));
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_2, previousFriday, LocalTime.of(17, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_3, previousFriday, LocalTime.of(18, 0), c3, new ArrayList<>(), 4, new ArrayList<>(), 4));
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_1, previousSaturday, LocalTime.of(14, 0), c1, new ArrayList<>(), 4, new ArrayList<>(), 4));
-        swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_2, previousSaturday, LocalTime.of(15, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
-
-        for (int i = 0; i < numWeeks; i++) {
-
-            LocalDate nextMonday = currentDate.plusWeeks(i).with(TemporalAdjusters.next(DayOfWeek.MONDAY));
-            LocalDate nextWednesday = currentDate.plusWeeks(i).with(TemporalAdjusters.next(DayOfWeek.WEDNESDAY));
-            LocalDate nextFriday = currentDate.plusWeeks(i).with(TemporalAdjusters.next(DayOfWeek.FRIDAY));
-            LocalDate nextSaturday = currentDate.plusWeeks(i).with(TemporalAdjusters.next(DayOfWeek.SATURDAY));
-
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_1, nextMonday, LocalTime.of(16, 0), c1, new ArrayList<>(), 4, new ArrayList<>(), 4));
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_2, nextMonday, LocalTime.of(17, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_3, nextMonday, LocalTime.of(18, 0), c3, new ArrayList<>(), 4, new ArrayList<>(), 4));
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_4, nextWednesday, LocalTime.of(16, 0), c3, new ArrayList<>(), 4, new ArrayList<>(), 4));
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_5, nextWednesday, LocalTime.of(17, 0), c1, new ArrayList<>(), 4, new ArrayList<>(), 4));
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_1, nextWednesday, LocalTime.of(18, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_2, nextFriday, LocalTime.of(16, 0), c4, new ArrayList<>(), 4, new ArrayList<>(), 4));
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_3, nextFriday, LocalTime.of(17, 0), c3, new ArrayList<>(), 4, new ArrayList<>(), 4));
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_4, nextFriday, LocalTime.of(18, 0), c4, new ArrayList<>(), 4, new ArrayList<>(), 4));
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_5, nextSaturday, LocalTime.of(14, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
-            swimmingSchool.getTimetable().add(new SwimmingLesson(Grade.GRADE_1, nextSaturday, LocalTime.of(15, 0), c4, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_1, previousMonday, LocalTime.of(16, 0), c1, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_2, previousMonday, LocalTime.of(17, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_3, previousMonday, LocalTime.of(18, 0), c3, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_1, previousWednesday, LocalTime.of(16, 0), c1, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_2, previousWednesday, LocalTime.of(17, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_3, previousWednesday, LocalTime.of(18, 0), c3, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_1, previousFriday, LocalTime.of(16, 0), c1, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_2, previousFriday, LocalTime.of(17, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_3, previousFriday, LocalTime.of(18, 0), c3, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_1, previousSaturday, LocalTime.of(14, 0), c1, new ArrayList<>(), 4, new ArrayList<>(), 4));
+        addLesson(swimmingSchool, new SwimmingLesson(Grade.GRADE_2, previousSaturday, LocalTime.of(15, 0), c2, new ArrayList<>(), 4, new ArrayList<>(), 4));
+
+        TimetableScheduler scheduler = swimmingSchool.getTimetableScheduler();
+        scheduler.addRule(new LessonRule(DayOfWeek.MONDAY, LocalTime.of(16, 0), Grade.GRADE_1, c1, 4));
+        scheduler.addRule(new LessonRule(DayOfWeek.MONDAY, LocalTime.of(17, 0), Grade.GRADE_2, c2, 4));
+        scheduler.addRule(new LessonRule(DayOfWeek.MONDAY, LocalTime.of(18, 0), Grade.GRADE_3, c3, 4));
+        scheduler.addRule(new LessonRule(DayOfWeek.WEDNESDAY, LocalTime.of(16, 0), Grade.GRADE_4, c3, 4));
+        scheduler.addRule(new LessonRule(DayOfWeek.WEDNESDAY, LocalTime.of(17, 0), Grade.GRADE_5, c1, 4));
+        scheduler.addRule(new LessonRule(DayOfWeek.WEDNESDAY, LocalTime.of(18, 0), Grade.GRADE_1, c2, 4));
+        scheduler.addRule(new LessonRule(DayOfWeek.FRIDAY, LocalTime.of(16, 0), Grade.GRADE_2, c4, 4));
+        scheduler.addRule(new LessonRule(DayOfWeek.FRIDAY, LocalTime.of(17, 0), Grade.GRADE_3, c3, 4));
+        scheduler.addRule(new LessonRule(DayOfWeek.FRIDAY, LocalTime.of(18, 0), Grade.GRADE_4, c4, 4));
+        scheduler.addRule(new LessonRule(DayOfWeek.SATURDAY, LocalTime.of(14, 0), Grade.GRADE_5, c2, 4));
+        scheduler.addRule(new LessonRule(DayOfWeek.SATURDAY, LocalTime.of(15, 0), Grade.GRADE_1, c4, 4));
+
+        // Materialize the upcoming weeks; the scheduler keeps rolling the window forward
+        scheduler.setWindowWeeks(numWeeks);
+        scheduler.roll(currentDate);
+    }
 
+    // Helper method to add a seeded lesson, which is expected to be free of coach conflicts...
+    private static void addLesson(SwimmingSchool swimmingSchool, SwimmingLesson swimmingLesson) {
+        try {
+            swimmingSchool.addLesson(swimmingLesson);
+        } catch (ScheduleConflict e) {
+            throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
@@ -112,21 +119,21 @@ public class SwimmingSchoolDataInitializer {
         Learner l14 = new Learner("L14", "William Clark", Gender.MALE, 5, "Emergency Contact 2", Grade.GRADE_1, new ArrayList<>());
         Learner l15 = new Learner("L15", "Christopher Hall", Gender.FEMALE, 4, "Emergency Contact 2", Grade.GRADE_1, new ArrayList<>());
 
-        swimmingSchool.getLearners().add(l1);
-        swimmingSchool.getLearners().add(l2);
-        swimmingSchool.getLearners().add(l3);
-        swimmingSchool.getLearners().add(l4);
-        swimmingSchool.getLearners().add(l5);
-        swimmingSchool.getLearners().add(l6);
-        swimmingSchool.getLearners().add(l7);
-        swimmingSchool.getLearners().add(l8);
-        swimmingSchool.getLearners().add(l9);
-        swimmingSchool.getLearners().add(l10);
-        swimmingSchool.getLearners().add(l11);
-        swimmingSchool.getLearners().add(l12);
-        swimmingSchool.getLearners().add(l13);
-        swimmingSchool.getLearners().add(l14);
-        swimmingSchool.getLearners().add(l15);
+        swimmingSchool.addLearner(l1);
+        swimmingSchool.addLearner(l2);
+        swimmingSchool.addLearner(l3);
+        swimmingSchool.addLearner(l4);
+        swimmingSchool.addLearner(l5);
+        swimmingSchool.addLearner(l6);
+        swimmingSchool.addLearner(l7);
+        swimmingSchool.addLearner(l8);
+        swimmingSchool.addLearner(l9);
+        swimmingSchool.addLearner(l10);
+        swimmingSchool.addLearner(l11);
+        swimmingSchool.addLearner(l12);
+        swimmingSchool.addLearner(l13);
+        swimmingSchool.addLearner(l14);
+        swimmingSchool.addLearner(l15);
 
     }
 
@@ -156,24 +163,19 @@ public class SwimmingSchoolDataInitializer {
         Booking b4 = new Booking("B4L4", LocalDate.now(), learner4, swimmingLesson4, BookingStatus.BOOKED.name(), null);
         Booking b5 = new Booking("B5L5", LocalDate.now(), learner5, swimmingLesson5, BookingStatus.BOOKED.name(), null);
 
-        learner1.getBookings().add(b1);
-        swimmingSchool.getBookings().put(b1.getBookingID(), b1);
+        swimmingSchool.addBooking(b1);
         swimmingLesson1.setAvailableSlots(swimmingLesson1.getAvailableSlots() - 1);
 
-        learner2.getBookings().add(b2);
-        swimmingSchool.getBookings().put(b2.getBookingID(), b2);
+        swimmingSchool.addBooking(b2);
         swimmingLesson2.setAvailableSlots(swimmingLesson2.getAvailableSlots() - 1);
 
-        learner3.getBookings().add(b3);
-        swimmingSchool.getBookings().put(b3.getBookingID(), b3);
+        swimmingSchool.addBooking(b3);
         swimmingLesson3.setAvailableSlots(swimmingLesson3.getAvailableSlots() - 1);
 
-        learner4.getBookings().add(b4);
-        swimmingSchool.getBookings().put(b4.getBookingID(), b4);
+        swimmingSchool.addBooking(b4);
         swimmingLesson4.setAvailableSlots(swimmingLesson4.getAvailableSlots() - 1);
 
-        learner5.getBookings().add(b5);
-        swimmingSchool.getBookings().put(b5.getBookingID(), b5);
+        swimmingSchool.addBooking(b5);
         swimmingLesson5.setAvailableSlots(swimmingLesson5.getAvailableSlots() - 1);
 
     }
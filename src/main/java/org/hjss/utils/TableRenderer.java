@@ -0,0 +1,208 @@
+package org.hjss.utils;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders fixed-width console tables into a reusable character buffer.
+ * Each row is padded by hand against precomputed column widths instead of going
+ * through printf, and the whole table is written to the output stream in a single
+ * write and flush once it is complete.
+ * A renderer instance is not thread safe; the date and time caches are shared.
+ */
+public class TableRenderer {
+
+    private static final ConcurrentHashMap<LocalDate, String> DATE_CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<LocalTime, String> TIME_CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<LocalTime, String> TIME_SLOT_CACHE = new ConcurrentHashMap<>();
+
+    private final int[] widths;
+    private final String rowPrefix;
+    private final String separator;
+    private final String rowSuffix;
+    private final StringBuilder buffer = new StringBuilder(4096);
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private char[] chars = new char[4096];
+    private ByteBuffer bytes = ByteBuffer.allocate(8192);
+    private int column;
+
+    /**
+     * Creates a renderer for a table layout.
+     *
+     * @param widths    The minimum width of each column, as used by "%-Ns".
+     * @param rowPrefix The text written before the first cell of a row.
+     * @param separator The text written between two cells.
+     * @param rowSuffix The text written after the last cell of a row.
+     */
+    public TableRenderer(int[] widths, String rowPrefix, String separator, String rowSuffix) {
+        this.widths = widths.clone();
+        this.rowPrefix = rowPrefix;
+        this.separator = separator;
+        this.rowSuffix = rowSuffix;
+    }
+
+    /**
+     * Appends a complete line of text to the table.
+     *
+     * @param text The text of the line.
+     * @return This renderer.
+     */
+    public TableRenderer line(String text) {
+        buffer.append(text).append(System.lineSeparator());
+        return this;
+    }
+
+    /**
+     * Appends a row made of the given cells.
+     *
+     * @param cells The cell values, one per column.
+     * @return This renderer.
+     */
+    public TableRenderer row(String... cells) {
+        for (String cell : cells) {
+            cell(cell);
+        }
+        return endRow();
+    }
+
+    /**
+     * Appends a text cell to the current row.
+     *
+     * @param value The cell value.
+     * @return This renderer.
+     */
+    public TableRenderer cell(CharSequence value) {
+        startCell();
+        int start = buffer.length();
+        buffer.append(value);
+        pad(start);
+        return this;
+    }
+
+    /**
+     * Appends a numeric cell to the current row.
+     *
+     * @param value The cell value.
+     * @return This renderer.
+     */
+    public TableRenderer cell(int value) {
+        startCell();
+        int start = buffer.length();
+        buffer.append(value);
+        pad(start);
+        return this;
+    }
+
+    /**
+     * Finishes the current row.
+     *
+     * @return This renderer.
+     */
+    public TableRenderer endRow() {
+        buffer.append(rowSuffix).append(System.lineSeparator());
+        column = 0;
+        return this;
+    }
+
+    /**
+     * Writes everything rendered so far to the given stream in one write, flushes it
+     * and resets the buffer for the next table.
+     *
+     * @param out The stream to write to.
+     */
+    public void flushTo(PrintStream out) {
+        int length = buffer.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        buffer.getChars(0, length, chars, 0);
+        CharBuffer input = CharBuffer.wrap(chars, 0, length);
+        encoder.reset();
+        bytes.clear();
+        while (encoder.encode(input, bytes, true).isOverflow()) {
+            growBytes();
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            growBytes();
+        }
+        out.write(bytes.array(), 0, bytes.position());
+        out.flush();
+        buffer.setLength(0);
+        column = 0;
+    }
+
+    /**
+     * Returns the rendered text without writing it anywhere.
+     *
+     * @return The rendered table so far.
+     */
+    public String render() {
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the ISO representation of a date, cached across calls.
+     *
+     * @param date The date to format.
+     * @return The formatted date.
+     */
+    public static String formatDate(LocalDate date) {
+        return DATE_CACHE.computeIfAbsent(date, LocalDate::toString);
+    }
+
+    /**
+     * Returns the ISO representation of a time, cached across calls.
+     *
+     * @param time The time to format.
+     * @return The formatted time.
+     */
+    public static String formatTime(LocalTime time) {
+        return TIME_CACHE.computeIfAbsent(time, LocalTime::toString);
+    }
+
+    /**
+     * Returns a time slot in "HH:mm (h:mm AM/PM)" form, cached across calls.
+     *
+     * @param time The time of the slot.
+     * @return The formatted time slot.
+     */
+    public static String formatTimeSlot(LocalTime time) {
+        return TIME_SLOT_CACHE.computeIfAbsent(time, t -> String.format("%02d:%02d (%d:%02d %s)",
+                t.getHour(),
+                t.getMinute(),
+                t.getHour() > 12 ? t.getHour() - 12 : t.getHour(),
+                t.getMinute(),
+                t.getHour() < 12 ? "AM" : "PM"));
+    }
+
+    // Helper method to double the encoding buffer keeping what was written...
+    private void growBytes() {
+        ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+        bytes.flip();
+        larger.put(bytes);
+        bytes = larger;
+    }
+
+    // Helper method to write the prefix or separator before a cell...
+    private void startCell() {
+        buffer.append(column == 0 ? rowPrefix : separator);
+    }
+
+    // Helper method to left justify a cell to its column width...
+    private void pad(int start) {
+        int width = column < widths.length ? widths[column] : 0;
+        for (int i = buffer.length() - start; i < width; i++) {
+            buffer.append(' ');
+        }
+        column++;
+    }
+}
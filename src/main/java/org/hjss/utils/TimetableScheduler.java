@@ -0,0 +1,350 @@
+package org.hjss.utils;
+
+import org.hjss.exception.ScheduleConflict;
+import org.hjss.models.LessonRule;
+import org.hjss.models.SwimmingLesson;
+import org.hjss.models.SwimmingSchool;
+import org.hjss.service.ScheduleValidator;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates the timetable from weekly lesson rules over a rolling window.
+ * Lessons are materialized into the school's timetable only up to a fixed number of weeks
+ * ahead; lessons further out are created on the fly when queried and only kept once
+ * somebody books them, so memory does not depend on how far ahead people look.
+ * A lesson past the window is pinned while a booking operation works on it, and leaves the
+ * timetable again when the last operation releases it without a booking or held seat on it.
+ */
+public class TimetableScheduler {
+
+    private final SwimmingSchool swimmingSchool;
+    private final List<LessonRule> rules = new ArrayList<>();
+    private final Map<LessonRule, Map<LocalDate, EarlyLesson>> lessonsAheadOfWindow = new IdentityHashMap<>();
+    private int windowWeeks = 4;
+    private volatile LocalDate generatedUntil;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a scheduler generating lessons into the given school's timetable.
+     *
+     * @param swimmingSchool The swimming school to generate lessons for.
+     */
+    public TimetableScheduler(SwimmingSchool swimmingSchool) {
+        this.swimmingSchool = swimmingSchool;
+    }
+
+    /**
+     * Adds a recurrence rule. Lessons for it are generated from the next roll onwards.
+     *
+     * @param rule The rule to add.
+     */
+    public synchronized void addRule(LessonRule rule) {
+        rules.add(rule);
+    }
+
+    /**
+     * @return A copy of the recurrence rules.
+     */
+    public synchronized List<LessonRule> getRules() {
+        return new ArrayList<>(rules);
+    }
+
+    /**
+     * Sets how many weeks ahead of today lessons are materialized.
+     *
+     * @param windowWeeks The number of weeks in the window.
+     */
+    public synchronized void setWindowWeeks(int windowWeeks) {
+        if (windowWeeks < 1) {
+            throw new IllegalArgumentException("Window must be at least one week: " + windowWeeks);
+        }
+        this.windowWeeks = windowWeeks;
+    }
+
+    /**
+     * @return The last date lessons have been materialized for, or null before the first roll.
+     */
+    public synchronized LocalDate getGeneratedUntil() {
+        return generatedUntil;
+    }
+
+    /**
+     * Materializes the lessons for every date between the last generated date and the end of
+     * the window starting at the given day. Only the new dates are generated.
+     *
+     * @param today The day the window starts from.
+     * @return The number of lessons added to the timetable.
+     */
+    public synchronized int roll(LocalDate today) {
+        LocalDate horizon = today.plusWeeks(windowWeeks);
+        LocalDate date = generatedUntil == null ? today.plusDays(1) : generatedUntil.plusDays(1);
+        List<SwimmingLesson> generated = new ArrayList<>();
+        for (; !date.isAfter(horizon); date = date.plusDays(1)) {
+            for (LessonRule rule : rules) {
+                if (rule.getDayOfWeek() == date.getDayOfWeek()) {
+                    EarlyLesson early = removeEarly(rule, date);
+                    if (early == null) {
+                        SwimmingLesson lesson = rule.createLesson(date);
+                        if (schedule(lesson)) {
+                            generated.add(lesson);
+                        }
+                    }
+                }
+            }
+        }
+        if (generatedUntil == null || horizon.isAfter(generatedUntil)) {
+            generatedUntil = horizon;
+        }
+        // Added in one batch so readers of the timetable see the whole day range at once
+        swimmingSchool.addLessons(generated);
+        return generated.size();
+    }
+
+    /**
+     * Returns the lessons between two dates (both inclusive), ordered by date and time.
+     * Lessons past the window are generated for the query and not retained.
+     *
+     * @param from The first date.
+     * @param to   The last date.
+     * @return The lessons in the date range.
+     */
+    public synchronized List<SwimmingLesson> lessonsBetween(LocalDate from, LocalDate to) {
+        List<SwimmingLesson> lessons = new ArrayList<>();
+        for (SwimmingLesson lesson : swimmingSchool.getTimetable()) {
+            if (!lesson.getDate().isBefore(from) && !lesson.getDate().isAfter(to)) {
+                lessons.add(lesson);
+            }
+        }
+        LocalDate date = generatedUntil == null ? from : max(from, generatedUntil.plusDays(1));
+        for (; !date.isAfter(to); date = date.plusDays(1)) {
+            for (LessonRule rule : rules) {
+                if (rule.getDayOfWeek() == date.getDayOfWeek()) {
+                    if (early(rule, date) == null) {
+                        lessons.add(rule.createLesson(date));
+                    }
+                }
+            }
+        }
+        lessons.sort(Comparator.comparing(SwimmingLesson::getDate).thenComparing(SwimmingLesson::getTimeSlot));
+        return lessons;
+    }
+
+    /**
+     * Creates the lesson at a date and time beyond the window without adding it to the timetable,
+     * or returns it if it is already materialized.
+     *
+     * @param time The time of the lesson.
+     * @param date The date of the lesson.
+     * @return The lesson, or null if it is inside the window or no rule matches.
+     */
+    public synchronized SwimmingLesson previewLesson(LocalTime time, LocalDate date) {
+        if (generatedUntil == null || !date.isAfter(generatedUntil)) {
+            return null;
+        }
+        for (LessonRule rule : rules) {
+            if (rule.getDayOfWeek() == date.getDayOfWeek() && rule.getTimeSlot().equals(time)) {
+                EarlyLesson early = early(rule, date);
+                return early != null ? early.lesson : rule.createLesson(date);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Materializes a single lesson beyond the window so that it can be booked, and pins it until
+     * {@link #releaseLesson(SwimmingLesson)} is called for it.
+     *
+     * @param time The time of the lesson.
+     * @param date The date of the lesson.
+     * @return The lesson now in the timetable, or null if it is inside the window or no rule matches.
+     */
+    public synchronized SwimmingLesson materializeLesson(LocalTime time, LocalDate date) {
+        if (generatedUntil == null || !date.isAfter(generatedUntil)) {
+            return null;
+        }
+        for (LessonRule rule : rules) {
+            if (rule.getDayOfWeek() == date.getDayOfWeek() && rule.getTimeSlot().equals(time)) {
+                EarlyLesson early = early(rule, date);
+                if (early == null) {
+                    SwimmingLesson lesson = rule.createLesson(date);
+                    if (!schedule(lesson)) {
+                        continue;
+                    }
+                    early = new EarlyLesson(lesson);
+                    lessonsAheadOfWindow.computeIfAbsent(rule, r -> new HashMap<>()).put(date, early);
+                    swimmingSchool.addLessons(Collections.singletonList(lesson));
+                }
+                early.pins++;
+                return early.lesson;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pins a lesson found in the timetable if it was materialized ahead of the window, so it stays
+     * there until {@link #releaseLesson(SwimmingLesson)} is called for it.
+     *
+     * @param lesson The lesson.
+     * @return False if the lesson has just left the timetable and must be looked up again.
+     */
+    public boolean pinLesson(SwimmingLesson lesson) {
+        if (!isAheadOfWindow(lesson)) {
+            return true;
+        }
+        synchronized (this) {
+            if (lesson.isCancelled()) {
+                return false;
+            }
+            for (LessonRule rule : rules) {
+                EarlyLesson early = early(rule, lesson.getDate());
+                if (early != null && early.lesson == lesson) {
+                    early.pins++;
+                    break;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Releases a lesson pinned by {@link #materializeLesson(LocalTime, LocalDate)} or
+     * {@link #pinLesson(SwimmingLesson)}. Once no operation holds it and nobody booked it or holds a
+     * seat on it, it leaves the timetable again and is marked cancelled, so a stale reference to it
+     * cannot be booked. Lessons inside the window are not affected.
+     *
+     * @param lesson The lesson, or null.
+     */
+    public void releaseLesson(SwimmingLesson lesson) {
+        if (lesson == null || !isAheadOfWindow(lesson)) {
+            return;
+        }
+        synchronized (this) {
+            release(lesson);
+        }
+    }
+
+    // Helper method to drop a pin on a lesson ahead of the window, removing the lesson when it is unused...
+    private void release(SwimmingLesson lesson) {
+        for (LessonRule rule : rules) {
+            EarlyLesson early = early(rule, lesson.getDate());
+            if (early == null || early.lesson != lesson) {
+                continue;
+            }
+            if (--early.pins == 0 && lesson.getAvailableSlots() == lesson.getCapacity()
+                    && swimmingSchool.lessonBookingsPage(lesson, null, 1).getItems().isEmpty()) {
+                removeEarly(rule, lesson.getDate());
+                lesson.setCancelled(true);
+                swimmingSchool.removeLessons(Collections.singletonList(lesson));
+                if (lesson.getCoach() != null) {
+                    lesson.getCoach().unscheduleLesson(lesson);
+                }
+                swimmingSchool.getIdentityRegistry().release(lesson);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Checks a whole term of generated lessons, including those beyond the window, for coaches
+     * scheduled on overlapping lessons.
+     *
+     * @param from The first date of the term.
+     * @param to   The last date of the term.
+     * @return The conflicts found, empty if the term is valid.
+     */
+    public List<ScheduleValidator.Conflict> validateTerm(LocalDate from, LocalDate to) {
+        return new ScheduleValidator().validate(lessonsBetween(from, to));
+    }
+
+    /**
+     * Starts rolling the window forward, and archiving past lessons, once a day on a background thread.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hjss-timetable-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> {
+            roll(LocalDate.now());
+            try {
+                swimmingSchool.archivePastLessons();
+            } catch (IOException e) {
+                swimmingSchool.getEventLogger().warn("archive.write.failed", "error", e.getMessage());
+            }
+        }, 0, 1, TimeUnit.DAYS);
+    }
+
+    /**
+     * Stops the background roll.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    // Helper method to add a generated lesson to its coach's schedule, skipping it on a conflict...
+    private boolean schedule(SwimmingLesson lesson) {
+        if (lesson.getCoach() == null) {
+            return true;
+        }
+        try {
+            lesson.getCoach().scheduleLesson(lesson);
+            return true;
+        } catch (ScheduleConflict e) {
+            return false;
+        }
+    }
+
+    private boolean isAheadOfWindow(SwimmingLesson lesson) {
+        LocalDate until = generatedUntil;
+        return until != null && lesson.getDate().isAfter(until);
+    }
+
+    // Helper method to find the lesson of a rule materialized ahead of the window on a date...
+    private EarlyLesson early(LessonRule rule, LocalDate date) {
+        Map<LocalDate, EarlyLesson> byDate = lessonsAheadOfWindow.get(rule);
+        return byDate == null ? null : byDate.get(date);
+    }
+
+    private EarlyLesson removeEarly(LessonRule rule, LocalDate date) {
+        Map<LocalDate, EarlyLesson> byDate = lessonsAheadOfWindow.get(rule);
+        if (byDate == null) {
+            return null;
+        }
+        EarlyLesson early = byDate.remove(date);
+        if (byDate.isEmpty()) {
+            lessonsAheadOfWindow.remove(rule);
+        }
+        return early;
+    }
+
+    private static LocalDate max(LocalDate first, LocalDate second) {
+        return first.isAfter(second) ? first : second;
+    }
+
+    /**
+     * A lesson materialized ahead of the window, with the number of operations working on it.
+     */
+    private static final class EarlyLesson {
+        private final SwimmingLesson lesson;
+        private int pins;
+
+        EarlyLesson(SwimmingLesson lesson) {
+            this.lesson = lesson;
+        }
+    }
+}
@@ -1,18 +1,78 @@
 package org.hjss.test;
 
+import org.hjss.constants.BookingStatus;
+import org.hjss.constants.Gender;
 import org.hjss.constants.Grade;
+import org.hjss.constants.LogLevel;
+import org.hjss.constants.Rating;
+import org.hjss.exception.ConcurrentChange;
 import org.hjss.exception.InvalidBooking;
+import org.hjss.exception.NoSlotsAvailable;
+import org.hjss.exception.ScheduleConflict;
 import org.hjss.Main;
+import org.hjss.service.AdmissionController;
+import org.hjss.service.BookingTransaction;
+import org.hjss.server.AvailabilityEventServer;
+import org.hjss.service.LessonArchive;
+import org.hjss.service.LessonRecommender;
+import org.hjss.service.LessonQuery;
+import org.hjss.service.ReviewAnalytics;
+import org.hjss.service.SeatInventory;
+import org.hjss.service.SwimmingSchoolService;
+import org.hjss.utils.AttendanceScheduler;
+import org.hjss.utils.EventLogger;
+import org.hjss.utils.IdempotencyCache;
+import org.hjss.utils.IdentityRegistry;
+import org.hjss.utils.LearnerCsvImporter;
+import org.hjss.utils.SchoolDataExporter;
+import org.hjss.utils.SchoolDataImporter;
+import org.hjss.models.AvailabilityChange;
+import org.hjss.models.Booking;
+import org.hjss.models.Coach;
+import org.hjss.models.Learner;
+import org.hjss.models.LessonRule;
+import org.hjss.models.Notification;
+import org.hjss.notification.NotificationOutbox;
+import org.hjss.notification.NotificationSink;
+import org.hjss.models.Page;
+import org.hjss.models.Review;
 import org.hjss.models.SwimmingLesson;
 import org.hjss.models.SwimmingSchool;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.YearMonth;
 import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 
@@ -94,5 +154,1045 @@ public class SwimmingSchoolTest {
         System.out.println("Reply for write review: "+reply);
     }
 
-}
+    @Test
+    public void recommendLessons() {
+        lessons = swimmingSchool.recommendLessons("L6", "John", 5);
+        assertNotNull(lessons);
+        assertTrue(lessons.size() <= 5);
+
+        for (SwimmingLesson lesson : lessons) {
+            assertTrue(lesson.getGrade() == Grade.GRADE_1 || lesson.getGrade() == Grade.GRADE_2);
+            assertTrue(lesson.getDate().isAfter(LocalDate.now()));
+            assertTrue(lesson.getAvailableSlots() > 0);
+        }
+        Main.viewTimetable(lessons);
+    }
+
+    @Test
+    public void recommenderFollowsCoachAndCancellations() {
+        Coach helen = new Coach("Helen", new ArrayList<>());
+        Coach mark = new Coach("Mark", new ArrayList<>());
+        LocalDate day = date.plusDays(1);
+        List<SwimmingLesson> timetable = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            timetable.add(new SwimmingLesson(Grade.GRADE_2, day.plusDays(i), LocalTime.of(17, 0), i == 19 ? helen : mark,
+                    new ArrayList<>(), 4, new ArrayList<>(), 4));
+        }
+        LessonRecommender recommender = new LessonRecommender(timetable);
+        Learner learner = new Learner("R1", "Rae", Gender.FEMALE, 6, "0770", Grade.GRADE_2, new ArrayList<>());
+
+        lessons = recommender.recommend(learner, "helen", 2, date);
+        assertEquals(Arrays.asList(timetable.get(19), timetable.get(0)), lessons);
+
+        timetable.get(0).setCancelled(true);
+        assertEquals(19, recommender.getIndexedLessons());
+        assertEquals(timetable.get(1), recommender.recommend(learner, null, 1, date).get(0));
+        recommender.removeLesson(timetable.get(19));
+        assertEquals(timetable.get(1), recommender.recommend(learner, "Helen", 1, date).get(0));
+    }
+
+    @Test
+    public void viewFarFutureTimetable() {
+        int materialized = swimmingSchool.getTimetable().size();
+        LocalDate from = date.plusYears(1);
+        lessons = swimmingSchool.viewTimetable(from, from.plusDays(6));
+        assertEquals(11, lessons.size());
+        assertEquals(materialized, swimmingSchool.getTimetable().size());
+
+        SwimmingLesson lesson = lessons.get(0);
+        assertNotNull(swimmingSchool.getLessonByTimeAndDay(lesson.getTimeSlot(), lesson.getDate()));
+        assertEquals(materialized, swimmingSchool.getTimetable().size());
+        swimmingSchool.bookLesson(lesson.getTimeSlot(), lesson.getDate(), "unknown learner");
+        assertEquals(materialized, swimmingSchool.getTimetable().size());
+
+        // Only a committed booking keeps the lesson
+        SwimmingLesson held = swimmingSchool.getTimetableScheduler().materializeLesson(lesson.getTimeSlot(), lesson.getDate());
+        assertEquals(materialized + 1, swimmingSchool.getTimetable().size());
+        assertTrue(held.tryAcquireSlot());
+        swimmingSchool.getTimetableScheduler().releaseLesson(held);
+        assertEquals(materialized + 1, swimmingSchool.getTimetable().size());
+        assertEquals(0, swimmingSchool.getTimetableScheduler().roll(date));
+    }
+
+    @Test
+    public void discardedLessonsGiveTheirHandlesBack() {
+        SwimmingSchool school = new SwimmingSchool();
+        IdentityRegistry registry = school.getIdentityRegistry();
+        int live = registry.getLessonCount();
+        LocalDate from = date.plusYears(1);
+        List<SwimmingLesson> far = school.viewTimetable(from, from.plusDays(6));
+
+        SwimmingLesson first = school.getTimetableScheduler().materializeLesson(far.get(0).getTimeSlot(), far.get(0).getDate());
+        int handle = first.getHandle();
+        school.getTimetableScheduler().releaseLesson(first);
+        assertEquals(-1, first.getHandle());
+        assertNull(registry.lesson(handle));
+        assertEquals(live, registry.getLessonCount());
+
+        // The next lesson takes the handle over and is found through it
+        SwimmingLesson second = school.getTimetableScheduler().materializeLesson(far.get(1).getTimeSlot(), far.get(1).getDate());
+        assertEquals(handle, second.getHandle());
+        assertSame(second, registry.lesson(handle));
+        assertEquals(Collections.singletonList(second), school.searchLessons(LessonQuery.between(second.getDate(), second.getDate())
+                .and(LessonQuery.time(second.getTimeSlot()))));
+        school.getTimetableScheduler().releaseLesson(second);
+        assertEquals(live, registry.getLessonCount());
+    }
+
+    @Test
+    public void materializedLessonsOfRulesSharingASlotAreKeptApart() {
+        SwimmingSchool school = new SwimmingSchool();
+        LocalDate farDate = date.plusYears(1);
+        LocalTime time = LocalTime.of(7, 0);
+        school.getTimetableScheduler().addRule(new LessonRule(farDate.getDayOfWeek(), time, Grade.GRADE_1, school.getCoaches().get(0), 4));
+        school.getTimetableScheduler().addRule(new LessonRule(farDate.getDayOfWeek(), time, Grade.GRADE_2, school.getCoaches().get(1), 4));
+
+        SwimmingLesson early = school.getTimetableScheduler().materializeLesson(time, farDate);
+        assertTrue(early.tryAcquireSlot());
+        school.getTimetableScheduler().releaseLesson(early);
+        school.getTimetableScheduler().roll(farDate);
+
+        assertEquals(2, school.getTimetable().stream()
+                .filter(lesson -> lesson.getDate().equals(farDate) && lesson.getTimeSlot().equals(time)).count());
+    }
+
+    @Test
+    public void detectCoachScheduleConflict() {
+        SwimmingLesson existing = swimmingSchool.getTimetable().get(swimmingSchool.getTimetable().size() - 1);
+        SwimmingLesson overlapping = new SwimmingLesson(Grade.GRADE_2, existing.getDate(),
+                existing.getTimeSlot().plusMinutes(30), existing.getCoach(), new ArrayList<>(), 4, new ArrayList<>(), 4);
+        assertThrows(ScheduleConflict.class, () -> swimmingSchool.addLesson(overlapping));
+
+        assertTrue(swimmingSchool.getTimetableScheduler().validateTerm(date, date.plusMonths(3)).isEmpty());
+    }
+
+    @Test
+    public void reviewAnalytics() {
+        SwimmingSchool school = new SwimmingSchool();
+        ReviewAnalytics analytics = school.getReviewAnalytics();
+        ReviewAnalytics.RatingStats shivani = analytics.getCoachStats("Shivani");
+        assertNotNull(shivani);
+        long reviews = shivani.getCount();
+
+        SwimmingLesson lesson = school.getTimetable().get(0);
+        for (int i = 0; i < ReviewAnalytics.WINDOW; i++) {
+            analytics.record(lesson, new Review(Rating.VERY_SATISFIED, "L1", 1, lesson.getDate(), date, null));
+        }
+        assertFalse(shivani.isDropDetected());
+        for (int i = 0; i < ReviewAnalytics.WINDOW; i++) {
+            analytics.record(lesson, new Review(Rating.VERY_DISSATISFIED, "L1", 1, lesson.getDate(), date, null));
+        }
+        assertEquals(reviews + 2 * ReviewAnalytics.WINDOW, shivani.getCount());
+        assertEquals(1.0, shivani.getRollingAverage(), 0.0);
+        assertEquals(5, shivani.getQuantile(0.9));
+        assertTrue(shivani.isDropDetected());
+        assertTrue(analytics.getDrops().contains(shivani));
+    }
+
+    @Test
+    public void parallelReportsMatchSequential() {
+        SwimmingSchool school = new SwimmingSchool();
+        // Registered out of ID order, as the parallel CSV import can do
+        school.addLearner(new Learner("L5000", "Late", Gender.MALE, 6, "0770", Grade.GRADE_1, new ArrayList<>()));
+        school.addLearner(new Learner("L4000", "Early", Gender.FEMALE, 6, "0770", Grade.GRADE_1, new ArrayList<>()));
+        for (int i = 0; i < 1000; i++) {
+            school.addLearner("Learner" + i, i % 2 == 0 ? "male" : "female", 4 + i % 8, "Contact " + i, 1 + i % 5);
+        }
+        int month = date.getMonthValue();
+
+        school.setReportParallelism(1);
+        String sequential = captureOutput(() -> {
+            school.generateMonthlySummaryOfBookings(month);
+            school.generateDetailedLearnerReport(month);
+        });
+        school.setReportParallelism(4);
+        String parallel = captureOutput(() -> {
+            school.generateMonthlySummaryOfBookings(month);
+            school.generateDetailedLearnerReport(month);
+        });
+        assertEquals(sequential, parallel);
+        assertTrue(parallel.indexOf("L4000") < parallel.indexOf("L5000"));
+        assertTrue(parallel.indexOf("L5000") < parallel.indexOf("L5001"));
+    }
+
+    // Helper method to capture what a report prints...
+    private String captureOutput(Runnable report) {
+        PrintStream original = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+        try {
+            report.run();
+        } finally {
+            System.setOut(original);
+        }
+        return output.toString();
+    }
+
+    @Test
+    public void exportAndImportSchoolData() throws IOException {
+        SwimmingSchool school = new SwimmingSchool();
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        new SchoolDataExporter().export(school, exported);
+
+        SwimmingSchool imported = new SwimmingSchool(false);
+        new SchoolDataImporter().importInto(imported, new ByteArrayInputStream(exported.toByteArray()));
+
+        assertEquals(school.getCoaches().size(), imported.getCoaches().size());
+        assertEquals(school.getTimetable().size(), imported.getTimetable().size());
+        assertEquals(school.getLearners().size(), imported.getLearners().size());
+        assertEquals(school.getBookings().keySet(), imported.getBookings().keySet());
+        assertEquals(Rating.SATISFIED, imported.getBookingById("B1L1").getReview().getRating());
+        assertEquals(school.getBookingById("B4L4").getLesson().getStart(), imported.getBookingById("B4L4").getLesson().getStart());
+        assertEquals(school.getReviewAnalytics().getCoachStats("John").getAverage(),
+                imported.getReviewAnalytics().getCoachStats("John").getAverage(), 0.0);
+    }
+
+    @Test
+    public void archivePastLessons() throws IOException {
+        SwimmingSchool school = new SwimmingSchool();
+        Path directory = Files.createTempDirectory("hjss-archive");
+        LessonArchive archive = new LessonArchive(directory, 0);
+        school.setLessonArchive(archive);
+        LocalDate lessonDate = school.getBookingById("B1L1").getLesson().getDate();
+        int lessonMonth = lessonDate.getMonthValue();
+        int liveLessons = school.getTimetable().size();
+        String ratingsBefore = captureOutput(school::generateCoachRatingsReport);
+
+        assertEquals(11, school.archivePastLessons());
+        assertEquals(liveLessons - 11, school.getTimetable().size());
+        assertTrue(school.getLearnerByLearnerId("L1").getBookings().isEmpty());
+        Booking archivedBooking = school.getBookingById("B1L1");
+        assertEquals(BookingStatus.ATTENDED.name(), archivedBooking.getBookingStatus());
+        assertEquals(lessonDate, archivedBooking.getLesson().getDate());
+        assertTrue(school.learnerBookingsPage("L1", null, 10).getItems().stream()
+                .anyMatch(booking -> booking.getBookingID().equals("B1L1")));
+
+        assertEquals(ratingsBefore, captureOutput(school::generateCoachRatingsReport));
+        assertTrue(captureOutput(() -> school.generateDetailedLearnerReport(lessonMonth)).contains("B1L1"));
+        assertArrayEquals(new int[]{0, 0, 0, 1, 0}, archive.getBookingCounts(YearMonth.from(lessonDate), "L1"));
+
+        LessonArchive reopened = new LessonArchive(directory, 0);
+        assertArrayEquals(new int[]{0, 0, 0, 1, 0}, reopened.getBookingCounts(YearMonth.from(lessonDate), "L1"));
+        assertEquals(archive.getCoachRatings().keySet(), reopened.getCoachRatings().keySet());
+        assertNotNull(reopened.findBooking("B1L1", school));
+    }
+
+    @Test
+    public void pageThroughTimetableAndBookings() {
+        SwimmingSchool school = new SwimmingSchool();
+        List<SwimmingLesson> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<SwimmingLesson> page = school.timetablePage(cursor, 4);
+            assertTrue(page.getItems().size() <= 4);
+            paged.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(school.getTimetable().size(), paged.size());
+        for (int i = 1; i < paged.size(); i++) {
+            assertFalse(paged.get(i).getStart().isBefore(paged.get(i - 1).getStart()));
+        }
+
+        SwimmingLesson lesson = school.getBookingById("B5L5").getLesson();
+        assertEquals(Collections.singletonList(school.getBookingById("B5L5")), school.lessonBookingsPage(lesson, null, 10).getItems());
+        Page<Booking> learnerPage = school.learnerBookingsPage("L5", null, 10);
+        assertEquals(1, learnerPage.getItems().size());
+        assertFalse(learnerPage.hasNext());
+        assertTrue(school.learnerBookingsPage("unknown", null, 10).getItems().isEmpty());
+    }
+
+    @Test
+    public void closeEndedLessons() throws Exception {
+        SwimmingSchool school = new SwimmingSchool();
+        List<Notification> received = new CopyOnWriteArrayList<>();
+        NotificationOutbox outbox = new NotificationOutbox(null, received::addAll);
+        school.setNotificationOutbox(outbox);
+        AttendanceScheduler scheduler = school.getAttendanceScheduler();
+        SwimmingLesson lesson = school.getBookingById("B5L5").getLesson();
+        int slots = lesson.getAvailableSlots();
+        scheduler.recordPresent("B4L4");
+
+        LocalDateTime now = LocalDateTime.now();
+        assertTrue(scheduler.advanceTo(now) > 0);
+        assertEquals(BookingStatus.ATTENDED.name(), school.getBookingById("B4L4").getBookingStatus());
+        assertEquals(BookingStatus.NO_SHOW.name(), school.getBookingById("B5L5").getBookingStatus());
+        assertEquals(slots + 1, lesson.getAvailableSlots());
+        while (outbox.dispatch() > 0) {
+            // Deliver every notification of the closed lessons
+        }
+        assertTrue(received.stream().anyMatch(notification -> notification.getType() == Notification.Type.ATTENDED
+                && notification.getBookingId().equals("B4L4")));
+        assertTrue(received.stream().anyMatch(notification -> notification.getType() == Notification.Type.NO_SHOW
+                && notification.getBookingId().equals("B5L5")));
+
+        // A no-show is counted in the monthly summary and cannot be changed to give its seat back again
+        StringBuilder row = new StringBuilder();
+        new SwimmingSchoolService().appendMonthlySummaryRow(lesson.getDate(), lesson.getDate().plusDays(1),
+                school.getLearnerByLearnerId("L5"), row);
+        assertTrue(row.toString(), row.toString().trim().endsWith("| 1"));
+        SwimmingLesson upcoming = school.bookableLessons("L5").get(0);
+        school.changeBooking("B5L5", upcoming.getTimeSlot(), upcoming.getDate());
+        assertEquals(slots + 1, lesson.getAvailableSlots());
+
+        // Correcting a no-show does not release the seat twice
+        school.markBookingAttended("B5L5");
+        assertEquals(slots + 1, lesson.getAvailableSlots());
+
+        SwimmingLesson next = null;
+        for (SwimmingLesson candidate : school.getTimetable()) {
+            if (candidate.getEnd().isAfter(now) && (next == null || candidate.getEnd().isBefore(next.getEnd()))) {
+                next = candidate;
+            }
+        }
+        int pending = scheduler.getPending();
+        assertEquals(0, scheduler.advanceTo(next.getEnd().minusMinutes(1)));
+        assertTrue(scheduler.advanceTo(next.getEnd()) > 0);
+        assertTrue(scheduler.getPending() < pending);
+    }
+
+    @Test
+    public void seatHoldsNeverOversellUnderContention() throws Exception {
+        SwimmingLesson lesson = new SwimmingLesson(Grade.GRADE_1, LocalDate.now().plusDays(1), LocalTime.of(16, 0), null,
+                new ArrayList<>(), 4, new ArrayList<>(), 4);
+        SeatInventory inventory = new SeatInventory(Duration.ofMinutes(10));
+        AtomicInteger held = new AtomicInteger();
+        AtomicInteger maxHeld = new AtomicInteger();
+        AtomicInteger violations = new AtomicInteger();
+        int threads = 16;
+        CountDownLatch startLatch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                startLatch.await();
+                for (int i = 0; i < 20000; i++) {
+                    String holdId;
+                    try {
+                        holdId = inventory.reserve(lesson, "L1");
+                    } catch (NoSlotsAvailable e) {
+                        continue;
+                    }
+                    maxHeld.accumulateAndGet(held.incrementAndGet(), Math::max);
+                    int slots = lesson.getAvailableSlots();
+                    if (slots < 0 || slots > lesson.getCapacity()) {
+                        violations.incrementAndGet();
+                    }
+                    held.decrementAndGet();
+                    if (i % 2 == 0) {
+                        inventory.release(holdId);
+                    } else {
+                        inventory.confirm(holdId);
+                        lesson.releaseSlot();
+                    }
+                }
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(0, violations.get());
+        assertTrue(maxHeld.get() <= lesson.getCapacity());
+        assertEquals(lesson.getCapacity(), lesson.getAvailableSlots());
+        assertEquals(0, inventory.getHoldCount());
+    }
+
+    @Test
+    public void racingCancelAndChangeReleaseTheSeatOnce() throws Exception {
+        SwimmingSchoolService service = new SwimmingSchoolService();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (int round = 0; round < 2000; round++) {
+            SwimmingLesson from = new SwimmingLesson(Grade.GRADE_1, LocalDate.now().plusDays(1), LocalTime.of(16, 0), null,
+                    new ArrayList<>(), 4, new ArrayList<>(), 3);
+            SwimmingLesson to = new SwimmingLesson(Grade.GRADE_1, LocalDate.now().plusDays(2), LocalTime.of(16, 0), null,
+                    new ArrayList<>(), 4, new ArrayList<>(), 4);
+            Learner learner = new Learner("L1", "Learner", null, 5, "0000", Grade.GRADE_1, new ArrayList<>());
+            Booking booking = new Booking("B1", LocalDate.now(), learner, from, BookingStatus.BOOKED.name(), null);
+            long version = booking.getVersion();
+            CountDownLatch startLatch = new CountDownLatch(1);
+            Future<?> cancel = executor.submit(() -> {
+                startLatch.await();
+                try {
+                    service.cancelBooking(booking);
+                } catch (InvalidBooking e) {
+                    // The change won
+                }
+                return null;
+            });
+            Future<?> change = executor.submit(() -> {
+                startLatch.await();
+                try {
+                    service.changeBooking(booking, learner, to);
+                } catch (InvalidBooking | ConcurrentChange e) {
+                    // The cancellation won
+                }
+                return null;
+            });
+            startLatch.countDown();
+            cancel.get();
+            change.get();
+
+            int freeSlots = from.getAvailableSlots() + to.getAvailableSlots();
+            if (booking.getBookingStatus().equals(BookingStatus.CANCELLED.name())) {
+                assertEquals(8, freeSlots);
+            } else {
+                assertEquals(7, freeSlots);
+                assertEquals(3, booking.getLesson().getAvailableSlots());
+            }
+            assertTrue(booking.getVersion() > version);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void transactionsSwapFullLessonsAndRollBackFailedGroupMoves() throws Exception {
+        SwimmingLesson first = new SwimmingLesson(Grade.GRADE_1, LocalDate.now().plusDays(1), LocalTime.of(16, 0), null,
+                new ArrayList<>(), 1, new ArrayList<>(), 0);
+        SwimmingLesson second = new SwimmingLesson(Grade.GRADE_1, LocalDate.now().plusDays(2), LocalTime.of(16, 0), null,
+                new ArrayList<>(), 1, new ArrayList<>(), 0);
+        first.setHandle(1);
+        second.setHandle(2);
+        Learner anna = new Learner("L1", "Anna", null, 5, "0000", Grade.GRADE_1, new ArrayList<>());
+        Learner ben = new Learner("L2", "Ben", null, 5, "0000", Grade.GRADE_1, new ArrayList<>());
+        Booking annaBooking = new Booking("B1", LocalDate.now(), anna, first, BookingStatus.BOOKED.name(), null);
+        Booking benBooking = new Booking("B2", LocalDate.now(), ben, second, BookingStatus.BOOKED.name(), null);
+        anna.getBookings().add(annaBooking);
+        ben.getBookings().add(benBooking);
+
+        // Both lessons are full, so the swap only works as one step
+        new BookingTransaction(null).swap(annaBooking, benBooking).commit();
+        assertSame(second, annaBooking.getLesson());
+        assertSame(first, benBooking.getLesson());
+        assertEquals(0, first.getAvailableSlots());
+        assertEquals(0, second.getAvailableSlots());
+
+        // Moving both learners onto a lesson with one seat fails and leaves everything as it was
+        SwimmingLesson small = new SwimmingLesson(Grade.GRADE_1, LocalDate.now().plusDays(3), LocalTime.of(16, 0), null,
+                new ArrayList<>(), 1, new ArrayList<>(), 1);
+        small.setHandle(3);
+        BookingTransaction groupMove = new BookingTransaction(null).move(annaBooking, small).move(benBooking, small);
+        try {
+            groupMove.commit();
+            fail("Group move should not fit");
+        } catch (NoSlotsAvailable e) {
+            // Expected
+        }
+        assertSame(second, annaBooking.getLesson());
+        assertSame(first, benBooking.getLesson());
+        assertEquals(1, small.getAvailableSlots());
+        assertEquals(0, first.getAvailableSlots());
+        assertEquals(0, second.getAvailableSlots());
+
+        // A booking changed after it was staged makes the commit fail
+        BookingTransaction stale = new BookingTransaction(null).move(annaBooking, small);
+        annaBooking.setBookingStatus(BookingStatus.CHANGED.name());
+        try {
+            stale.commit();
+            fail("Stale transaction should not commit");
+        } catch (ConcurrentChange e) {
+            // Expected
+        }
+        assertEquals(1, small.getAvailableSlots());
+        assertSame(second, annaBooking.getLesson());
+
+        // A cancellation landing on a booking already switched keeps that move when the commit fails afterwards
+        annaBooking.setBookingStatus(BookingStatus.BOOKED.name());
+        AtomicBoolean interfered = new AtomicBoolean();
+        second.addChangeListener((lesson, slots) -> {
+            if (interfered.compareAndSet(false, true)) {
+                Booking.State switched = annaBooking.getState();
+                assertTrue(annaBooking.compareAndSet(switched, switched.getLesson(), BookingStatus.CANCELLED.name()));
+                switched.getLesson().releaseSlot();
+                throw new IllegalStateException("Listener failed");
+            }
+        });
+        try {
+            new BookingTransaction(null).move(annaBooking, small).commit();
+            fail("Commit should report the move kept");
+        } catch (ConcurrentChange e) {
+            assertTrue(e.getMessage().contains("B1"));
+        }
+        assertSame(small, annaBooking.getLesson());
+        assertEquals(BookingStatus.CANCELLED.name(), annaBooking.getBookingStatus());
+        assertEquals(1, small.getAvailableSlots());
+        assertEquals(1, second.getAvailableSlots());
+    }
+
+    @Test
+    public void expiredSeatHoldsGiveTheSeatBack() throws Exception {
+        SwimmingSchool school = new SwimmingSchool();
+        SeatInventory inventory = new SeatInventory(Duration.ofMillis(20));
+        Learner learner = school.getLearnerByLearnerId("L5");
+        SwimmingLesson lesson = null;
+        for (SwimmingLesson candidate : school.getTimetable()) {
+            if (candidate.getDate().isAfter(LocalDate.now())
+                    && SwimmingSchoolService.isGradeEligible(learner.getCurrentGrade(), candidate.getGrade())) {
+                lesson = candidate;
+            }
+        }
+        int slots = lesson.getAvailableSlots();
+
+        String expiring = inventory.reserve(lesson, "L1");
+        assertEquals(slots - 1, lesson.getAvailableSlots());
+        Thread.sleep(50);
+        assertEquals(1, inventory.expire());
+        assertEquals(slots, lesson.getAvailableSlots());
+        try {
+            inventory.confirm(expiring);
+            fail("An expired hold cannot be confirmed");
+        } catch (InvalidBooking e) {
+            assertTrue(e.getMessage().contains(expiring));
+        }
+
+        // A hold past its deadline cannot be confirmed even before the expiry has reaped it
+        String late = inventory.reserve(lesson, "L1");
+        Thread.sleep(50);
+        assertThrows(InvalidBooking.class, () -> inventory.confirm(late));
+        assertEquals(slots, lesson.getAvailableSlots());
+        assertEquals(0, inventory.expire());
+
+        String holdId = school.reserveLesson(lesson.getTimeSlot(), lesson.getDate(), "L5");
+        assertEquals(slots - 1, lesson.getAvailableSlots());
+        assertNotNull(school.getBookingById(school.confirmReservation(holdId)));
+        assertEquals(slots - 1, lesson.getAvailableSlots());
+        LocalTime time = lesson.getTimeSlot();
+        LocalDate day = lesson.getDate();
+        assertThrows(InvalidBooking.class, () -> school.reserveLesson(time, day, "unknown learner"));
+    }
+
+    @Test
+    public void admissionControlShedsLoad() throws Exception {
+        AdmissionController controller = new AdmissionController(2, 0.001, 1, 0, Duration.ofMillis(10));
+        assertEquals("ok", controller.admit("L1", -1, () -> "ok"));
+        assertEquals("ok", controller.admit("L1", -1, () -> "ok"));
+        assertTrue(controller.admit("L1", -1, () -> "ok").startsWith("Too many requests"));
+        assertEquals(1, controller.getMetrics().getRateLimited());
+
+        // A second request for a lesson which is busy is turned away at once when the queue is full
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> first = executor.submit(() -> controller.admit("L2", 7, () -> {
+            running.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "booked";
+        }));
+        running.await();
+        assertEquals(AdmissionController.BUSY, controller.admit("L3", 7, () -> "booked"));
+        finish.countDown();
+        assertEquals("booked", first.get());
+        executor.shutdown();
+        assertEquals(1, controller.getMetrics().getShed());
+
+        // The queue of one busy lesson does not take the places of another's
+        AdmissionController gates = new AdmissionController(10, 1000, 1, 1, Duration.ofSeconds(10));
+        CountDownLatch busy = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService lessons = Executors.newFixedThreadPool(4);
+        List<Future<String>> results = new ArrayList<>();
+        for (int lessonHandle : new int[]{7, 8, 7, 8}) {
+            results.add(lessons.submit(() -> gates.admit("L" + lessonHandle, lessonHandle, () -> {
+                busy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "done";
+            })));
+            if (results.size() == 2) {
+                busy.await();
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gates.getWaiting() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, gates.getWaiting(7));
+        assertEquals(1, gates.getWaiting(8));
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("done", result.get());
+        }
+        lessons.shutdown();
+
+        // Buckets of learners who have gone quiet are swept away
+        AdmissionController sweeping = new AdmissionController(1, 1_000_000, 1, 0, Duration.ofMillis(10));
+        for (int i = 0; i < 5000; i++) {
+            sweeping.admit("visitor-" + i, -1, () -> "ok");
+        }
+        assertTrue(sweeping.getBucketCount() < 5000);
+
+        SwimmingSchool school = new SwimmingSchool();
+        school.setAdmissionController(new AdmissionController(1, 0.001, 1, 4, Duration.ofMillis(10)));
+        SwimmingLesson lesson = school.getTimetable().get(school.getTimetable().size() - 1);
+        school.bookLesson(lesson.getTimeSlot(), lesson.getDate(), "L1");
+        assertTrue(school.bookLesson(lesson.getTimeSlot(), lesson.getDate(), "L1").startsWith("Too many requests"));
+    }
+
+    @Test
+    public void promoteOnAttendingHigherGrade() throws InvalidBooking {
+        SwimmingSchool school = new SwimmingSchool();
+        // The default data marks bookings attended without promoting their learners
+        school.recomputeGrades();
+        String learnerId = school.addLearner("Progress", "female", 7, "07000000000", 1);
+        Learner learner = school.getLearnerByLearnerId(learnerId);
+        for (SwimmingLesson lesson : school.bookableLessons(learnerId)) {
+            assertTrue(lesson.getGrade().getValue() <= 2);
+        }
+
+        SwimmingLesson upcoming = school.bookableLessons(learnerId).stream()
+                .filter(lesson -> lesson.getGrade() == Grade.GRADE_2).findFirst().get();
+        school.bookLesson(upcoming.getTimeSlot(), upcoming.getDate(), learnerId);
+        assertEquals("Booking alone does not promote", Grade.GRADE_1, learner.getCurrentGrade());
+
+        SwimmingLesson past = null;
+        for (SwimmingLesson lesson : school.getTimetable()) {
+            if (lesson.getGrade() == Grade.GRADE_2 && lesson.getDate().isBefore(LocalDate.now())) {
+                past = lesson;
+            }
+        }
+        school.addBooking(new Booking("BP1", past.getDate(), learner, past, BookingStatus.BOOKED.name(), null));
+        school.markBookingAttended("BP1");
+        assertEquals(Grade.GRADE_2, learner.getCurrentGrade());
+
+        learner.setCurrentGrade(Grade.GRADE_1);
+        assertEquals(1, school.recomputeGrades());
+        assertEquals(Grade.GRADE_2, learner.getCurrentGrade());
+        assertEquals(0, school.recomputeGrades());
+    }
+
+    @Test
+    public void searchLessonsWithBitmapQueries() {
+        SwimmingSchool school = new SwimmingSchool();
+        LessonQuery helenGrade3 = LessonQuery.coach("Helen").and(LessonQuery.grade(Grade.GRADE_3));
+        int expected = 0;
+        for (SwimmingLesson lesson : school.getTimetable()) {
+            if (lesson.getCoach().getName().equals("Helen") && lesson.getGrade() == Grade.GRADE_3) {
+                expected++;
+            }
+        }
+        assertEquals(expected, school.countLessons(helenGrade3));
+        assertEquals(school.getTimetable().size(),
+                school.countLessons(helenGrade3.or(helenGrade3.not())));
+
+        LocalDate from = LocalDate.now().plusDays(1);
+        LessonQuery mondaysOrFridays = LessonQuery.day(DayOfWeek.MONDAY).or(LessonQuery.day(DayOfWeek.FRIDAY))
+                .and(LessonQuery.between(from, from.plusDays(13)));
+        for (SwimmingLesson lesson : school.searchLessons(mondaysOrFridays)) {
+            DayOfWeek day = lesson.getDate().getDayOfWeek();
+            assertTrue(day == DayOfWeek.MONDAY || day == DayOfWeek.FRIDAY);
+            assertFalse(lesson.getDate().isBefore(from) || lesson.getDate().isAfter(from.plusDays(13)));
+        }
+
+        // The free slots bitmap follows the lesson's slots as they are taken and given back
+        SwimmingLesson lesson = school.searchLessons(LessonQuery.week(from.plusWeeks(1))).get(0);
+        LessonQuery thisLesson = LessonQuery.between(lesson.getDate(), lesson.getDate()).and(LessonQuery.time(lesson.getTimeSlot()));
+        LessonQuery full = thisLesson.and(LessonQuery.hasFreeSlots().not());
+        int slots = lesson.getAvailableSlots();
+        for (int i = 0; i < slots; i++) {
+            assertTrue(lesson.tryAcquireSlot());
+        }
+        assertEquals(1, school.countLessons(full));
+        lesson.releaseSlot();
+        assertEquals(0, school.countLessons(full));
+    }
+
+    @Test
+    public void availabilityFeedCoalescesAndRespectsDemand() throws Exception {
+        SwimmingSchool school = new SwimmingSchool();
+        SwimmingLesson lesson = school.getTimetable().get(school.getTimetable().size() - 1);
+        SwimmingLesson other = school.getTimetable().get(school.getTimetable().size() - 2);
+        List<AvailabilityChange> received = new CopyOnWriteArrayList<>();
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        CountDownLatch delivered = new CountDownLatch(1);
+        school.getAvailabilityFeed().subscribe(new Flow.Subscriber<AvailabilityChange>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+            }
+
+            @Override
+            public void onNext(AvailabilityChange change) {
+                received.add(change);
+                delivered.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        }, lesson.getGrade(), lesson.getDate().getDayOfWeek(), lesson.getCoach().getName());
+
+        // Nothing is delivered without demand, and a burst of changes to one lesson is coalesced
+        assertTrue(lesson.tryAcquireSlot());
+        assertTrue(lesson.tryAcquireSlot());
+        lesson.releaseSlot();
+        if (other.getGrade() != lesson.getGrade()) {
+            other.tryAcquireSlot();
+        }
+        Thread.sleep(50);
+        assertTrue(received.isEmpty());
+
+        subscription.get().request(10);
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, received.size());
+        assertEquals(AvailabilityChange.Type.SLOTS, received.get(0).getType());
+        assertSame(lesson, received.get(0).getLesson());
+        assertEquals(lesson.getAvailableSlots(), received.get(0).getAvailableSlots());
+
+        subscription.get().cancel();
+        assertEquals(0, school.getAvailabilityFeed().getSubscriberCount());
+    }
+
+    @Test
+    public void streamAvailabilityOverServerSentEvents() throws Exception {
+        SwimmingSchool school = new SwimmingSchool();
+        SwimmingLesson lesson = school.getTimetable().get(school.getTimetable().size() - 1);
+        AvailabilityEventServer server = new AvailabilityEventServer(school, 1 << 20);
+        int port = server.start(0);
+        try (Socket missing = new Socket(InetAddress.getLoopbackAddress(), port);
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            missing.getOutputStream().write("GET /missing HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            BufferedReader missingReader = new BufferedReader(new InputStreamReader(missing.getInputStream(), StandardCharsets.US_ASCII));
+            assertEquals("HTTP/1.1 404 Not Found", missingReader.readLine());
+
+            client.setSoTimeout(5000);
+            client.getOutputStream().write(("GET /events?grade=" + lesson.getGrade().getValue()
+                    + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 200 OK", reader.readLine());
+            String line;
+            while (!(line = reader.readLine()).isEmpty()) {
+                assertFalse(line.isEmpty());
+            }
+
+            lesson.tryAcquireSlot();
+            assertEquals("event: slots", reader.readLine());
+            String data = reader.readLine();
+            assertTrue(data.startsWith("data: {\"lesson\":" + lesson.getHandle() + ","));
+            assertTrue(data.contains("\"availableSlots\":" + lesson.getAvailableSlots()));
+            assertEquals(1, server.getConnectionCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void retriedRequestsReturnTheOriginalResult() {
+        SwimmingSchool school = new SwimmingSchool();
+        Learner learner = school.getLearnerByLearnerId("L5");
+        SwimmingLesson lesson = school.bookableLessons("L5").get(0);
+        int slots = lesson.getAvailableSlots();
+
+        String first = school.bookLesson("request-1", lesson.getTimeSlot(), lesson.getDate(), "L5");
+        String retry = school.bookLesson("request-1", lesson.getTimeSlot(), lesson.getDate(), "L5");
+        assertEquals(first, retry);
+        assertEquals(slots - 1, lesson.getAvailableSlots());
+        assertEquals(2, learner.getBookings().size());
+
+        String cancelled = school.cancelBooking("request-2", first);
+        assertEquals(cancelled, school.cancelBooking("request-2", first));
+        assertEquals(slots, lesson.getAvailableSlots());
+
+        // A failed request is not remembered, so retrying the same key once a seat is free succeeds
+        SwimmingLesson other = school.bookableLessons("L5").stream().filter(candidate -> candidate != lesson).findFirst().get();
+        while (other.tryAcquireSlot()) {
+            // Fill the lesson
+        }
+        String full = school.bookLesson("request-3", other.getTimeSlot(), other.getDate(), "L5");
+        assertTrue(full.startsWith("No slots available"));
+        other.releaseSlot();
+        String booked = school.bookLesson("request-3", other.getTimeSlot(), other.getDate(), "L5");
+        assertNotNull(school.getBookingById(booked));
+        assertEquals(booked, school.bookLesson("request-3", other.getTimeSlot(), other.getDate(), "L5"));
+
+        IdempotencyCache cache = new IdempotencyCache(2, Duration.ofMinutes(1));
+        AtomicInteger runs = new AtomicInteger();
+        for (String key : new String[]{"a", "b", "a", "c", "a"}) {
+            cache.execute(key, () -> String.valueOf(runs.incrementAndGet()));
+        }
+        assertEquals("a is evicted by c and runs again", 4, runs.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void cancellingALessonRebooksItsLearners() throws IOException {
+        SwimmingSchool school = new SwimmingSchool();
+        school.setLessonArchive(new LessonArchive(Files.createTempDirectory("hjss-archive"), 90));
+        SwimmingLesson lesson = null;
+        for (SwimmingLesson candidate : school.bookableLessons("L6")) {
+            if (candidate.getDate().isAfter(LocalDate.now()) && candidate.getAvailableSlots() >= 2) {
+                lesson = candidate;
+                break;
+            }
+        }
+        assertNotNull(lesson);
+        String first = school.bookLesson(lesson.getTimeSlot(), lesson.getDate(), "L6");
+        String second = school.bookLesson(lesson.getTimeSlot(), lesson.getDate(), "L7");
+
+        List<Notification> notifications = school.cancelLessons(Collections.singletonList(lesson));
+
+        assertEquals(2, notifications.size());
+        assertTrue(lesson.isCancelled());
+        assertFalse(lesson.tryAcquireSlot());
+        assertNull(school.getLessonByTimeAndDay(lesson.getTimeSlot(), lesson.getDate()));
+        for (String bookingId : new String[]{first, second}) {
+            Booking booking = school.getBookingById(bookingId);
+            if (booking.getBookingStatus().equals(BookingStatus.CANCELLED.name())) {
+                continue;
+            }
+            assertNotSame(lesson, booking.getLesson());
+            assertFalse(booking.getLesson().isCancelled());
+            assertEquals(1, school.lessonBookingsPage(booking.getLesson(), null, 10).getItems().stream()
+                    .filter(other -> other == booking).count());
+        }
+        assertTrue(school.cancelLessons(Collections.singletonList(lesson)).isEmpty());
+        assertFalse(lesson.getCoach().getLessons().contains(lesson));
+        for (Booking booking : school.getBookings().values()) {
+            assertNotSame(lesson, booking.getLesson());
+        }
+
+        // No booking is left on the cancelled lesson, so the school exports and imports again
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        new SchoolDataExporter().export(school, exported);
+        SwimmingSchool imported = new SwimmingSchool(false);
+        new SchoolDataImporter().importInto(imported, new ByteArrayInputStream(exported.toByteArray()));
+        assertEquals(school.getBookings().size(), imported.getBookings().size());
+    }
+
+    @Test
+    public void cancelledBookingsStayLiveWithoutAnArchive() throws IOException {
+        SwimmingSchool school = new SwimmingSchool();
+        SwimmingLesson lesson = school.bookableLessons("L6").get(0);
+        String withdrawn = school.bookLesson(lesson.getTimeSlot(), lesson.getDate(), "L6");
+        school.cancelBooking(withdrawn);
+        int bookingCount = school.getBookings().size();
+
+        school.cancelLessons(Collections.singletonList(lesson));
+
+        // The booking cancelled earlier still resolves and is still listed for its learner
+        Booking booking = school.getBookingById(withdrawn);
+        assertNotNull(booking);
+        assertSame(lesson, booking.getLesson());
+        assertEquals(BookingStatus.CANCELLED.name(), booking.getBookingStatus());
+        assertEquals(bookingCount, school.getBookings().size());
+        assertTrue(school.learnerBookingsPage("L6", null, 100).getItems().contains(booking));
+        assertFalse(lesson.getCoach().getLessons().contains(lesson));
+        assertFalse(school.getTimetable().contains(lesson));
+
+        // The cancelled lesson travels with its booking through an export and import
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        new SchoolDataExporter().export(school, exported);
+        SwimmingSchool imported = new SwimmingSchool(false);
+        new SchoolDataImporter().importInto(imported, new ByteArrayInputStream(exported.toByteArray()));
+        assertEquals(school.getBookings().size(), imported.getBookings().size());
+        assertEquals(school.getTimetable().size(), imported.getTimetable().size());
+        assertTrue(imported.getBookingById(withdrawn).getLesson().isCancelled());
+    }
+
+    @Test
+    public void outboxRetriesFailingSinksAndSurvivesRestart() throws Exception {
+        java.nio.file.Path journal = Files.createTempFile("hjss-outbox", ".journal");
+        List<Notification> received = new CopyOnWriteArrayList<>();
+        AtomicInteger failures = new AtomicInteger(2);
+        NotificationSink flakySink = notifications -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IOException("Mail server down");
+            }
+            received.addAll(notifications);
+        };
+
+        NotificationOutbox outbox = new NotificationOutbox(journal, Collections.singletonList(flakySink), 10, Duration.ofMillis(1), 5);
+        SwimmingSchool school = new SwimmingSchool();
+        school.setNotificationOutbox(outbox);
+        SwimmingLesson lesson = school.bookableLessons("L6").get(0);
+        String bookingId = school.bookLesson(lesson.getTimeSlot(), lesson.getDate(), "L6");
+        school.cancelBooking(bookingId);
+        assertEquals(2, outbox.getPendingCount());
+        assertTrue(received.isEmpty());
+
+        // Nothing was delivered before the restart, so the journal queues both again
+        NotificationOutbox reopened = new NotificationOutbox(journal, Collections.singletonList(flakySink), 10, Duration.ofMillis(1), 5);
+        assertEquals(2, reopened.getPendingCount());
+        assertEquals(2, reopened.dispatch());
+        assertEquals(2, reopened.getRetryCount());
+        assertEquals(2, reopened.getDeliveredCount());
+        assertEquals(Notification.Type.BOOKED, received.get(0).getType());
+        assertEquals(Notification.Type.CANCELLED, received.get(1).getType());
+        assertEquals(bookingId, received.get(1).getBookingId());
+        assertEquals(0, reopened.getPendingCount());
+
+        assertEquals(0, new NotificationOutbox(journal, flakySink).getPendingCount());
+
+        // A batch given up on is kept in the dead-letter file and not queued again
+        NotificationSink deadSink = notifications -> {
+            throw new IOException("Mail server gone");
+        };
+        NotificationOutbox failing = new NotificationOutbox(journal, Collections.singletonList(deadSink), 10, Duration.ofMillis(1), 2);
+        failing.enqueue(received.get(1));
+        assertEquals(1, failing.dispatch());
+        assertEquals(1, failing.getFailedCount());
+        assertEquals(0, failing.getPendingCount());
+        List<Notification> deadLetters = failing.readDeadLetters();
+        assertEquals(1, deadLetters.size());
+        assertEquals(bookingId, deadLetters.get(0).getBookingId());
+        assertEquals(Notification.Type.CANCELLED, deadLetters.get(0).getType());
+        assertEquals(0, new NotificationOutbox(journal, deadSink).getPendingCount());
+        Files.deleteIfExists(failing.getDeadLetterFile());
+        Files.deleteIfExists(journal);
+    }
+
+    @Test
+    public void eventLoggerWritesEveryEventAndRotates() throws Exception {
+        java.nio.file.Path directory = Files.createTempDirectory("hjss-events");
+        java.nio.file.Path file = directory.resolve("events.log");
+        EventLogger logger = new EventLogger(file, LogLevel.INFO, 1 << 14, 64 * 1024, 2);
+        logger.start();
+        int threads = 8;
+        int events = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < events; i++) {
+                    logger.info("booking.requested", "learner", "L" + thread, "sequence", i, "note", "two words");
+                    logger.log(LogLevel.DEBUG, "ignored");
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(logger.flush(10_000));
+        logger.stop();
 
+        assertEquals(threads * events, logger.getWrittenCount() + logger.getDroppedCount());
+        assertTrue(Files.exists(directory.resolve("events.log.1")));
+        assertFalse(Files.exists(directory.resolve("events.log.3")));
+        for (java.nio.file.Path log : new java.nio.file.Path[]{file, directory.resolve("events.log.1")}) {
+            assertTrue(Files.size(log) <= 64 * 1024);
+            for (String line : Files.readAllLines(log)) {
+                assertTrue(line, line.contains(" INFO booking.requested ") && line.endsWith("note=\"two words\""));
+            }
+        }
+    }
+
+    @Test
+    public void learnersAreFoundByPrefixAndMisspelling() {
+        SwimmingSchool school = new SwimmingSchool();
+        assertEquals("L2", school.searchLearners("jane smi", 5).get(0).getId());
+        assertEquals("L1", school.searchLearners("Jonh", 5).get(0).getId());
+        assertEquals("L5", school.searchLearners("l5", 5).get(0).getId());
+        assertTrue(school.searchLearners("zzzz", 5).isEmpty());
+        // Words too short to be typos are only matched as prefixes
+        assertTrue(school.searchLearners("jx", 5).isEmpty());
+        assertEquals(5, school.searchLearners("l", 5).size());
+        assertEquals(3, school.searchLearners("emergency", 3).size());
+
+        String id = school.addLearner("Penelope Quinn", "Female", 6, "07700 900123", 1);
+        assertEquals(id, school.searchLearners("penelpoe", 5).get(0).getId());
+        assertEquals(id, school.searchLearners("0770", 5).get(0).getId());
+    }
+
+    @Test
+    public void concurrentBookingsOfOneLearnerAreEachConfirmedOnce() throws Exception {
+        SwimmingSchool school = new SwimmingSchool();
+        String learnerId = school.addLearner("Busy", "female", 6, "0770", 1);
+        List<SwimmingLesson> targets = new ArrayList<>();
+        java.util.Set<String> gradeDays = new java.util.HashSet<>();
+        for (SwimmingLesson lesson : school.bookableLessons(learnerId)) {
+            if (targets.size() < 8 && gradeDays.add(lesson.getGrade() + " " + lesson.getDate())) {
+                targets.add(lesson);
+            }
+        }
+        assertTrue(targets.size() > 1);
+        List<Booking> confirmed = new CopyOnWriteArrayList<>();
+        school.addBookingListener(confirmed::add);
+
+        // Every lesson is asked for twice at once; only one of each pair may be booked
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> replies = new ArrayList<>();
+        for (SwimmingLesson lesson : targets) {
+            for (int i = 0; i < 2; i++) {
+                replies.add(executor.submit(() -> {
+                    start.await();
+                    return school.bookLesson(lesson.getTimeSlot(), lesson.getDate(), learnerId);
+                }));
+            }
+        }
+        start.countDown();
+        java.util.Set<String> bookingIds = new java.util.HashSet<>();
+        for (Future<String> reply : replies) {
+            String bookingId = reply.get();
+            if (school.getBookingById(bookingId) != null) {
+                assertTrue(bookingIds.add(bookingId));
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(targets.size(), bookingIds.size());
+        assertEquals(targets.size(), school.getLearnerByLearnerId(learnerId).getBookings().size());
+        assertEquals(targets.size(), confirmed.size());
+        assertEquals(bookingIds.size(), new java.util.HashSet<>(confirmed).size());
+        assertEquals(targets.size(), school.learnerBookingsPage(learnerId, null, 100).getItems().size());
+    }
+
+    @Test
+    public void concurrentRegistrationsGetUniqueIds() throws Exception {
+        SwimmingSchool school = new SwimmingSchool();
+        int before = school.getLearners().size();
+        List<String> lines = new ArrayList<>();
+        lines.add("name,gender,age,emergency contact,grade");
+        for (int i = 0; i < 5000; i++) {
+            lines.add("\"Learner, " + i + "\",female," + (4 + i % 8) + ",0770 " + i + "," + (1 + i % 5));
+        }
+        lines.add("Bad Age,male,40,0770,1");
+        lines.add("Too,few,fields");
+        lines.add("\"Open quote,female,5,0770,1");
+
+        // Register one by one from other threads while the import runs
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> singles = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            singles.add(executor.submit(() -> school.addLearner("Walk In", "male", 6, "0770", 1)));
+        }
+        java.nio.file.Path csv = Files.createTempFile("hjss-learners", ".csv");
+        Files.write(csv, lines, StandardCharsets.UTF_8);
+        LearnerCsvImporter.Result result = new LearnerCsvImporter().importLearners(school, csv);
+        Files.deleteIfExists(csv);
+        java.util.Set<String> ids = new java.util.HashSet<>(result.getImportedIds());
+        for (Future<String> single : singles) {
+            assertTrue(ids.add(single.get()));
+        }
+        executor.shutdown();
+
+        assertEquals(5000, result.getImportedIds().size());
+        assertEquals(Arrays.asList("Line 5002: age must be between 4 and 11", "Line 5003: expected 5 fields but found 3",
+                "Line 5004: quoted field is not closed"), result.getErrors());
+        assertEquals(before + 5200, school.getLearners().size());
+        assertEquals("Learner, 0", school.getLearnerByLearnerId(result.getImportedIds().get(0)).getName());
+        assertEquals("L" + (before + 5201), school.addLearner("Next", "female", 5, "0770", 2));
+        try {
+            school.addLearner(new Learner("L1", "Duplicate", null, 5, "0770", Grade.GRADE_1, new ArrayList<>()));
+            fail("Duplicate learner ID should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}